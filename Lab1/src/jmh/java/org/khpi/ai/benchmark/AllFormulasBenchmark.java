@@ -0,0 +1,69 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.khpi.ai.service.FusedScoringEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compares classifying one glyph by every formula separately, as the single file CLI used to,
+ * with the fused single pass engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class AllFormulasBenchmark {
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+    private final FusedScoringEngine scoringEngine = new FusedScoringEngine();
+    private List<ToDoubleFunction<Character>> functions;
+
+    @Setup(Level.Trial)
+    public void setUp(GlyphLibrary library) {
+        Character input = library.input;
+        functions = List.of(
+                standard -> determinant.computeByRussellAndRao(input, standard),
+                standard -> determinant.computeByJokardAndNeedman(input, standard),
+                standard -> determinant.computeByDyce(input, standard),
+                standard -> determinant.computeBySokalAndSnif(input, standard)
+        );
+    }
+
+    @Benchmark
+    public List<Standard> determineCharacterWithParameters(GlyphLibrary library) {
+        return determinant.determineCharacterWithParameters(library.input, library.standards, functions);
+    }
+
+    @Benchmark
+    public void separateFormulas(GlyphLibrary library, Blackhole blackhole) {
+        for (CharacterDeterminant.Formula formula : CharacterDeterminant.Formula.values()) {
+            blackhole.consume(determinant.determineCharacter(library.input, library.standards, library.metadata, formula));
+        }
+
+        blackhole.consume(determinant.determineCharacterWithParameters(library.input, library.standards, functions));
+    }
+
+    @Benchmark
+    public FormulaResults fusedEngine(GlyphLibrary library) {
+        return scoringEngine.determine(library.input, library.standards, library.metadata);
+    }
+}
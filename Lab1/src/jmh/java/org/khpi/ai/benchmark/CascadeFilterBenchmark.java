@@ -0,0 +1,88 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.ScoredStandard;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CascadeFilter;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.khpi.ai.service.PreparedLibrary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares scoring the whole prepared library with scoring the standards shortlisted by the coarse descriptors.
+ * The trial setup also measures recall of the shortlist: how often the cascade finds the same nearest standard
+ * and distance as the full scan, over noisy copies of random standards. It is printed with the trial parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CascadeFilterBenchmark {
+    @Param({"WITH_SQUARE_ROOT", "WITH_MODULE", "WITH_MODULE_AND_FRACTION"})
+    public CharacterDeterminant.Formula formula;
+
+    @Param({"10", "100", "1000"})
+    public int candidates;
+
+    private static final int RECALL_QUERIES = 200;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+    private PreparedLibrary prepared;
+    private CascadeFilter filter;
+
+    @Setup(Level.Trial)
+    public void setUp(GlyphLibrary library) {
+        prepared = PreparedLibrary.prepare(library.standards, library.metadata);
+        filter = new CascadeFilter(candidates);
+
+        System.out.printf("Recall of %d candidates, %s, %d standards of %dx%d: %.3f%n", candidates, formula,
+                library.librarySize, library.glyphSize, library.glyphSize, recall(library));
+    }
+
+    /**
+     * @return share of queries whose nearest standard and distance by the cascade equal the full scan.
+     */
+    private double recall(GlyphLibrary library) {
+        Random random = Glyphs.random();
+        int agreed = 0;
+
+        for (int i = 0; i < RECALL_QUERIES; i++) {
+            Character query = Glyphs.noisyCopy(random, library.standards.get(random.nextInt(library.standards.size())));
+            ScoredStandard exact = determinant.rank(query, prepared, 1, formula).getBest();
+            ScoredStandard shortlisted = filter.rank(query, prepared, 1, formula).getBest();
+
+            if (exact.getStandard() == shortlisted.getStandard()
+                    && Double.compare(exact.getScore(), shortlisted.getScore()) == 0) {
+                agreed++;
+            }
+        }
+
+        return (double) agreed / RECALL_QUERIES;
+    }
+
+    @Benchmark
+    public Standard fullScan(GlyphLibrary library) {
+        return determinant.determineCharacter(library.input, prepared, formula);
+    }
+
+    @Benchmark
+    public Standard cascade(GlyphLibrary library) {
+        return filter.determineCharacter(library.input, prepared, formula);
+    }
+}
@@ -0,0 +1,66 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FileCharacterInfo;
+import org.khpi.ai.service.CSVHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvReadBenchmark {
+    @Param({"5", "16", "32", "64", "128"})
+    public int glyphSize;
+
+    private final CSVHandler csvHandler = new CSVHandler();
+    private Path file;
+    private FileCharacterInfo fileInfo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = Glyphs.random();
+        StringBuilder csv = new StringBuilder();
+
+        for (int i = 0; i < glyphSize; i++) {
+            for (int j = 0; j < glyphSize; j++) {
+                csv.append(j == 0 ? "" : ",").append(random.nextInt(2));
+            }
+            csv.append('\n');
+        }
+
+        file = Files.createTempFile("glyph", ".csv");
+        Files.writeString(file, csv);
+        fileInfo = new FileCharacterInfo(file.toString(), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Character readCharacter() {
+        return csvHandler.readCharacter(fileInfo);
+    }
+}
@@ -0,0 +1,34 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DistanceFormulaBenchmark {
+    @Param
+    public CharacterDeterminant.Formula formula;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @Benchmark
+    public Standard determineCharacter(GlyphLibrary library) {
+        return determinant.determineCharacter(library.input, library.standards, library.metadata, formula);
+    }
+}
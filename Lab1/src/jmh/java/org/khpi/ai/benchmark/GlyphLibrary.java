@@ -0,0 +1,36 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Input glyph and standards library shared by the scoring benchmarks.
+ * The largest combination (128x128 glyphs, 100k standards) holds about 6.5 GB of cells.
+ */
+@State(Scope.Benchmark)
+public class GlyphLibrary {
+    @Param({"5", "16", "32", "64", "128"})
+    public int glyphSize;
+
+    @Param({"26", "1000", "10000", "100000"})
+    public int librarySize;
+
+    public Character input;
+    public List<Character> standards;
+    public List<Character> metadata;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = Glyphs.random();
+        standards = Glyphs.standards(random, glyphSize, librarySize);
+        metadata = Glyphs.metadata(random, glyphSize);
+        input = Glyphs.noisyCopy(random, standards.get(random.nextInt(librarySize)));
+    }
+}
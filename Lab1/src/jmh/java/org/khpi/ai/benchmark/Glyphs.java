@@ -0,0 +1,76 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random glyphs with fixed seed, so every fork benchmarks the same data.
+ */
+final class Glyphs {
+    private static final long SEED = 42;
+    private static final int MAX_WEIGHT = 4;
+    private static final double NOISE = 0.1;
+
+    private Glyphs() {
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    static int[] binaryCells(Random random, int size) {
+        int[] cells = new int[size * size];
+
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = random.nextInt(2);
+        }
+
+        return cells;
+    }
+
+    static List<Character> standards(Random random, int size, int count) {
+        Standard[] labels = Standard.values();
+        List<Character> standards = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            standards.add(Character.of(binaryCells(random, size), size, size, labels[i % labels.length]));
+        }
+
+        return standards;
+    }
+
+    static List<Character> metadata(Random random, int size) {
+        List<Character> metadata = new ArrayList<>();
+
+        for (Standard standard : Standard.values()) {
+            int[] weights = new int[size * size];
+
+            for (int k = 0; k < weights.length; k++) {
+                weights[k] = 1 + random.nextInt(MAX_WEIGHT);
+            }
+
+            metadata.add(Character.of(weights, size, size, standard));
+        }
+
+        return metadata;
+    }
+
+    /**
+     * @return copy of the template with about 10% of cells flipped.
+     */
+    static Character noisyCopy(Random random, Character template) {
+        int[] cells = template.getCells().clone();
+
+        for (int k = 0; k < cells.length; k++) {
+            if (random.nextDouble() < NOISE) {
+                cells[k] = 1 - cells[k];
+            }
+        }
+
+        return Character.of(cells, template.getWidth(), template.getHeight(), null);
+    }
+}
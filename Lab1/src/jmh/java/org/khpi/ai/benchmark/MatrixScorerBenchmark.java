@@ -0,0 +1,75 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.ScoreMatrix;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.khpi.ai.service.MatrixScorer;
+import org.khpi.ai.service.PreparedLibrary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares classifying a page of inputs one by one with the blocked inputs × standards matrix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MatrixScorerBenchmark {
+    @Param({"WITH_SQUARE_ROOT", "WITH_MODULE", "WITH_MODULE_AND_FRACTION", "WITH_ARCCOS"})
+    public CharacterDeterminant.Formula formula;
+
+    @Param({"100", "500"})
+    public int inputCount;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+    private final MatrixScorer scorer = new MatrixScorer(Runtime.getRuntime().availableProcessors());
+    private PreparedLibrary prepared;
+    private List<Character> inputs;
+
+    @Setup(Level.Trial)
+    public void setUp(GlyphLibrary library) {
+        Random random = Glyphs.random();
+        prepared = PreparedLibrary.prepare(library.standards, library.metadata);
+        inputs = new ArrayList<>(inputCount);
+
+        for (int i = 0; i < inputCount; i++) {
+            inputs.add(Glyphs.noisyCopy(random, library.standards.get(random.nextInt(library.standards.size()))));
+        }
+    }
+
+    @Benchmark
+    public void oneByOne(Blackhole blackhole) {
+        for (Character input : inputs) {
+            blackhole.consume(determinant.determineCharacter(input, prepared, formula));
+        }
+    }
+
+    @Benchmark
+    public ScoreMatrix matrixNearest() throws InterruptedException {
+        return scorer.nearest(inputs, prepared, formula);
+    }
+
+    @Benchmark
+    public ScoreMatrix matrix() throws InterruptedException {
+        return scorer.score(inputs, prepared, formula);
+    }
+}
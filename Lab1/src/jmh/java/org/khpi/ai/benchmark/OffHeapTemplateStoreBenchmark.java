@@ -0,0 +1,75 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.KnnResult;
+import org.khpi.ai.model.Template;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.khpi.ai.service.KnnClassifier;
+import org.khpi.ai.service.LabelRegistry;
+import org.khpi.ai.service.OffHeapTemplateStore;
+import org.khpi.ai.service.TemplateLibrary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the k nearest templates scan of the on-heap library with the scan of the quantized off-heap store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class OffHeapTemplateStoreBenchmark {
+    private static final int NEIGHBOURS = 5;
+
+    @Param({"WITH_SQUARE_ROOT", "WITH_MODULE", "WITH_MODULE_AND_FRACTION"})
+    public CharacterDeterminant.Formula formula;
+
+    @Param({"NIBBLE", "BYTE"})
+    public OffHeapTemplateStore.Encoding encoding;
+
+    private final KnnClassifier classifier = new KnnClassifier();
+    private TemplateLibrary templateLibrary;
+    private OffHeapTemplateStore store;
+
+    @Setup(Level.Trial)
+    public void setUp(GlyphLibrary library) {
+        LabelRegistry registry = new LabelRegistry();
+        List<Template> templates = new ArrayList<>();
+        OffHeapTemplateStore.Builder builder = new OffHeapTemplateStore.Builder(encoding);
+
+        for (Character standard : library.standards) {
+            Template template = new Template(registry.register(standard.getStandard()), standard);
+            templates.add(template);
+            builder.add(template);
+        }
+
+        templateLibrary = TemplateLibrary.of(templates);
+        store = builder.build();
+    }
+
+    @Benchmark
+    public KnnResult heapLibrary(GlyphLibrary library) {
+        return classifier.classify(library.input, templateLibrary, NEIGHBOURS, formula);
+    }
+
+    @Benchmark
+    public KnnResult offHeapStore(GlyphLibrary library) {
+        return classifier.classify(library.input, store, NEIGHBOURS, formula);
+    }
+}
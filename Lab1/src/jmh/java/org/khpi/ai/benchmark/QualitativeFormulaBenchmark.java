@@ -0,0 +1,60 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class QualitativeFormulaBenchmark {
+    @Param
+    public CharacterDeterminant.QualitativeFormula formula;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+    private List<ToDoubleFunction<Character>> functions;
+
+    @Setup(Level.Trial)
+    public void setUp(GlyphLibrary library) {
+        Character input = library.input;
+
+        switch (formula) {
+            case RUSSELL_AND_RAO:
+                functions = List.of(standard -> determinant.computeByRussellAndRao(input, standard));
+                break;
+            case JOKARD_AND_NEEDMAN:
+                functions = List.of(standard -> determinant.computeByJokardAndNeedman(input, standard));
+                break;
+            case DYCE:
+                functions = List.of(standard -> determinant.computeByDyce(input, standard));
+                break;
+            case SOKAL_AND_SNIF:
+                functions = List.of(standard -> determinant.computeBySokalAndSnif(input, standard));
+                break;
+        }
+    }
+
+    @Benchmark
+    public List<Standard> determineCharacterWithParameters(GlyphLibrary library) {
+        return determinant.determineCharacterWithParameters(library.input, library.standards, functions);
+    }
+}
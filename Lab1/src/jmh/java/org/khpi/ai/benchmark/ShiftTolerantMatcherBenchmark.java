@@ -0,0 +1,58 @@
+package org.khpi.ai.benchmark;
+
+import org.khpi.ai.model.Alignment;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant;
+import org.khpi.ai.service.PreparedLibrary;
+import org.khpi.ai.service.ShiftTolerantMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the plain scan of the prepared library with the scan aligning the input with every standard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ShiftTolerantMatcherBenchmark {
+    @Param({"WITH_SQUARE_ROOT", "WITH_MODULE", "WITH_MODULE_AND_FRACTION"})
+    public CharacterDeterminant.Formula formula;
+
+    @Param({"1", "2"})
+    public int maxShift;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+    private PreparedLibrary prepared;
+    private ShiftTolerantMatcher matcher;
+
+    @Setup(Level.Trial)
+    public void setUp(GlyphLibrary library) {
+        prepared = PreparedLibrary.prepare(library.standards, library.metadata);
+        matcher = new ShiftTolerantMatcher(maxShift);
+    }
+
+    @Benchmark
+    public Standard alignedScan(GlyphLibrary library) {
+        return determinant.determineCharacter(library.input, prepared, formula);
+    }
+
+    @Benchmark
+    public Alignment shiftedScan(GlyphLibrary library) {
+        return matcher.align(library.input, prepared, formula);
+    }
+}
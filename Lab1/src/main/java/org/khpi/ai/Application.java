@@ -5,59 +5,620 @@ import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.khpi.ai.metrics.MemoryFootprint;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.metrics.MetricsReporter;
+import org.khpi.ai.model.Alignment;
 import org.khpi.ai.model.Character;
+import org.khpi.ai.model.EnsembleResult;
 import org.khpi.ai.model.FileCharacterInfo;
+import org.khpi.ai.model.FormulaResults;
 import org.khpi.ai.model.FormulasRepresentation;
+import org.khpi.ai.model.KnnResult;
 import org.khpi.ai.model.Standard;
+import org.khpi.ai.server.ClassificationServer;
+import org.khpi.ai.server.ShardCoordinator;
+import org.khpi.ai.server.WorkerLauncher;
+import org.khpi.ai.service.BatchClassifier;
 import org.khpi.ai.service.CSVHandler;
+import org.khpi.ai.service.CascadeFilter;
 import org.khpi.ai.service.CharacterDeterminant;
+import org.khpi.ai.service.EnsembleClassifier;
+import org.khpi.ai.service.FormulaSelection;
+import org.khpi.ai.service.FusedScoringEngine;
+import org.khpi.ai.service.GlyphBuffer;
+import org.khpi.ai.service.GlyphParser;
+import org.khpi.ai.service.IncrementalClassifier;
+import org.khpi.ai.service.KnnClassifier;
+import org.khpi.ai.service.LabelRegistry;
+import org.khpi.ai.service.LibraryShard;
+import org.khpi.ai.service.LibraryReloader;
+import org.khpi.ai.service.OffHeapTemplateStore;
+import org.khpi.ai.service.PreparedLibrary;
+import org.khpi.ai.service.ResultCache;
+import org.khpi.ai.service.ResultSink;
+import org.khpi.ai.service.ShiftTolerantMatcher;
 import org.khpi.ai.service.StandardsLoader;
+import org.khpi.ai.service.StreamClassifier;
+import org.khpi.ai.service.TemplateLibrary;
+import org.khpi.ai.service.TemplateLoader;
+import org.khpi.ai.service.TopEntries;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.function.ToDoubleFunction;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class Application {
     private static final String FILE_OPTION = "f";
+    private static final String DIRECTORY_OPTION = "d";
+    private static final String MANIFEST_OPTION = "m";
+    private static final String THREADS_OPTION = "t";
+    private static final String UNORDERED_OPTION = "u";
+    private static final String OUTPUT_OPTION = "o";
+    private static final String LIBRARY_OPTION = "l";
+    private static final String COMPILE_LIBRARY_OPTION = "c";
+    private static final String SERVE_OPTION = "s";
+    private static final String STREAM_OPTION = "i";
+    private static final String BINARY_STREAM_OPTION = "b";
+    private static final String FORMULAS_OPTION = "F";
+    private static final String CACHE_OPTION = "cache";
+    private static final String WATCH_OPTION = "watch";
+    private static final String METRICS_OPTION = "metrics";
+    private static final String METRICS_FORMAT_OPTION = "metrics-format";
+    private static final String TEMPLATES_OPTION = "templates";
+    private static final String KNN_OPTION = "knn";
+    private static final String ENSEMBLE_OPTION = "ensemble";
+    private static final String SHORTLIST_OPTION = "shortlist";
+    private static final String SHIFT_OPTION = "shift";
+    private static final String OFF_HEAP_OPTION = "off-heap";
+    private static final String WEIGHTS_OPTION = "weights";
+    private static final String SHARD_OPTION = "shard";
+    private static final String SHARD_ASSIGNMENT_OPTION = "shard-assignment";
+    private static final String COORDINATOR_OPTION = "coordinator";
+    private static final String TOP_OPTION = "top";
+    private static final String PIPELINE_OPTION = "pipeline";
+    private static final String INCREMENTAL_OPTION = "incremental";
+    private static final String RESULT_FORMAT_OPTION = "format";
+    private static final String CELL_RANGE_OPTION = "cell-range";
+    private static final String EXACT = "exact";
+    private static final String SPAWN_WORKERS = "spawn:";
+    private static final String SHARD_DELIMITER = "/";
+    private static final String CELL_RANGE_DELIMITER = ":";
+    private static final int DEFAULT_NEIGHBOURS = 5;
+    private static final int DEFAULT_PIPELINE = 16;
+    private static final String STANDARD_INPUT = "-";
 
-    public static void main(String[] args) throws ParseException {
-        StandardsLoader loader = new StandardsLoader();
-        List<Standard> standards = loader.loadStandards();
-        List<Standard> metadata = loader.loadMetadata();
-        System.out.printf("Standards loaded: %s%n", standards);
-        System.out.printf("Metadata loaded: %s%n", metadata);
-
-        CharacterDeterminant determinant = new CharacterDeterminant();
-        CSVHandler csvHandler = new CSVHandler();
-
+    public static void main(String[] args) throws ParseException, IOException, InterruptedException {
         Options options = new Options();
         options.addOption(FILE_OPTION, true, "file name");
+        options.addOption(DIRECTORY_OPTION, true, "directory with character files to classify in batch");
+        options.addOption(MANIFEST_OPTION, true, "manifest file listing character files to classify in batch");
+        options.addOption(THREADS_OPTION, true, "number of batch worker threads, defaults to available processors");
+        options.addOption(UNORDERED_OPTION, false, "write batch results as soon as they are ready instead of in input order");
+        options.addOption(OUTPUT_OPTION, true, "batch result file, defaults to standard output");
+        options.addOption(LIBRARY_OPTION, "library", true, "compiled standards library to load instead of CSV standards");
+        options.addOption(COMPILE_LIBRARY_OPTION, "compile-library", true, "compile loaded standards and metadata into library file");
+        options.addOption(SERVE_OPTION, "serve", true, "serve classification requests on the given localhost port, 0 picks a free one");
+        options.addOption(STREAM_OPTION, "stream", true, "classify glyph records streamed from a named pipe or file, - for standard input");
+        options.addOption(BINARY_STREAM_OPTION, "binary-stream", false, "stream consists of binary frames instead of CSV records");
+        options.addOption(FORMULAS_OPTION, "formulas", true, "comma separated formulas for stream, ensemble and coordinator mode, defaults to all");
+        options.addOption(null, CACHE_OPTION, true, "cache results of this many repeated glyphs in stream and server mode");
+        options.addOption(null, WATCH_OPTION, false, "reload standards when their files change in stream and server mode");
+        options.addOption(null, METRICS_OPTION, true, "record metrics and print them to standard error every given seconds, 0 prints them at exit only");
+        options.addOption(null, METRICS_FORMAT_OPTION, true, "metrics format, text or json, defaults to text");
+        options.addOption(null, TEMPLATES_OPTION, true, "classify -f file by k nearest templates of a directory, CSV or library file, or compile them with -c");
+        options.addOption(null, ENSEMBLE_OPTION, true, "classify -f file by majority of -F formulas evaluated cheapest first until the winner is decided (exact) or the confidence reaches the given value");
+        options.addOption(null, SHORTLIST_OPTION, true, "classify -f file by distance formulas scoring only this many standards nearest by coarse descriptors");
+        options.addOption(null, SHIFT_OPTION, true, "classify -f file by distance formulas at the best alignment with every standard within the given shift in cells");
+        options.addOption(null, OFF_HEAP_OPTION, true, "keep --templates off heap quantized to nibble, byte or unsigned-byte cells and print the footprint");
+        options.addOption(null, WEIGHTS_OPTION, true, "CSV file or directory with weights of the labels of --off-heap templates");
+        options.addOption(null, SHARD_OPTION, true, "serve only shard i/n of the standards with -s, answering coordinator requests");
+        options.addOption(null, SHARD_ASSIGNMENT_OPTION, true, "how standards are assigned to shards, range or round-robin, defaults to range");
+        options.addOption(null, COORDINATOR_OPTION, true, "classify -f file or -d/-m batch by shard workers at comma separated host:port addresses, or spawn:N to start N local workers");
+        options.addOption(null, TOP_OPTION, true, "number of best standards per formula in coordinator mode, defaults to 1");
+        options.addOption(null, PIPELINE_OPTION, true, "batch requests in flight per worker in coordinator mode, defaults to " + DEFAULT_PIPELINE);
+        options.addOption(null, INCREMENTAL_OPTION, false, "classify -f file row by row by the distance formulas that are sums of cell terms, committing to each answer as soon as it cannot change");
+        options.addOption(null, CELL_RANGE_OPTION, true, "range min:max of the input cells with --incremental, defaults to the range of the standards and 0/1");
+        options.addOption(null, RESULT_FORMAT_OPTION, true, "write results of -f file, batch and stream as csv, json lines or binary, batch and stream default to csv, -f without it prints banners");
+        options.addOption(null, KNN_OPTION, true, "number of nearest templates voting, defaults to " + DEFAULT_NEIGHBOURS);
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd = parser.parse(options, args);
 
-        if (cmd.hasOption(FILE_OPTION)) {
+        if (cmd.hasOption(METRICS_OPTION)) {
+            // read once by the instrumented classes, so it is set before any of them is loaded
+            System.setProperty(Metrics.METRICS_PROPERTY, Boolean.TRUE.toString());
+        }
+
+        try (MetricsReporter reporter = openMetricsReporter(cmd)) {
+            run(cmd);
+        }
+    }
+
+    private static void run(CommandLine cmd) throws IOException, InterruptedException {
+        if (cmd.hasOption(TEMPLATES_OPTION)) {
+            runTemplates(cmd);
+            return;
+        }
+
+        if (cmd.hasOption(COORDINATOR_OPTION)) {
+            runCoordinator(cmd);
+            return;
+        }
+
+        if (cmd.hasOption(SERVE_OPTION) && cmd.hasOption(SHARD_OPTION) && !cmd.hasOption(COMPILE_LIBRARY_OPTION)) {
+            runShard(cmd);
+            return;
+        }
+
+        // results written in a format keep standard output to themselves
+        PrintStream messages = isInteractive(cmd) ? System.out : System.err;
+        StandardsLoader loader = new StandardsLoader();
+        if (cmd.hasOption(LIBRARY_OPTION)) {
+            List<Standard> standards = loader.loadLibrary(Paths.get(cmd.getOptionValue(LIBRARY_OPTION)));
+            messages.printf("Library loaded: %d standards%n", standards.size());
+        } else {
+            PreparedLibrary library = loader.loadStandardsAndMetadata();
+            messages.printf("Standards loaded: %s%n", labels(library.getStandards()));
+            messages.printf("Metadata loaded: %s%n", labels(library.getMetadataList()));
+        }
+
+        FusedScoringEngine scoringEngine = new FusedScoringEngine();
+        CSVHandler csvHandler = new CSVHandler();
+
+        if (cmd.hasOption(COMPILE_LIBRARY_OPTION)) {
+            Path libraryFile = Paths.get(cmd.getOptionValue(COMPILE_LIBRARY_OPTION));
+            loader.compileLibrary(libraryFile);
+            System.out.printf("Library compiled: %s%n", libraryFile);
+        } else if (cmd.hasOption(SERVE_OPTION)) {
+            try (LibraryReloader reloader = openReloader(cmd, loader);
+                 ClassificationServer server = new ClassificationServer(Integer.parseInt(cmd.getOptionValue(SERVE_OPTION)),
+                         loader::getLibrary, openCache(cmd))) {
+                System.out.printf("Server listening on port %d%n", server.getPort());
+                server.serve();
+            }
+        } else if (cmd.hasOption(STREAM_OPTION)) {
+            ResultCache cache = openCache(cmd);
+            StreamClassifier streamClassifier = new StreamClassifier(loader::getLibrary,
+                    FormulaSelection.parse(cmd.getOptionValue(FORMULAS_OPTION, FormulaSelection.ALL)), threads(cmd), cache);
+            StreamClassifier.Format format = cmd.hasOption(BINARY_STREAM_OPTION)
+                    ? StreamClassifier.Format.BINARY
+                    : StreamClassifier.Format.CSV;
+
+            try (LibraryReloader reloader = openReloader(cmd, loader);
+                 ReadableByteChannel input = openStream(cmd.getOptionValue(STREAM_OPTION));
+                 OutputStream output = openResultOutput(cmd);
+                 ResultSink sink = streamClassifier.openSink(output, resultFormat(cmd))) {
+                long classified = streamClassifier.classify(input, format, sink);
+                System.err.printf("Characters classified: %d%n", classified);
+            }
+
+            if (cache != null) {
+                System.err.printf("Cache: %s%n", cache);
+            }
+        } else if (cmd.hasOption(FILE_OPTION) && cmd.hasOption(ENSEMBLE_OPTION)) {
+            FileCharacterInfo info = new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null);
+            Character inputCharacter = csvHandler.readCharacter(info);
+            String threshold = cmd.getOptionValue(ENSEMBLE_OPTION);
+            EnsembleClassifier ensemble = new EnsembleClassifier(
+                    FormulaSelection.parse(cmd.getOptionValue(FORMULAS_OPTION, FormulaSelection.ALL)),
+                    EXACT.equalsIgnoreCase(threshold) ? EnsembleClassifier.EXACT : Double.parseDouble(threshold));
+            EnsembleResult result = ensemble.determine(inputCharacter, loader.getLibrary());
+
+            System.out.printf("Ensemble result: %s, confidence %.2f, %d of formulas %s%n", result.getStandard(),
+                    result.getConfidence(), result.getVotes(), result.getEvaluatedFormulas());
+        } else if (cmd.hasOption(FILE_OPTION) && cmd.hasOption(SHORTLIST_OPTION)) {
+            FileCharacterInfo info = new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null);
+            Character inputCharacter = csvHandler.readCharacter(info);
+            CascadeFilter filter = new CascadeFilter(Integer.parseInt(cmd.getOptionValue(SHORTLIST_OPTION)));
+
+            Arrays.stream(CharacterDeterminant.Formula.values()).forEach(formula ->
+                    FormulasRepresentation.printResult(filter.determineCharacter(inputCharacter, loader.getLibrary(), formula), formula));
+        } else if (cmd.hasOption(FILE_OPTION) && cmd.hasOption(SHIFT_OPTION)) {
+            FileCharacterInfo info = new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null);
+            Character inputCharacter = csvHandler.readCharacter(info);
+            ShiftTolerantMatcher matcher = new ShiftTolerantMatcher(Integer.parseInt(cmd.getOptionValue(SHIFT_OPTION)));
+
+            for (CharacterDeterminant.Formula formula : CharacterDeterminant.Formula.values()) {
+                Alignment alignment = matcher.align(inputCharacter, loader.getLibrary(), formula);
+                System.out.printf("Result by %s: %s, shifted by (%d, %d)%n", formula, alignment.getStandard(),
+                        alignment.getRowShift(), alignment.getColumnShift());
+            }
+        } else if (cmd.hasOption(FILE_OPTION) && cmd.hasOption(INCREMENTAL_OPTION)) {
+            runIncremental(cmd, Paths.get(cmd.getOptionValue(FILE_OPTION)), loader.getLibrary());
+        } else if (cmd.hasOption(FILE_OPTION)) {
             FileCharacterInfo info = new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null);
             Character inputCharacter = csvHandler.readCharacter(info);
 
-            Arrays.stream(CharacterDeterminant.Formula.values()).forEach(formula -> {
-                Standard standard = determinant.determineCharacter(
-                        inputCharacter, loader.getStandardList(), loader.getMetaData(), formula);
-                FormulasRepresentation.printResult(standard, formula);
-            });
+            FormulaResults results = scoringEngine.determine(inputCharacter, loader.getLibrary());
+
+            if (isInteractive(cmd)) {
+                Arrays.stream(CharacterDeterminant.Formula.values()).forEach(formula ->
+                        FormulasRepresentation.printResult(results.getStandard(formula), formula));
+
+                FormulasRepresentation.printMultipleResult(results.getQualitativeStandards());
+            } else {
+                try (OutputStream output = openResultOutput(cmd);
+                     ResultSink sink = BatchClassifier.openSink(output, resultFormat(cmd))) {
+                    sink.write(info.getFileName(), null, results);
+                }
+            }
+        } else if (cmd.hasOption(DIRECTORY_OPTION) || cmd.hasOption(MANIFEST_OPTION)) {
+            List<Path> inputs = cmd.hasOption(DIRECTORY_OPTION)
+                    ? BatchClassifier.listDirectory(Paths.get(cmd.getOptionValue(DIRECTORY_OPTION)))
+                    : BatchClassifier.readManifest(Paths.get(cmd.getOptionValue(MANIFEST_OPTION)));
+            BatchClassifier batchClassifier = new BatchClassifier(
+                    loader.getLibrary(), threads(cmd), !cmd.hasOption(UNORDERED_OPTION));
+
+            try (OutputStream output = openResultOutput(cmd);
+                 ResultSink sink = BatchClassifier.openSink(output, resultFormat(cmd))) {
+                int classified = batchClassifier.classify(inputs, sink);
+                messages.printf("Characters classified: %d%n", classified);
+            }
+        } else {
+            throw new IllegalArgumentException("You need specify -f option with file name, -d/-m option for batch mode, -i option for stream mode or -s option for server mode");
+        }
+    }
+
+    private static void runIncremental(CommandLine cmd, Path file, PreparedLibrary library) throws IOException {
+        Map<CharacterDeterminant.Formula, IncrementalClassifier.Session> sessions =
+                new EnumMap<>(CharacterDeterminant.Formula.class);
+        String[] cellRange = cmd.hasOption(CELL_RANGE_OPTION)
+                ? cmd.getOptionValue(CELL_RANGE_OPTION).split(CELL_RANGE_DELIMITER)
+                : null;
+
+        if (cellRange != null && cellRange.length != 2) {
+            throw new IllegalArgumentException(String.format("Cell range must be min:max, got %s", cmd.getOptionValue(CELL_RANGE_OPTION)));
+        }
+
+        for (CharacterDeterminant.Formula formula : CharacterDeterminant.Formula.values()) {
+            if (formula != CharacterDeterminant.Formula.WITH_ARCCOS) {
+                IncrementalClassifier classifier = cellRange == null
+                        ? new IncrementalClassifier(library, formula)
+                        : new IncrementalClassifier(library, formula, Integer.parseInt(cellRange[0].trim()),
+                        Integer.parseInt(cellRange[1].trim()));
+                sessions.put(formula, classifier.start());
+            }
+        }
+
+        parseIncremental(file, library, sessions);
+
+        // a glyph of fewer rows commits nothing or commits early, either way it has a wrong size like in other modes
+        for (IncrementalClassifier.Session session : sessions.values()) {
+            if (!session.isCommitted() || session.getRows() != library.getHeight()) {
+                throw new IllegalArgumentException("Input character have illegal dimension size.");
+            }
+        }
+    }
+
+    private static void parseIncremental(Path file, PreparedLibrary library,
+                                         Map<CharacterDeterminant.Formula, IncrementalClassifier.Session> sessions)
+            throws IOException {
+        new GlyphParser().parse(file, new GlyphParser.RecordHandler() {
+            private boolean classified;
+
+            @Override
+            public void onRow(GlyphBuffer glyph) {
+                if (classified) {
+                    return;
+                }
+
+                // committed sessions still check and count the rows, so a glyph of a wrong size is found
+                sessions.forEach((formula, session) -> {
+                    final boolean committed = session.isCommitted();
+
+                    if (session.accept(glyph) && !committed) {
+                        System.out.printf("Result by %s: %s, committed after %d of %d rows%n", formula,
+                                session.getStandard(), session.getRows(), library.getHeight());
+                    }
+                });
+            }
+
+            @Override
+            public void onRecord(GlyphBuffer glyph) {
+                classified = true;
+            }
+        });
+    }
+
+    /**
+     * Serves one shard of the standards, which is read and prepared without keeping the whole library.
+     */
+    private static void runShard(CommandLine cmd) throws IOException {
+        if (cmd.hasOption(WATCH_OPTION)) {
+            throw new IllegalArgumentException("Shard workers cannot reload standards, --watch cannot be combined with --shard");
+        }
+
+        String[] shard = cmd.getOptionValue(SHARD_OPTION).split(SHARD_DELIMITER);
+        if (shard.length != 2) {
+            throw new IllegalArgumentException(String.format("Shard must be i/n, got %s", cmd.getOptionValue(SHARD_OPTION)));
+        }
+
+        LibraryShard libraryShard = new StandardsLoader().loadShard(
+                cmd.hasOption(LIBRARY_OPTION) ? Paths.get(cmd.getOptionValue(LIBRARY_OPTION)) : null,
+                shardAssignment(cmd), Integer.parseInt(shard[0]), Integer.parseInt(shard[1]));
+
+        try (ClassificationServer server = new ClassificationServer(Integer.parseInt(cmd.getOptionValue(SERVE_OPTION)),
+                libraryShard, openCache(cmd))) {
+            System.out.printf("Serving %s%n", libraryShard);
+            System.out.printf("Server listening on port %d%n", server.getPort());
+            server.serve();
+        }
+    }
+
+    private static void runCoordinator(CommandLine cmd) throws IOException {
+        String workers = cmd.getOptionValue(COORDINATOR_OPTION);
+        CSVHandler csvHandler = new CSVHandler();
+
+        if (cmd.hasOption(TOP_OPTION) && !cmd.hasOption(FILE_OPTION)) {
+            throw new IllegalArgumentException("Coordinator batch writes the best standard per formula only, --top needs -f option");
+        }
+
+        try (WorkerLauncher launcher = openWorkers(cmd, workers);
+             ShardCoordinator coordinator = new ShardCoordinator(launcher != null
+                     ? launcher.getAddresses()
+                     : ShardCoordinator.parseAddresses(workers))) {
+            (isInteractive(cmd) ? System.out : System.err).printf("Coordinating workers: %s%n", coordinator.getAddresses().stream()
+                    .map(address -> address.getHostString() + ":" + address.getPort())
+                    .collect(Collectors.joining(", ")));
+
+            if (cmd.hasOption(FILE_OPTION)) {
+                FileCharacterInfo info = new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null);
+                Character inputCharacter = csvHandler.readCharacter(info);
+                int top = Integer.parseInt(cmd.getOptionValue(TOP_OPTION, "1"));
+                TopEntries entries = coordinator.rank(inputCharacter,
+                        cmd.getOptionValue(FORMULAS_OPTION, FormulaSelection.ALL), top);
+                FormulaResults results = entries.getResults();
+
+                results.getFormulaWinners().forEach((formula, standard) -> FormulasRepresentation.printResult(standard, formula));
+                if (!results.getQualitativeWinners().isEmpty()) {
+                    FormulasRepresentation.printMultipleResult(results.getQualitativeStandards());
+                }
+
+                if (top > 1) {
+                    results.getFormulaWinners().keySet().forEach(formula ->
+                            System.out.printf("Top %d by %s: %s%n", top, formula, entries.getRanking(formula)));
+                    results.getQualitativeWinners().keySet().forEach(formula ->
+                            System.out.printf("Top %d by %s: %s%n", top, formula, entries.getRanking(formula)));
+                }
+            } else if (cmd.hasOption(DIRECTORY_OPTION) || cmd.hasOption(MANIFEST_OPTION)) {
+                String formulas = cmd.getOptionValue(FORMULAS_OPTION, FormulaSelection.ALL);
+                FormulaSelection selection = FormulaSelection.parse(formulas);
+                List<Path> inputs = cmd.hasOption(DIRECTORY_OPTION)
+                        ? BatchClassifier.listDirectory(Paths.get(cmd.getOptionValue(DIRECTORY_OPTION)))
+                        : BatchClassifier.readManifest(Paths.get(cmd.getOptionValue(MANIFEST_OPTION)));
+                String[] errors = new String[inputs.size()];
+                List<Character> characters = new ArrayList<>();
 
-            List<ToDoubleFunction<Character>> functionList = List.of(
-                    standardCharacter -> determinant.computeByRussellAndRao(inputCharacter, standardCharacter),
-                    standardCharacter -> determinant.computeByJokardAndNeedman(inputCharacter, standardCharacter),
-                    standardCharacter -> determinant.computeByDyce(inputCharacter, standardCharacter),
-                    standardCharacter -> determinant.computeBySokalAndSnif(inputCharacter, standardCharacter)
-            );
+                for (int i = 0; i < inputs.size(); i++) {
+                    try {
+                        Character character = csvHandler.readCharacter(new FileCharacterInfo(inputs.get(i).toString(), null));
 
-            List<Standard> standardList = determinant.determineCharacterWithParameters(inputCharacter, loader.getStandardList(), functionList);
+                        if (character != null) {
+                            characters.add(character);
+                        } else {
+                            errors[i] = BatchClassifier.UNREADABLE_INPUT;
+                        }
+                    } catch (RuntimeException e) {
+                        errors[i] = e.getMessage();
+                    }
+                }
 
-            FormulasRepresentation.printMultipleResult(standardList);
+                List<TopEntries> results = coordinator.rank(characters, formulas, 1,
+                        Integer.parseInt(cmd.getOptionValue(PIPELINE_OPTION, String.valueOf(DEFAULT_PIPELINE))));
+
+                // inputs that cannot be read keep their error rows in input order, as in the local batch
+                try (OutputStream output = openResultOutput(cmd);
+                     ResultSink sink = BatchClassifier.openSink(output, resultFormat(cmd), selection)) {
+                    for (int i = 0, result = 0; i < inputs.size(); i++) {
+                        if (errors[i] == null) {
+                            sink.write(inputs.get(i).toString(), null, results.get(result++).getResults());
+                        } else {
+                            sink.writeError(inputs.get(i).toString(), null, errors[i]);
+                        }
+                    }
+                }
+
+                System.err.printf("Characters classified: %d of %d%n", results.size(), inputs.size());
+            } else {
+                throw new IllegalArgumentException("Coordinator mode needs -f option with file name or -d/-m option for batch");
+            }
+        }
+    }
+
+    private static WorkerLauncher openWorkers(CommandLine cmd, String workers) throws IOException {
+        if (!workers.startsWith(SPAWN_WORKERS)) {
+            return null;
+        }
+
+        List<String> arguments = new ArrayList<>();
+        if (cmd.hasOption(LIBRARY_OPTION)) {
+            arguments.add("-l");
+            arguments.add(cmd.getOptionValue(LIBRARY_OPTION));
+        }
+
+        return new WorkerLauncher(Integer.parseInt(workers.substring(SPAWN_WORKERS.length())), shardAssignment(cmd),
+                arguments);
+    }
+
+    private static LibraryShard.Assignment shardAssignment(CommandLine cmd) {
+        return cmd.hasOption(SHARD_ASSIGNMENT_OPTION)
+                ? LibraryShard.Assignment.parse(cmd.getOptionValue(SHARD_ASSIGNMENT_OPTION))
+                : LibraryShard.Assignment.RANGE;
+    }
+
+    private static void runTemplates(CommandLine cmd) throws IOException {
+        TemplateLoader templateLoader = new TemplateLoader(new LabelRegistry());
+
+        if (cmd.hasOption(OFF_HEAP_OPTION)) {
+            runOffHeapTemplates(cmd, templateLoader);
+            return;
+        }
+
+        TemplateLibrary library = templateLoader.load(Paths.get(cmd.getOptionValue(TEMPLATES_OPTION)));
+        System.out.printf("Templates loaded: %d templates of %d labels%n", library.size(), library.getLabels().size());
+
+        if (cmd.hasOption(COMPILE_LIBRARY_OPTION)) {
+            Path libraryFile = Paths.get(cmd.getOptionValue(COMPILE_LIBRARY_OPTION));
+            templateLoader.compile(library, libraryFile);
+            System.out.printf("Library compiled: %s%n", libraryFile);
+        } else if (cmd.hasOption(FILE_OPTION)) {
+            Character inputCharacter = new CSVHandler().readCharacter(new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null));
+            int k = cmd.hasOption(KNN_OPTION) ? Integer.parseInt(cmd.getOptionValue(KNN_OPTION)) : DEFAULT_NEIGHBOURS;
+            KnnClassifier classifier = new KnnClassifier();
+
+            for (CharacterDeterminant.Formula formula : CharacterDeterminant.Formula.values()) {
+                if (formula != CharacterDeterminant.Formula.WITH_COEFFICIENT) {
+                    KnnResult result = classifier.classify(inputCharacter, library, k, formula);
+                    System.out.printf("Result by %s: %s, votes %s%n", formula, result.getLabel(), result.getVotes());
+                }
+            }
         } else {
-            throw new IllegalArgumentException("You need specify -f option with file name");
+            throw new IllegalArgumentException("You need specify -f option with file name or -c option with --templates");
+        }
+    }
+
+    private static void runOffHeapTemplates(CommandLine cmd, TemplateLoader templateLoader) throws IOException {
+        OffHeapTemplateStore.Encoding encoding = OffHeapTemplateStore.Encoding.valueOf(
+                cmd.getOptionValue(OFF_HEAP_OPTION).toUpperCase().replace('-', '_'));
+        OffHeapTemplateStore store = templateLoader.loadOffHeap(Paths.get(cmd.getOptionValue(TEMPLATES_OPTION)),
+                cmd.hasOption(WEIGHTS_OPTION) ? Paths.get(cmd.getOptionValue(WEIGHTS_OPTION)) : null, encoding);
+
+        System.out.printf("Templates stored off heap: %d templates of %d labels, %s encoding%n", store.size(),
+                store.getLabels().size(), store.getEncoding());
+        System.out.printf("Footprint: %d bytes off heap, %d bytes of direct buffers, heap used %d bytes%n",
+                store.getOffHeapBytes(), MemoryFootprint.directUsed(), MemoryFootprint.heapUsed());
+
+        if (Metrics.ENABLED) {
+            Metrics.gauge("store.offheap.bytes", store::getOffHeapBytes);
+            MemoryFootprint.registerGauges();
+        }
+
+        if (cmd.hasOption(FILE_OPTION)) {
+            Character inputCharacter = new CSVHandler().readCharacter(new FileCharacterInfo(cmd.getOptionValue(FILE_OPTION), null));
+            int k = cmd.hasOption(KNN_OPTION) ? Integer.parseInt(cmd.getOptionValue(KNN_OPTION)) : DEFAULT_NEIGHBOURS;
+            KnnClassifier classifier = new KnnClassifier();
+
+            for (CharacterDeterminant.Formula formula : CharacterDeterminant.Formula.values()) {
+                if (formula != CharacterDeterminant.Formula.WITH_COEFFICIENT || cmd.hasOption(WEIGHTS_OPTION)) {
+                    KnnResult result = classifier.classify(inputCharacter, store, k, formula);
+                    System.out.printf("Result by %s: %s, votes %s%n", formula, result.getLabel(), result.getVotes());
+                }
+            }
         }
     }
+
+    private static List<Standard> labels(List<Character> characters) {
+        return characters.stream()
+                .map(Character::getStandard)
+                .collect(Collectors.toList());
+    }
+
+    private static int threads(CommandLine cmd) {
+        return cmd.hasOption(THREADS_OPTION)
+                ? Integer.parseInt(cmd.getOptionValue(THREADS_OPTION))
+                : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static ResultCache openCache(CommandLine cmd) {
+        if (!cmd.hasOption(CACHE_OPTION)) {
+            return null;
+        }
+
+        ResultCache cache = new ResultCache(Integer.parseInt(cmd.getOptionValue(CACHE_OPTION)));
+        if (Metrics.ENABLED) {
+            Metrics.gauge("cache.hits", cache::getHits);
+            Metrics.gauge("cache.misses", cache::getMisses);
+            Metrics.gauge("cache.invalidations", cache::getInvalidations);
+        }
+
+        return cache;
+    }
+
+    private static MetricsReporter openMetricsReporter(CommandLine cmd) {
+        if (!cmd.hasOption(METRICS_OPTION)) {
+            return null;
+        }
+
+        MetricsReporter.Format format = MetricsReporter.Format.valueOf(
+                cmd.getOptionValue(METRICS_FORMAT_OPTION, MetricsReporter.Format.TEXT.name()).toUpperCase());
+        long periodMillis = Math.round(Double.parseDouble(cmd.getOptionValue(METRICS_OPTION)) * 1000);
+
+        return new MetricsReporter(System.err, format, periodMillis);
+    }
+
+    private static LibraryReloader openReloader(CommandLine cmd, StandardsLoader loader) throws IOException {
+        if (!cmd.hasOption(WATCH_OPTION)) {
+            return null;
+        }
+
+        return new LibraryReloader(loader, new LibraryReloader.Listener() {
+            @Override
+            public void reloaded(PreparedLibrary library) {
+                System.err.printf("Library reloaded: version %d, %d standards%n", library.getVersion(), library.size());
+            }
+
+            @Override
+            public void failed(Exception e) {
+                System.err.printf("Library reload failed, keeping version %d: %s%n",
+                        loader.getLibrary().getVersion(), e.getMessage());
+            }
+        });
+    }
+
+    private static ReadableByteChannel openStream(String source) throws IOException {
+        if (STANDARD_INPUT.equals(source)) {
+            return Channels.newChannel(System.in);
+        }
+
+        return Files.newByteChannel(Paths.get(source));
+    }
+
+    /**
+     * Single -f classification without result format prints banners, the other modes write results
+     * through a sink and their messages go to standard error.
+     */
+    private static boolean isInteractive(CommandLine cmd) {
+        return !cmd.hasOption(RESULT_FORMAT_OPTION)
+                && !cmd.hasOption(STREAM_OPTION)
+                && !cmd.hasOption(DIRECTORY_OPTION)
+                && !cmd.hasOption(MANIFEST_OPTION);
+    }
+
+    private static ResultSink.Format resultFormat(CommandLine cmd) {
+        return ResultSink.Format.parse(cmd.getOptionValue(RESULT_FORMAT_OPTION, ResultSink.Format.CSV.name()));
+    }
+
+    /**
+     * The sink buffers results itself, so standard output is written through in large chunks and only flushed on close.
+     */
+    private static OutputStream openResultOutput(CommandLine cmd) throws IOException {
+        if (cmd.hasOption(OUTPUT_OPTION)) {
+            return Files.newOutputStream(Paths.get(cmd.getOptionValue(OUTPUT_OPTION)));
+        }
+
+        return new FilterOutputStream(System.out) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
 }
@@ -0,0 +1,42 @@
+package org.khpi.ai.metrics;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Memory use of the process, to compare the heap and the direct buffers of off-heap stores.
+ */
+public class MemoryFootprint {
+    private static final String DIRECT_POOL = "direct";
+
+    private MemoryFootprint() {
+    }
+
+    /**
+     * @return bytes used by objects on the heap, including garbage not collected yet.
+     */
+    public static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return bytes of all direct buffers of the process.
+     */
+    public static long directUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (DIRECT_POOL.equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Registers both values as gauges {@code memory.heap.used} and {@code memory.direct.used}.
+     */
+    public static void registerGauges() {
+        Metrics.gauge("memory.heap.used", MemoryFootprint::heapUsed);
+        Metrics.gauge("memory.direct.used", MemoryFootprint::directUsed);
+    }
+}
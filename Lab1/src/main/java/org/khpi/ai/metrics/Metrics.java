@@ -0,0 +1,103 @@
+package org.khpi.ai.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of classification metrics: histograms, counters and gauges read by {@link MetricsReporter}.
+ * Metrics are off unless the JVM runs with {@code -Dorg.khpi.ai.metrics=true}. Instrumented code tests
+ * the constant {@link #ENABLED} before doing anything, so with metrics off the JIT drops the instrumentation.
+ * Recorded scoring and parsing are also emitted as JDK Flight Recorder events, committed when a recording
+ * enables them.
+ */
+public class Metrics {
+    public static final String METRICS_PROPERTY = "org.khpi.ai.metrics";
+    public static final boolean ENABLED = Boolean.getBoolean(METRICS_PROPERTY);
+    public static final String NANOSECONDS = "ns";
+
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+    private static final LongAdder STANDARDS_SCANNED = counter("standards.scanned");
+    private static final LongAdder STANDARDS_PRUNED = counter("standards.pruned");
+    private static final LongAdder STANDARDS_REJECTED = counter("standards.rejected");
+
+    private Metrics() {
+    }
+
+    /**
+     * @param unit printed after the values, e.g. {@link #NANOSECONDS}, empty for counts.
+     * @return histogram registered under the name, created on the first call.
+     */
+    public static Histogram histogram(String name, String unit) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new Histogram(key, unit));
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a value read at every report, replacing a gauge of the same name.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} before scoring.
+     * @param standards standards in the library, scanned or pruned.
+     * @param pruned standards skipped by their lower bound.
+     * @param rejected standards scanned to a sum above the kept ones.
+     */
+    public static void recordScoring(Histogram timer, String formula, long startNanos, int standards, int pruned,
+                                     int rejected) {
+        final long elapsed = System.nanoTime() - startNanos;
+
+        timer.record(elapsed);
+        STANDARDS_SCANNED.add(standards - pruned);
+        STANDARDS_PRUNED.add(pruned);
+        STANDARDS_REJECTED.add(rejected);
+
+        ScoringEvent event = new ScoringEvent();
+        if (event.shouldCommit()) {
+            event.formula = formula;
+            event.scoringTime = elapsed;
+            event.standards = standards;
+            event.pruned = pruned;
+            event.rejected = rejected;
+            event.commit();
+        }
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} before parsing.
+     */
+    public static void recordParse(Histogram timer, String source, long startNanos, int glyphs) {
+        final long elapsed = System.nanoTime() - startNanos;
+
+        timer.record(elapsed);
+
+        ParseEvent event = new ParseEvent();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.parseTime = elapsed;
+            event.glyphs = glyphs;
+            event.commit();
+        }
+    }
+
+    static Map<String, Histogram> getHistograms() {
+        return HISTOGRAMS;
+    }
+
+    static Map<String, LongAdder> getCounters() {
+        return COUNTERS;
+    }
+
+    static Map<String, LongSupplier> getGauges() {
+        return GAUGES;
+    }
+}
@@ -0,0 +1,145 @@
+package org.khpi.ai.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Prints registered metrics periodically and once more when closed, as text lines or
+ * as one JSON object per report. Values are totals since the start of the process, histograms
+ * without values are left out.
+ */
+public class MetricsReporter implements Closeable {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final PrintStream out;
+    private final Format format;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService scheduler;
+
+    public enum Format {
+        TEXT, JSON
+    }
+
+    /**
+     * @param periodMillis time between reports, 0 reports only when closed.
+     */
+    public MetricsReporter(PrintStream out, Format format, long periodMillis) {
+        if (periodMillis < 0) {
+            throw new IllegalArgumentException(String.format("Report period must not be negative, got %d", periodMillis));
+        }
+
+        this.out = out;
+        this.format = format;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (periodMillis > 0) {
+            scheduler.scheduleAtFixedRate(this::report, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void report() {
+        out.print(format == Format.JSON ? json() : text());
+        out.flush();
+    }
+
+    private String text() {
+        StringBuilder text = new StringBuilder(String.format("Metrics after %.1f s%n", uptimeSeconds()));
+
+        for (Histogram histogram : Metrics.getHistograms().values()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+
+            final String unit = histogram.getUnit().isEmpty() ? "" : " " + histogram.getUnit();
+
+            text.append(String.format("  %s: count %d, mean %.1f%s", histogram.getName(), histogram.getCount(),
+                    histogram.getMean(), unit));
+            for (double percentile : PERCENTILES) {
+                text.append(String.format(", p%s %d%s", format(percentile), histogram.getPercentile(percentile), unit));
+            }
+            text.append(String.format(", max %d%s%n", histogram.getMax(), unit));
+        }
+
+        for (Map.Entry<String, LongAdder> counter : Metrics.getCounters().entrySet()) {
+            text.append(String.format("  %s: %d%n", counter.getKey(), counter.getValue().sum()));
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : Metrics.getGauges().entrySet()) {
+            text.append(String.format("  %s: %d%n", gauge.getKey(), gauge.getValue().getAsLong()));
+        }
+
+        return text.toString();
+    }
+
+    private String json() {
+        StringBuilder json = new StringBuilder(
+                String.format(Locale.ROOT, "{\"uptime\":%.3f,\"histograms\":{", uptimeSeconds()));
+        String separator = "";
+
+        for (Histogram histogram : Metrics.getHistograms().values()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+
+            json.append(separator).append(quote(histogram.getName()))
+                    .append(":{\"unit\":").append(quote(histogram.getUnit()))
+                    .append(",\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(String.format(Locale.ROOT, "%.1f", histogram.getMean()));
+            for (double percentile : PERCENTILES) {
+                json.append(",\"p").append(format(percentile)).append("\":").append(histogram.getPercentile(percentile));
+            }
+            json.append(",\"max\":").append(histogram.getMax()).append('}');
+            separator = ",";
+        }
+
+        json.append("},\"counters\":{");
+        separator = "";
+        for (Map.Entry<String, LongAdder> counter : Metrics.getCounters().entrySet()) {
+            json.append(separator).append(quote(counter.getKey())).append(':').append(counter.getValue().sum());
+            separator = ",";
+        }
+
+        json.append("},\"gauges\":{");
+        separator = "";
+        for (Map.Entry<String, LongSupplier> gauge : Metrics.getGauges().entrySet()) {
+            json.append(separator).append(quote(gauge.getKey())).append(':').append(gauge.getValue().getAsLong());
+            separator = ",";
+        }
+
+        return json.append("}}").append(System.lineSeparator()).toString();
+    }
+
+    private double uptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile)
+                ? String.valueOf((long) percentile)
+                : String.valueOf(percentile);
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Stops periodic reports and prints the final one.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        report();
+    }
+}
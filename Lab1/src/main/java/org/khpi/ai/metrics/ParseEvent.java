@@ -0,0 +1,24 @@
+package org.khpi.ai.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("org.khpi.ai.Parse")
+@Label("Parse")
+@Category("Character Identifier")
+@Description("Glyphs parsed from a file or request")
+class ParseEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseTime;
+
+    @Label("Glyphs")
+    int glyphs;
+}
@@ -0,0 +1,32 @@
+package org.khpi.ai.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("org.khpi.ai.Scoring")
+@Label("Scoring")
+@Category("Character Identifier")
+@Description("Input scored against the standards library by one formula")
+class ScoringEvent extends Event {
+    @Label("Formula")
+    String formula;
+
+    @Label("Scoring Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long scoringTime;
+
+    @Label("Standards")
+    int standards;
+
+    @Label("Pruned")
+    @Description("Standards skipped by their lower bound")
+    int pruned;
+
+    @Label("Rejected")
+    @Description("Standards scanned to a sum above the kept ones, abandoned early where the formula allows it")
+    int rejected;
+}
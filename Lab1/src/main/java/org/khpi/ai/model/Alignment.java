@@ -0,0 +1,40 @@
+package org.khpi.ai.model;
+
+/**
+ * Standard matched at its best offset: the input shifted down by {@code rowShift} and right by
+ * {@code columnShift} cells, negative values shift it up and left.
+ */
+public class Alignment {
+    private final Standard standard;
+    private final double score;
+    private final int rowShift;
+    private final int columnShift;
+
+    public Alignment(Standard standard, double score, int rowShift, int columnShift) {
+        this.standard = standard;
+        this.score = score;
+        this.rowShift = rowShift;
+        this.columnShift = columnShift;
+    }
+
+    public Standard getStandard() {
+        return standard;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public int getRowShift() {
+        return rowShift;
+    }
+
+    public int getColumnShift() {
+        return columnShift;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s) shifted by (%d, %d)", standard, score, rowShift, columnShift);
+    }
+}
@@ -1,24 +1,190 @@
 package org.khpi.ai.model;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Immutable glyph stored as a single row-major array of cells.
+ * Glyphs with only 0/1 cells are additionally packed into a bitset, 64 cells per word.
+ */
 public class Character {
-    private final List<List<Integer>> data;
+    private final int[] cells;
+    private final int width;
+    private final int height;
     private final Standard standard;
+    private final long[] bits;
+    private final boolean nonNegative;
 
-    public Character(List<List<Integer>> data, Standard standard) {
-        this.data = data;
+    private Character(int[] cells, int width, int height, Standard standard) {
+        this.cells = cells;
+        this.width = width;
+        this.height = height;
         this.standard = standard;
+        this.bits = pack(cells);
+        this.nonNegative = isNonNegative(cells);
     }
 
-    public List<List<Integer>> getData() {
-        return data;
+    private static boolean isNonNegative(int[] cells) {
+        for (int cell : cells) {
+            if (cell < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long[] pack(int[] cells) {
+        long[] words = new long[(cells.length + Long.SIZE - 1) / Long.SIZE];
+
+        for (int k = 0; k < cells.length; k++) {
+            int cell = cells[k];
+
+            if (cell == 1) {
+                words[k / Long.SIZE] |= 1L << (k % Long.SIZE);
+            } else if (cell != 0) {
+                return null;
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Creates character from the first {@code width * height} cells of the row-major array.
+     * The cells are copied, so the source array can be reused by the caller.
+     */
+    public static Character of(int[] cells, int width, int height, Standard standard) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Character dimensions must be positive, got %dx%d", height, width));
+        }
+
+        if (cells.length < width * height) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %d cells for %dx%d character, got %d", width * height, height, width, cells.length));
+        }
+
+        return new Character(Arrays.copyOf(cells, width * height), width, height, standard);
+    }
+
+    /**
+     * Creates character from {@code width * height} row-major cells starting at {@code offset} of the array.
+     * The cells are copied, so one array can hold many characters back to back.
+     */
+    public static Character of(int[] cells, int offset, int width, int height, Standard standard) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Character dimensions must be positive, got %dx%d", height, width));
+        }
+
+        if (offset < 0 || cells.length - offset < width * height) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %d cells for %dx%d character at offset %d, got %d",
+                            width * height, height, width, offset, cells.length));
+        }
+
+        return new Character(Arrays.copyOfRange(cells, offset, offset + width * height), width, height, standard);
+    }
+
+    /**
+     * Creates 0/1 character from cells packed 8 per byte, row-major, most significant bit first,
+     * starting at {@code offset} of the array.
+     */
+    public static Character fromPackedBits(byte[] packed, int offset, int width, int height, Standard standard) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Character dimensions must be positive, got %dx%d", height, width));
+        }
+
+        int[] cells = new int[width * height];
+        if (packed.length - offset < (cells.length + Byte.SIZE - 1) / Byte.SIZE) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %d packed cells for %dx%d character", cells.length, height, width));
+        }
+
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = (packed[offset + (k >>> 3)] >>> (7 - (k & 7))) & 1;
+        }
+
+        return new Character(cells, width, height, standard);
+    }
+
+    public static Character fromRows(List<int[]> rows, Standard standard) {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Character must contain at least one row");
+        }
+
+        final int width = rows.get(0).length;
+        final int height = rows.size();
+        int[] cells = new int[width * height];
+
+        for (int i = 0; i < height; i++) {
+            int[] row = rows.get(i);
+
+            if (row.length != width) {
+                throw new IllegalArgumentException(
+                        String.format("Row %d has %d cells, expected %d", i, row.length, width));
+            }
+
+            System.arraycopy(row, 0, cells, i * width, width);
+        }
+
+        return new Character(cells, width, height, standard);
+    }
+
+    /**
+     * @return backing row-major cells. Exposed for the distance kernels, must not be modified.
+     */
+    public int[] getCells() {
+        return cells;
+    }
+
+    public boolean isNonNegative() {
+        return nonNegative;
+    }
+
+    public boolean isBinary() {
+        return bits != null;
+    }
+
+    /**
+     * @return cells packed into words, bit k of the glyph is bit {@code k % 64} of word {@code k / 64}.
+     * Unused bits of the last word are zero. Must not be modified.
+     * @throws IllegalStateException when the character is not binary.
+     */
+    public long[] getBits() {
+        if (bits == null) {
+            throw new IllegalStateException("Character is not binary");
+        }
+
+        return bits;
+    }
+
+    public int get(int row, int column) {
+        return cells[row * width + column];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSize() {
+        return cells.length;
     }
 
     public Standard getStandard() {
         return standard;
     }
 
+    public boolean hasSameDimensions(Character other) {
+        return width == other.width && height == other.height;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
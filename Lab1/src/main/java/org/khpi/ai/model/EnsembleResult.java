@@ -0,0 +1,51 @@
+package org.khpi.ai.model;
+
+import java.util.List;
+
+/**
+ * Outcome of the formula ensemble: the winner, how confident the formulas evaluated so far are,
+ * and which formulas were evaluated, in evaluation order.
+ */
+public class EnsembleResult {
+    private final Standard standard;
+    private final double confidence;
+    private final int votes;
+    private final List<Enum<?>> evaluatedFormulas;
+
+    public EnsembleResult(Standard standard, double confidence, int votes, List<Enum<?>> evaluatedFormulas) {
+        this.standard = standard;
+        this.confidence = confidence;
+        this.votes = votes;
+        this.evaluatedFormulas = List.copyOf(evaluatedFormulas);
+    }
+
+    public Standard getStandard() {
+        return standard;
+    }
+
+    /**
+     * @return between 0 and 1, see {@code EnsembleClassifier}.
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * @return number of evaluated formulas voting for the winner.
+     */
+    public int getVotes() {
+        return votes;
+    }
+
+    /**
+     * @return {@code CharacterDeterminant.Formula} and {@code QualitativeFormula} constants.
+     */
+    public List<Enum<?>> getEvaluatedFormulas() {
+        return evaluatedFormulas;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (confidence %.2f, %d of %s)", standard, confidence, votes, evaluatedFormulas);
+    }
+}
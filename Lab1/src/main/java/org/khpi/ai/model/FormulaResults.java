@@ -0,0 +1,46 @@
+package org.khpi.ai.model;
+
+import org.khpi.ai.service.CharacterDeterminant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Winner standard of every distance and qualitative formula for one input character.
+ */
+public class FormulaResults {
+    private final Map<CharacterDeterminant.Formula, Standard> formulaWinners;
+    private final Map<CharacterDeterminant.QualitativeFormula, Standard> qualitativeWinners;
+
+    public FormulaResults(Map<CharacterDeterminant.Formula, Standard> formulaWinners,
+                          Map<CharacterDeterminant.QualitativeFormula, Standard> qualitativeWinners) {
+        this.formulaWinners = Collections.unmodifiableMap(new EnumMap<>(formulaWinners));
+        this.qualitativeWinners = Collections.unmodifiableMap(new EnumMap<>(qualitativeWinners));
+    }
+
+    public Standard getStandard(CharacterDeterminant.Formula formula) {
+        return formulaWinners.get(formula);
+    }
+
+    public Standard getStandard(CharacterDeterminant.QualitativeFormula formula) {
+        return qualitativeWinners.get(formula);
+    }
+
+    public Map<CharacterDeterminant.Formula, Standard> getFormulaWinners() {
+        return formulaWinners;
+    }
+
+    public Map<CharacterDeterminant.QualitativeFormula, Standard> getQualitativeWinners() {
+        return qualitativeWinners;
+    }
+
+    /**
+     * @return qualitative winners in {@link CharacterDeterminant.QualitativeFormula} order.
+     */
+    public List<Standard> getQualitativeStandards() {
+        return new ArrayList<>(qualitativeWinners.values());
+    }
+}
@@ -35,19 +35,19 @@ public class FormulasRepresentation {
                     "                      k=1";
 
 
+    private static final String SEPARATOR = "-------------------------------------------";
+
+    /**
+     * Prints the banner with a single write, see {@link org.khpi.ai.service.ResultSink} for bulk results.
+     */
     public static void printResult(Standard standard, CharacterDeterminant.Formula formula) {
-        System.out.println("-------------------------------------------");
-        System.out.println("Used formula: ");
-        System.out.println(getRepresentationForFormula(formula));
-        System.out.printf("%n----> You character is %s <----%n", standard);
-        System.out.println("-------------------------------------------");
+        System.out.print(String.format("%s%nUsed formula: %n%s%n%n----> You character is %s <----%n%s%n",
+                SEPARATOR, getRepresentationForFormula(formula), standard, SEPARATOR));
     }
 
     public static void printMultipleResult(List<Standard> standardList) {
-        System.out.println("-------------------------------------------");
-        System.out.println("Used formulas: Russell and Rao, Jokard and Needman, Dyce, Sokal and Snif");
-        System.out.printf("%n----> Results by formulas %s <----%n", standardList);
-        System.out.println("-------------------------------------------");
+        System.out.print(String.format("%s%nUsed formulas: Russell and Rao, Jokard and Needman, Dyce, Sokal and Snif%n"
+                + "%n----> Results by formulas %s <----%n%s%n", SEPARATOR, standardList, SEPARATOR));
     }
 
     public static String getRepresentationForFormula(CharacterDeterminant.Formula formula) {
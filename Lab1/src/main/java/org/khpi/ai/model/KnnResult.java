@@ -0,0 +1,45 @@
+package org.khpi.ai.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of k nearest neighbours voting: the neighbours nearest first, votes per label and the winner.
+ */
+public class KnnResult {
+    private final Label label;
+    private final Map<Label, Integer> votes;
+    private final List<ScoredLabel> neighbours;
+
+    /**
+     * @param votes votes per label, most voted first.
+     */
+    public KnnResult(Label label, Map<Label, Integer> votes, List<ScoredLabel> neighbours) {
+        this.label = label;
+        this.votes = Collections.unmodifiableMap(new LinkedHashMap<>(votes));
+        this.neighbours = List.copyOf(neighbours);
+    }
+
+    public Label getLabel() {
+        return label;
+    }
+
+    public int getVotes(Label label) {
+        return votes.getOrDefault(label, 0);
+    }
+
+    public Map<Label, Integer> getVotes() {
+        return votes;
+    }
+
+    public List<ScoredLabel> getNeighbours() {
+        return neighbours;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", label, votes);
+    }
+}
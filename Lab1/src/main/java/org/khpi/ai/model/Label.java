@@ -0,0 +1,43 @@
+package org.khpi.ai.model;
+
+/**
+ * Open class label, e.g. a letter, a digit or a Cyrillic glyph name, with a compact id given by
+ * {@link org.khpi.ai.service.LabelRegistry}. Ids are dense, so per-label values can be kept in arrays.
+ */
+public class Label {
+    private final int id;
+    private final String name;
+
+    public Label(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Label label = (Label) o;
+
+        return id == label.id && name.equals(label.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
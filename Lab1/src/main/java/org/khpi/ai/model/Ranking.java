@@ -0,0 +1,43 @@
+package org.khpi.ai.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Best standards for one input, best first. Scores are formula values:
+ * distances for {@code Formula}, similarities for {@code QualitativeFormula}.
+ */
+public class Ranking {
+    private final List<ScoredStandard> entries;
+
+    public Ranking(List<ScoredStandard> entries) {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("Ranking must have at least one entry");
+        }
+
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<ScoredStandard> getEntries() {
+        return entries;
+    }
+
+    public ScoredStandard getBest() {
+        return entries.get(0);
+    }
+
+    /**
+     * @return score distance between the best and the second standard,
+     * or positive infinity when there is no second standard.
+     */
+    public double getMargin() {
+        return entries.size() < 2
+                ? Double.POSITIVE_INFINITY
+                : Math.abs(entries.get(1).getScore() - entries.get(0).getScore());
+    }
+
+    @Override
+    public String toString() {
+        return entries.toString();
+    }
+}
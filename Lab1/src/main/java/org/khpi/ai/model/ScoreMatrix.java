@@ -0,0 +1,65 @@
+package org.khpi.ai.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scores of every input against every standard by one formula, row-major with a row per input,
+ * and the nearest standard of every input.
+ */
+public class ScoreMatrix {
+    private final int inputCount;
+    private final int standardCount;
+    private final double[] scores;
+    private final int[] nearestIndexes;
+    private final Standard[] nearest;
+
+    /**
+     * @param scores {@code inputCount × standardCount} scores, may be null when only the nearest are kept.
+     */
+    public ScoreMatrix(int inputCount, int standardCount, double[] scores, int[] nearestIndexes, Standard[] nearest) {
+        this.inputCount = inputCount;
+        this.standardCount = standardCount;
+        this.scores = scores;
+        this.nearestIndexes = nearestIndexes;
+        this.nearest = nearest;
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    public int getStandardCount() {
+        return standardCount;
+    }
+
+    public boolean hasScores() {
+        return scores != null;
+    }
+
+    /**
+     * @throws IllegalStateException when only the nearest standards were computed.
+     */
+    public double getScore(int input, int standard) {
+        if (scores == null) {
+            throw new IllegalStateException("Scores were not kept");
+        }
+
+        return scores[input * standardCount + standard];
+    }
+
+    /**
+     * @return index of the nearest standard in the library.
+     */
+    public int getNearestIndex(int input) {
+        return nearestIndexes[input];
+    }
+
+    public Standard getNearest(int input) {
+        return nearest[input];
+    }
+
+    public List<Standard> getNearest() {
+        return Arrays.asList(nearest.clone());
+    }
+}
@@ -0,0 +1,24 @@
+package org.khpi.ai.model;
+
+public class ScoredLabel {
+    private final Label label;
+    private final double score;
+
+    public ScoredLabel(Label label, double score) {
+        this.label = label;
+        this.score = score;
+    }
+
+    public Label getLabel() {
+        return label;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", label, score);
+    }
+}
@@ -0,0 +1,24 @@
+package org.khpi.ai.model;
+
+public class ScoredStandard {
+    private final Standard standard;
+    private final double score;
+
+    public ScoredStandard(Standard standard, double score) {
+        this.standard = standard;
+        this.score = score;
+    }
+
+    public Standard getStandard() {
+        return standard;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", standard, score);
+    }
+}
@@ -0,0 +1,22 @@
+package org.khpi.ai.model;
+
+/**
+ * One labelled sample glyph, a class may have any number of them.
+ */
+public class Template {
+    private final Label label;
+    private final Character character;
+
+    public Template(Label label, Character character) {
+        this.label = label;
+        this.character = character;
+    }
+
+    public Label getLabel() {
+        return label;
+    }
+
+    public Character getCharacter() {
+        return character;
+    }
+}
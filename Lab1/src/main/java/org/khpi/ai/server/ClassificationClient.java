@@ -0,0 +1,139 @@
+package org.khpi.ai.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client of {@link ClassificationServer}. Requests can be sent one by one with {@link #classifyCsv}
+ * and {@link #classifyBinary}, or pipelined: several {@code send} calls, {@link #flush()} and then
+ * one {@link #readResponse()} per request, in the same order. Not thread safe.
+ */
+public class ClassificationClient implements Closeable {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private byte[] cellBytes = new byte[0];
+
+    public ClassificationClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        input = new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE);
+        output = new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE);
+    }
+
+    public String classifyCsv(String formulas, byte[] csv) throws IOException {
+        sendCsv(formulas, csv);
+        flush();
+        return readResponse();
+    }
+
+    public String classifyBinary(String formulas, int width, int height, int[] cells) throws IOException {
+        sendBinary(formulas, width, height, cells);
+        flush();
+        return readResponse();
+    }
+
+    public void sendCsv(String formulas, byte[] csv) throws IOException {
+        writeHeader(String.format("%s %s %d\n", ClassificationServer.CSV_REQUEST, formulas, csv.length));
+        output.write(csv);
+    }
+
+    /**
+     * @param cells row-major 0/1 cells.
+     */
+    public void sendBinary(String formulas, int width, int height, int[] cells) throws IOException {
+        if (cells.length != width * height) {
+            throw new IllegalArgumentException(String.format("Glyph %dx%d cannot have %d cells", width, height, cells.length));
+        }
+
+        writeHeader(String.format("%s %s %d %d\n", ClassificationServer.BINARY_REQUEST, formulas, width, height));
+        output.write(pack(cells));
+    }
+
+    /**
+     * Asks for the k best standards of every formula, answered as described in {@link ClassificationServer}.
+     *
+     * @param cells row-major cells of any values.
+     */
+    public void sendRank(String formulas, int k, int width, int height, int[] cells) throws IOException {
+        if (cells.length != width * height) {
+            throw new IllegalArgumentException(String.format("Glyph %dx%d cannot have %d cells", width, height, cells.length));
+        }
+
+        writeHeader(String.format("%s %s %d %d %d\n", ClassificationServer.RANK_REQUEST, formulas, k, width, height));
+
+        if (cellBytes.length < cells.length * Integer.BYTES) {
+            cellBytes = new byte[cells.length * Integer.BYTES];
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(cellBytes);
+        for (int cell : cells) {
+            buffer.putInt(cell);
+        }
+
+        output.write(cellBytes, 0, buffer.position());
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * @return response line without line break.
+     */
+    public String readResponse() throws IOException {
+        line.reset();
+        int b;
+
+        while ((b = input.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Server closed connection");
+            }
+            line.write(b);
+        }
+
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true when a response can be read without waiting for the server.
+     */
+    public boolean isResponseReady() throws IOException {
+        return input.available() > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    static byte[] pack(int[] cells) {
+        byte[] packed = new byte[(cells.length + Byte.SIZE - 1) / Byte.SIZE];
+
+        for (int k = 0; k < cells.length; k++) {
+            if (cells[k] != 0 && cells[k] != 1) {
+                throw new IllegalArgumentException(String.format("Binary glyph cannot have value %d", cells[k]));
+            }
+
+            packed[k >>> 3] |= cells[k] << (7 - (k & 7));
+        }
+
+        return packed;
+    }
+
+    private void writeHeader(String header) throws IOException {
+        output.write(header.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,503 @@
+package org.khpi.ai.server;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+import org.khpi.ai.service.FormulaSelection;
+import org.khpi.ai.service.GlyphParser;
+import org.khpi.ai.service.LibraryShard;
+import org.khpi.ai.service.PreparedLibrary;
+import org.khpi.ai.service.ResultCache;
+import org.khpi.ai.service.TopEntries;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Classification server on the loopback interface that keeps standards loaded between requests.
+ * Every connection is served by its own thread, requests of one connection may be pipelined
+ * and are answered in order. Responses are flushed only when no further request is already buffered.
+ * <p>
+ * Request is a header line followed by the glyph:
+ * <pre>
+ * csv &lt;formulas&gt; &lt;length&gt;\n      length bytes of CSV glyph
+ * bin &lt;formulas&gt; &lt;width&gt; &lt;height&gt;\n  ⌈width × height / 8⌉ bytes of 0/1 cells, row-major, most significant bit first
+ * rank &lt;formulas&gt; &lt;k&gt; &lt;width&gt; &lt;height&gt;\n  width × height big-endian 32-bit cells, row-major
+ * </pre>
+ * where formulas are {@code all} or comma separated formula names. Response is one line:
+ * <pre>
+ * ok WITH_SQUARE_ROOT=A WITH_MODULE=A ...
+ * ok WITH_SQUARE_ROOT=&lt;index&gt;:&lt;label&gt;:&lt;key&gt;,... ...   answer to rank, see {@link TopEntries}
+ * error &lt;message&gt;
+ * </pre>
+ * A {@code rank} request is answered with the k best standards of every formula, best first, under their indexes
+ * in the whole library and with raw keys, so the answers of the {@link LibraryShard shards} of a library can be
+ * merged by a {@link ShardCoordinator}. k must be positive and a shard answers at most its number of standards.
+ * A malformed header is answered with an error and closes the connection, since the request length is unknown,
+ * a header longer than {@code MAX_HEADER_LENGTH} is answered with an error and skipped up to its line break.
+ * Binary and rank glyphs of a size no standard has are answered with an error without reading them into memory.
+ * Every request is classified against the library snapshot current when it arrives.
+ */
+public class ClassificationServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+    public static final String CSV_REQUEST = "csv";
+    public static final String BINARY_REQUEST = "bin";
+    public static final String RANK_REQUEST = "rank";
+    public static final String OK_RESPONSE = "ok";
+    public static final String ERROR_RESPONSE = "error";
+    public static final char ENTRY_DELIMITER = ':';
+
+    private static final int BACKLOG = 128;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_LENGTH = 1024;
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+    private static final int MAX_CACHED_SELECTIONS = 256;
+    private static final Histogram PARSE_TIME = Metrics.histogram("parse.request", Metrics.NANOSECONDS);
+    private static final Histogram REQUEST_TIME = Metrics.histogram("server.request", Metrics.NANOSECONDS);
+
+    private final Supplier<PreparedLibrary> library;
+    private final LibraryShard shard;
+    private final ResultCache cache;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final Map<String, FormulaSelection> selections = new ConcurrentHashMap<>();
+
+    public ClassificationServer(int port, PreparedLibrary library) throws IOException {
+        this(port, library, null);
+    }
+
+    /**
+     * @param cache results of repeated glyphs, may be null.
+     */
+    public ClassificationServer(int port, PreparedLibrary library, ResultCache cache) throws IOException {
+        this(port, () -> library, cache);
+    }
+
+    /**
+     * @param library supplies the current library snapshot, e.g. {@code StandardsLoader::getLibrary}.
+     * @param cache results of repeated glyphs, may be null.
+     */
+    public ClassificationServer(int port, Supplier<PreparedLibrary> library, ResultCache cache) throws IOException {
+        this(port, library, null, cache);
+    }
+
+    /**
+     * Serves one shard of a library: glyphs are classified against the standards of the shard only.
+     *
+     * @param cache results of repeated glyphs, may be null.
+     */
+    public ClassificationServer(int port, LibraryShard shard, ResultCache cache) throws IOException {
+        this(port, shard::getLibrary, shard, cache);
+    }
+
+    private ClassificationServer(int port, Supplier<PreparedLibrary> library, LibraryShard shard, ResultCache cache)
+            throws IOException {
+        if (library.get().size() == 0) {
+            throw new IllegalArgumentException("Cannot serve empty standards library");
+        }
+
+        this.library = library;
+        this.shard = shard;
+        this.cache = cache;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+
+        AtomicInteger connectionNumber = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "classification-connection-" + connectionNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+
+            socket.setTcpNoDelay(true);
+            openSockets.add(socket);
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            new Connection(socket).run();
+        } catch (IOException e) {
+            // client went away, nothing to answer
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private FormulaSelection selection(String specification) {
+        FormulaSelection selection = selections.get(specification);
+
+        if (selection == null) {
+            selection = FormulaSelection.parse(specification);
+
+            if (selections.size() < MAX_CACHED_SELECTIONS) {
+                selections.put(specification, selection);
+            }
+        }
+
+        return selection;
+    }
+
+    /**
+     * Per connection state, every buffer is reused between requests.
+     */
+    private class Connection {
+        private final DataInputStream input;
+        private final OutputStream output;
+        private final GlyphParser parser = new GlyphParser();
+        private final byte[] header = new byte[MAX_HEADER_LENGTH];
+        private final StringBuilder response = new StringBuilder();
+        private byte[] payload = new byte[STREAM_BUFFER_SIZE];
+        private int[] cells = new int[0];
+        private Character glyph;
+
+        Connection(Socket socket) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+            this.output = new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE);
+        }
+
+        void run() throws IOException {
+            while (true) {
+                response.setLength(0);
+                boolean keepOpen = true;
+
+                try {
+                    String line = readHeader();
+
+                    if (line == null) {
+                        break;
+                    }
+
+                    keepOpen = process(line);
+                } catch (IllegalArgumentException e) {
+                    error(e.getMessage());
+                }
+
+                output.write(response.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+                if (!keepOpen) {
+                    output.flush();
+                    return;
+                }
+
+                if (input.available() == 0) {
+                    output.flush();
+                }
+            }
+
+            output.flush();
+        }
+
+        /**
+         * @return false when the request framing is broken and the connection has to be closed.
+         */
+        private boolean process(String line) throws IOException {
+            String[] fields = line.trim().split(" +");
+            final int width;
+            final int height;
+            final int length;
+
+            try {
+                if (fields.length == 3 && CSV_REQUEST.equals(fields[0])) {
+                    width = 0;
+                    height = 0;
+                    length = parseSize(fields[2]);
+                } else if (fields.length == 4 && BINARY_REQUEST.equals(fields[0])) {
+                    width = parseSize(fields[2]);
+                    height = parseSize(fields[3]);
+                    length = binaryLength(width, height);
+                } else if (fields.length == 5 && RANK_REQUEST.equals(fields[0])) {
+                    width = parseSize(fields[3]);
+                    height = parseSize(fields[4]);
+                    length = rankLength(width, height);
+                } else {
+                    throw new IllegalArgumentException(String.format("Malformed request header: %s", line));
+                }
+
+                if (length > MAX_PAYLOAD_LENGTH) {
+                    throw new IllegalArgumentException(String.format("Request of %d bytes is too large", length));
+                }
+            } catch (IllegalArgumentException e) {
+                error(e.getMessage());
+                return false;
+            }
+
+            final PreparedLibrary snapshot = library.get();
+
+            if (!CSV_REQUEST.equals(fields[0]) && !snapshot.hasStandardOfSize(width, height)) {
+                skipPayload(length);
+                error(String.format("No standard of size %dx%d", width, height));
+                return true;
+            }
+
+            readPayload(length);
+
+            try {
+                final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                FormulaSelection formulas = selection(fields[1]);
+
+                if (RANK_REQUEST.equals(fields[0])) {
+                    final int k = parseSize(fields[2]);
+                    if (k == 0) {
+                        throw new IllegalArgumentException("Number of results must be positive, got 0");
+                    }
+
+                    Character character = parseCells(width, height);
+
+                    if (Metrics.ENABLED) {
+                        Metrics.recordParse(PARSE_TIME, fields[0], start, 1);
+                    }
+
+                    LibraryShard owned = shard != null ? shard : LibraryShard.whole(snapshot);
+                    appendEntries(response, owned.top(character, formulas, k));
+                } else {
+                    Character character = BINARY_REQUEST.equals(fields[0])
+                            ? Character.fromPackedBits(payload, 0, width, height, null)
+                            : parseCsv(length);
+
+                    if (Metrics.ENABLED) {
+                        Metrics.recordParse(PARSE_TIME, fields[0], start, 1);
+                    }
+
+                    appendResults(formulas, formulas.determine(character, snapshot, cache));
+                }
+
+                if (Metrics.ENABLED) {
+                    REQUEST_TIME.record(System.nanoTime() - start);
+                }
+            } catch (RuntimeException e) {
+                response.setLength(0);
+                error(e.getMessage());
+            }
+
+            return true;
+        }
+
+        private Character parseCsv(int length) {
+            glyph = null;
+            parser.parse(ByteBuffer.wrap(payload, 0, length), record -> {
+                if (glyph == null) {
+                    glyph = record.toCharacter(null);
+                }
+            });
+
+            if (glyph == null) {
+                throw new IllegalArgumentException("Request has no glyph");
+            }
+
+            return glyph;
+        }
+
+        private Character parseCells(int width, int height) {
+            final int size = width * height;
+
+            if (cells.length < size) {
+                cells = new int[size];
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(payload, 0, size * Integer.BYTES);
+            for (int i = 0; i < size; i++) {
+                cells[i] = buffer.getInt();
+            }
+
+            return Character.of(cells, width, height, null);
+        }
+
+        private void readPayload(int length) throws IOException {
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+
+            input.readFully(payload, 0, length);
+        }
+
+        private void skipPayload(int length) throws IOException {
+            for (int skipped = 0; skipped < length; ) {
+                final int step = input.skipBytes(length - skipped);
+
+                if (step == 0) {
+                    input.readByte();
+                    skipped++;
+                } else {
+                    skipped += step;
+                }
+            }
+        }
+
+        /**
+         * @return header line without line break, or null at the end of stream.
+         * @throws IllegalArgumentException when the header is too long, it is skipped up to its line break.
+         */
+        private String readHeader() throws IOException {
+            int length = 0;
+            int b;
+
+            while ((b = input.read()) != '\n') {
+                if (b == -1) {
+                    if (length == 0) {
+                        return null;
+                    }
+                    throw new EOFException("Request header is not terminated");
+                }
+
+                if (length == header.length) {
+                    skipLine();
+                    throw new IllegalArgumentException(
+                            String.format("Request header is longer than %d bytes", MAX_HEADER_LENGTH));
+                }
+
+                header[length++] = (byte) b;
+            }
+
+            return new String(header, 0, length, StandardCharsets.US_ASCII);
+        }
+
+        private void skipLine() throws IOException {
+            int b;
+
+            while ((b = input.read()) != '\n') {
+                if (b == -1) {
+                    throw new EOFException("Request header is not terminated");
+                }
+            }
+        }
+
+        private void appendResults(FormulaSelection formulas, FormulaResults results) {
+            response.append(OK_RESPONSE);
+
+            for (Formula formula : formulas.getFormulas()) {
+                appendResult(formula.name(), results.getStandard(formula));
+            }
+
+            for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+                appendResult(formula.name(), results.getStandard(formula));
+            }
+        }
+
+        private void appendResult(String formula, Standard standard) {
+            response.append(' ').append(formula).append('=').append(standard);
+        }
+
+        private void error(String message) {
+            response.append(ERROR_RESPONSE).append(' ').append(String.valueOf(message).replace('\n', ' '));
+        }
+    }
+
+    /**
+     * Writes the answer of a rank request: {@code ok}, then per formula its name, {@code =} and comma separated
+     * {@code index:label:key} entries, best first. Read back by {@link ShardCoordinator}.
+     */
+    static void appendEntries(StringBuilder response, TopEntries entries) {
+        response.append(OK_RESPONSE);
+        entries.forEach(new TopEntries.EntryVisitor() {
+            private Enum<?> last;
+
+            @Override
+            public void visit(Formula formula, int index, Standard standard, double key) {
+                append(formula, index, standard, key);
+            }
+
+            @Override
+            public void visit(QualitativeFormula formula, int index, Standard standard, double key) {
+                append(formula, index, standard, key);
+            }
+
+            private void append(Enum<?> formula, int index, Standard standard, double key) {
+                response.append(formula == last ? ',' : ' ');
+                if (formula != last) {
+                    response.append(formula.name()).append('=');
+                    last = formula;
+                }
+
+                response.append(index).append(ENTRY_DELIMITER).append(standard).append(ENTRY_DELIMITER).append(key);
+            }
+        });
+    }
+
+    private static int parseSize(String value) {
+        try {
+            int size = Integer.parseInt(value);
+
+            if (size < 0) {
+                throw new IllegalArgumentException(String.format("Negative size: %s", value));
+            }
+
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Illegal size: %s", value), e);
+        }
+    }
+
+    private static int rankLength(int width, int height) {
+        final long bytes = (long) width * height * Integer.BYTES;
+
+        if (bytes == 0 || bytes > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException(String.format("Illegal glyph size %dx%d", width, height));
+        }
+
+        return (int) bytes;
+    }
+
+    private static int binaryLength(int width, int height) {
+        final long cells = (long) width * height;
+
+        if (cells == 0 || cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Illegal glyph size %dx%d", width, height));
+        }
+
+        return (int) ((cells + Byte.SIZE - 1) / Byte.SIZE);
+    }
+}
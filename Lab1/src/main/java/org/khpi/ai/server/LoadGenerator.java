@@ -0,0 +1,208 @@
+package org.khpi.ai.server;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FileCharacterInfo;
+import org.khpi.ai.service.CSVHandler;
+import org.khpi.ai.service.FormulaSelection;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test of a running {@link ClassificationServer}: every connection sends one glyph over and over,
+ * keeping up to {@code pipeline} requests in flight, and latency percentiles and throughput are printed.
+ * <pre>
+ * java -cp Lab1-1.0-SNAPSHOT-jar-with-dependencies.jar org.khpi.ai.server.LoadGenerator -f glyph.csv -c 4 -w 16
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final String HOST_OPTION = "H";
+    private static final String PORT_OPTION = "p";
+    private static final String FILE_OPTION = "f";
+    private static final String FORMULAS_OPTION = "F";
+    private static final String BINARY_OPTION = "b";
+    private static final String CONNECTIONS_OPTION = "c";
+    private static final String REQUESTS_OPTION = "n";
+    private static final String WARMUP_OPTION = "W";
+    private static final String PIPELINE_OPTION = "w";
+
+    private final String host;
+    private final int port;
+    private final String formulas;
+    private final byte[] csv;
+    private final Character glyph;
+    private final int pipeline;
+
+    public LoadGenerator(String host, int port, String formulas, byte[] csv, Character glyph, int pipeline) {
+        if (pipeline <= 0) {
+            throw new IllegalArgumentException(String.format("Pipeline depth must be positive, got %d", pipeline));
+        }
+
+        this.host = host;
+        this.port = port;
+        this.formulas = formulas;
+        this.csv = csv;
+        this.glyph = glyph;
+        this.pipeline = pipeline;
+    }
+
+    public static void main(String[] args) throws ParseException, IOException, InterruptedException, ExecutionException {
+        Options options = new Options();
+        options.addOption(HOST_OPTION, "host", true, "server host, defaults to localhost");
+        options.addOption(PORT_OPTION, "port", true, "server port, defaults to " + ClassificationServer.DEFAULT_PORT);
+        options.addOption(FILE_OPTION, true, "glyph file to send");
+        options.addOption(FORMULAS_OPTION, "formulas", true, "comma separated formulas, defaults to all");
+        options.addOption(BINARY_OPTION, "binary", false, "send glyph in binary form instead of CSV");
+        options.addOption(CONNECTIONS_OPTION, true, "number of connections, defaults to 1");
+        options.addOption(REQUESTS_OPTION, true, "measured requests per connection, defaults to 100000");
+        options.addOption(WARMUP_OPTION, true, "warm-up requests per connection, defaults to 20000");
+        options.addOption(PIPELINE_OPTION, true, "requests in flight per connection, defaults to 1");
+
+        CommandLine cmd = new DefaultParser().parse(options, args);
+
+        if (!cmd.hasOption(FILE_OPTION)) {
+            throw new IllegalArgumentException("You need specify -f option with glyph file name");
+        }
+
+        String file = cmd.getOptionValue(FILE_OPTION);
+        Character glyph = cmd.hasOption(BINARY_OPTION)
+                ? new CSVHandler().readCharacter(new FileCharacterInfo(file, null))
+                : null;
+        if (cmd.hasOption(BINARY_OPTION) && (glyph == null || !glyph.isBinary())) {
+            throw new IllegalArgumentException(String.format("File %s has no binary glyph", file));
+        }
+
+        LoadGenerator generator = new LoadGenerator(
+                cmd.getOptionValue(HOST_OPTION, "localhost"),
+                Integer.parseInt(cmd.getOptionValue(PORT_OPTION, String.valueOf(ClassificationServer.DEFAULT_PORT))),
+                cmd.getOptionValue(FORMULAS_OPTION, FormulaSelection.ALL),
+                Files.readAllBytes(Paths.get(file)),
+                glyph,
+                Integer.parseInt(cmd.getOptionValue(PIPELINE_OPTION, "1")));
+
+        generator.run(Integer.parseInt(cmd.getOptionValue(CONNECTIONS_OPTION, "1")),
+                Integer.parseInt(cmd.getOptionValue(WARMUP_OPTION, "20000")),
+                Integer.parseInt(cmd.getOptionValue(REQUESTS_OPTION, "100000")));
+    }
+
+    public void run(int connections, int warmupRequests, int requests)
+            throws InterruptedException, ExecutionException {
+        if (connections <= 0 || requests <= 0) {
+            throw new IllegalArgumentException("Number of connections and requests must be positive");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+
+        try {
+            List<Future<ConnectionResult>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                results.add(executor.submit(() -> {
+                    try (ClassificationClient client = new ClassificationClient(host, port)) {
+                        send(client, warmupRequests, new long[warmupRequests]);
+
+                        long[] latencies = new long[requests];
+                        final long start = System.nanoTime();
+                        send(client, requests, latencies);
+
+                        return new ConnectionResult(latencies, start, System.nanoTime());
+                    }
+                }));
+            }
+
+            long[] latencies = new long[connections * requests];
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+
+            for (int i = 0; i < connections; i++) {
+                ConnectionResult result = results.get(i).get();
+                System.arraycopy(result.latencies, 0, latencies, i * requests, requests);
+                start = Math.min(start, result.start);
+                end = Math.max(end, result.end);
+            }
+
+            report(latencies, end - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Keeps up to {@code pipeline} requests in flight and stores latency of every request in nanoseconds.
+     */
+    private void send(ClassificationClient client, int requests, long[] latencies) throws IOException {
+        long[] sentAt = new long[pipeline];
+        int sent = 0;
+
+        for (; sent < Math.min(requests, pipeline); sent++) {
+            sentAt[sent] = System.nanoTime();
+            sendOne(client);
+        }
+        client.flush();
+
+        for (int received = 0; received < requests; received++) {
+            String response = client.readResponse();
+            latencies[received] = System.nanoTime() - sentAt[received % pipeline];
+
+            if (!response.startsWith(ClassificationServer.OK_RESPONSE)) {
+                throw new IllegalStateException(String.format("Request failed: %s", response));
+            }
+
+            if (sent < requests) {
+                sentAt[sent % pipeline] = System.nanoTime();
+                sendOne(client);
+                sent++;
+            }
+
+            if (!client.isResponseReady()) {
+                client.flush();
+            }
+        }
+    }
+
+    private void sendOne(ClassificationClient client) throws IOException {
+        if (glyph != null) {
+            client.sendBinary(formulas, glyph.getWidth(), glyph.getHeight(), glyph.getCells());
+        } else {
+            client.sendCsv(formulas, csv);
+        }
+    }
+
+    private static void report(long[] latencies, long elapsedNanos) {
+        Arrays.sort(latencies);
+
+        System.out.printf("Requests: %d in %.3f s, %.0f requests/s%n", latencies.length, elapsedNanos / 1e9,
+                latencies.length / (elapsedNanos / 1e9));
+        System.out.printf("Latency, us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e3);
+    }
+
+    private static double percentile(long[] sortedLatencies, double fraction) {
+        int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(fraction * sortedLatencies.length) - 1);
+        return sortedLatencies[Math.max(0, index)] / 1e3;
+    }
+
+    private static class ConnectionResult {
+        private final long[] latencies;
+        private final long start;
+        private final long end;
+
+        ConnectionResult(long[] latencies, long start, long end) {
+            this.latencies = latencies;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
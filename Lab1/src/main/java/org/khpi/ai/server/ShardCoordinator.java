@@ -0,0 +1,204 @@
+package org.khpi.ai.server;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+import org.khpi.ai.service.TopEntries;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scatter-gather client of workers that each serve one {@link org.khpi.ai.service.LibraryShard shard}
+ * of a standards library. Every input is sent to all workers as a {@code rank} request, and the local top k
+ * of every worker are merged into the top k of the whole library. Requests of a batch are pipelined:
+ * up to {@code pipeline} inputs are in flight on every worker connection before the oldest one is merged.
+ * Not thread safe.
+ */
+public class ShardCoordinator implements Closeable {
+    private static final String ADDRESS_DELIMITER = ",";
+    private static final Histogram REQUEST_TIME = Metrics.histogram("coordinator.request", Metrics.NANOSECONDS);
+    private static final Map<String, Formula> FORMULAS = new HashMap<>();
+    private static final Map<String, QualitativeFormula> QUALITATIVE_FORMULAS = new HashMap<>();
+
+    static {
+        for (Formula formula : Formula.values()) {
+            FORMULAS.put(formula.name(), formula);
+        }
+        for (QualitativeFormula formula : QualitativeFormula.values()) {
+            QUALITATIVE_FORMULAS.put(formula.name(), formula);
+        }
+    }
+
+    private final List<InetSocketAddress> addresses;
+    private final List<ClassificationClient> workers = new ArrayList<>();
+
+    /**
+     * Connects to every worker.
+     *
+     * @throws IllegalArgumentException when no worker is given.
+     */
+    public ShardCoordinator(List<InetSocketAddress> addresses) throws IOException {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("Coordinator needs at least one worker");
+        }
+
+        this.addresses = List.copyOf(addresses);
+
+        try {
+            for (InetSocketAddress address : addresses) {
+                workers.add(new ClassificationClient(address.getHostString(), address.getPort()));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param addresses comma separated {@code host:port} pairs, e.g. {@code localhost:7071,localhost:7072}.
+     */
+    public static List<InetSocketAddress> parseAddresses(String addresses) {
+        List<InetSocketAddress> parsed = new ArrayList<>();
+
+        for (String address : addresses.split(ADDRESS_DELIMITER)) {
+            String trimmed = address.trim();
+            int separator = trimmed.lastIndexOf(':');
+
+            if (separator <= 0) {
+                throw new IllegalArgumentException(String.format("Worker address must be host:port, got %s", trimmed));
+            }
+
+            try {
+                parsed.add(InetSocketAddress.createUnresolved(trimmed.substring(0, separator),
+                        Integer.parseInt(trimmed.substring(separator + 1))));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Illegal worker port: %s", trimmed), e);
+            }
+        }
+
+        return parsed;
+    }
+
+    public List<InetSocketAddress> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * @param formulas {@code all} or comma separated formula names.
+     * @return k best standards of the whole library for every formula.
+     */
+    public TopEntries rank(Character input, String formulas, int k) throws IOException {
+        return rank(List.of(input), formulas, k, 1).get(0);
+    }
+
+    /**
+     * @param pipeline number of inputs in flight on every worker connection.
+     * @return k best standards of the whole library for every formula, in the order of the inputs.
+     * @throws IllegalStateException when a worker answers with an error.
+     */
+    public List<TopEntries> rank(List<Character> inputs, String formulas, int k, int pipeline) throws IOException {
+        if (pipeline <= 0) {
+            throw new IllegalArgumentException(String.format("Pipeline depth must be positive, got %d", pipeline));
+        }
+
+        List<TopEntries> results = new ArrayList<>(inputs.size());
+        long[] sentAt = new long[pipeline];
+        int sent = 0;
+
+        while (results.size() < inputs.size()) {
+            if (sent < inputs.size() && sent - results.size() < pipeline) {
+                Character input = inputs.get(sent);
+                sentAt[sent % pipeline] = System.nanoTime();
+
+                for (ClassificationClient worker : workers) {
+                    worker.sendRank(formulas, k, input.getWidth(), input.getHeight(), input.getCells());
+                }
+
+                sent++;
+                continue;
+            }
+
+            for (ClassificationClient worker : workers) {
+                worker.flush();
+            }
+
+            TopEntries merged = new TopEntries(k);
+            for (int i = 0; i < workers.size(); i++) {
+                merged.merge(parse(workers.get(i).readResponse(), k, addresses.get(i)));
+            }
+
+            if (Metrics.ENABLED) {
+                REQUEST_TIME.record(System.nanoTime() - sentAt[results.size() % pipeline]);
+            }
+
+            results.add(merged);
+        }
+
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+
+        for (ClassificationClient worker : workers) {
+            try {
+                worker.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @param response {@code ok FORMULA=index:label:key,... ...} as written by {@link ClassificationServer}.
+     */
+    static TopEntries parse(String response, int k, InetSocketAddress worker) {
+        if (!response.startsWith(ClassificationServer.OK_RESPONSE + ' ')) {
+            throw new IllegalStateException(String.format("Worker %s failed: %s", worker, response));
+        }
+
+        TopEntries entries = new TopEntries(k);
+        String[] results = response.substring(ClassificationServer.OK_RESPONSE.length() + 1).split(" ");
+
+        for (String result : results) {
+            int separator = result.indexOf('=');
+            String name = result.substring(0, separator);
+            Formula formula = FORMULAS.get(name);
+            QualitativeFormula qualitativeFormula = QUALITATIVE_FORMULAS.get(name);
+
+            if (formula == null && qualitativeFormula == null) {
+                throw new IllegalStateException(String.format("Worker %s answered unknown formula %s", worker, name));
+            }
+
+            for (String entry : result.substring(separator + 1).split(",")) {
+                int labelStart = entry.indexOf(ClassificationServer.ENTRY_DELIMITER);
+                int keyStart = entry.indexOf(ClassificationServer.ENTRY_DELIMITER, labelStart + 1);
+                int index = Integer.parseInt(entry.substring(0, labelStart));
+                Standard standard = Standard.valueOf(entry.substring(labelStart + 1, keyStart));
+                double key = Double.parseDouble(entry.substring(keyStart + 1));
+
+                if (formula != null) {
+                    entries.offer(formula, key, index, standard);
+                } else {
+                    entries.offer(qualitativeFormula, key, index, standard);
+                }
+            }
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,145 @@
+package org.khpi.ai.server;
+
+import org.khpi.ai.service.LibraryShard;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Starts shard workers as separate JVMs on this machine, every one serving its shard on a free loopback port.
+ * The workers run the application's server mode with the class path of this JVM and its working directory,
+ * so they load the same standards. Error output of the workers and their output after the start
+ * are passed to standard error.
+ * Closing the launcher stops the workers.
+ */
+public class WorkerLauncher implements Closeable {
+    private static final String MAIN_CLASS = "org.khpi.ai.Application";
+    private static final Pattern PORT_PATTERN = Pattern.compile("listening on port (\\d+)");
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    /**
+     * Starts the workers and waits until every one of them listens.
+     *
+     * @param arguments further application arguments of every worker, e.g. {@code -l library.bin}.
+     * @throws IllegalArgumentException when the number of workers is not positive.
+     * @throws IOException when a worker cannot be started or exits before it listens.
+     */
+    public WorkerLauncher(int workers, LibraryShard.Assignment assignment, List<String> arguments) throws IOException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException(String.format("Number of workers must be positive, got %d", workers));
+        }
+
+        try {
+            for (int shard = 0; shard < workers; shard++) {
+                processes.add(start(shard, workers, assignment, arguments));
+            }
+
+            for (Process process : processes) {
+                addresses.add(new InetSocketAddress("localhost", awaitPort(process)));
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public List<InetSocketAddress> getAddresses() {
+        return addresses;
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Process start(int shard, int shards, LibraryShard.Assignment assignment, List<String> arguments)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MAIN_CLASS);
+        command.add("--serve");
+        command.add("0");
+        command.add("--shard");
+        command.add(shard + "/" + shards);
+        command.add("--shard-assignment");
+        command.add(assignment.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        command.addAll(arguments);
+
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Reads worker output until it tells its port, the output after it is copied to standard error.
+     */
+    private static int awaitPort(Process process) throws IOException {
+        BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+
+        while ((line = output.readLine()) != null) {
+            Matcher matcher = PORT_PATTERN.matcher(line);
+
+            if (matcher.find()) {
+                Thread drain = new Thread(() -> copyToError(output), "worker-output-" + process.pid());
+                drain.setDaemon(true);
+                drain.start();
+
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+
+        throw new IOException(String.format("Worker %d exited with code %d before listening",
+                process.pid(), waitForExit(process)));
+    }
+
+    private static void copyToError(BufferedReader output) {
+        try {
+            String line;
+            while ((line = output.readLine()) != null) {
+                System.err.println(line);
+            }
+        } catch (IOException e) {
+            // worker stopped
+        }
+    }
+
+    private static int waitForExit(Process process) {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+}
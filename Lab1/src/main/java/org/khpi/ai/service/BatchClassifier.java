@@ -0,0 +1,218 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FileCharacterInfo;
+import org.khpi.ai.model.FormulaResults;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Classifies many glyph files against already loaded standards on a fork-join pool.
+ * At most {@code parallelism * TASKS_PER_THREAD} glyphs are in flight at once, and one
+ * result with the winner of every formula is written to a {@link ResultSink} per input, either in input order
+ * or as soon as each glyph is done.
+ */
+public class BatchClassifier {
+    /**
+     * Error written for an input file that cannot be read or is empty.
+     */
+    public static final String UNREADABLE_INPUT = "cannot read file";
+
+    private static final int TASKS_PER_THREAD = 4;
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String SOURCE_NAME = "file";
+    private static final Histogram QUEUE_DEPTH = Metrics.histogram("batch.queue", "");
+
+    private final FusedScoringEngine scoringEngine = new FusedScoringEngine();
+    private final CSVHandler csvHandler = new CSVHandler();
+    private final PreparedLibrary library;
+    private final int parallelism;
+    private final boolean ordered;
+
+    public BatchClassifier(PreparedLibrary library, int parallelism, boolean ordered) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format("Parallelism must be positive, got %d", parallelism));
+        }
+
+        this.library = library;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+    }
+
+    /**
+     * @return sorted CSV files of the directory.
+     */
+    public static List<Path> listDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(CSV_EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return paths listed one per line in the manifest, relative ones are resolved against its directory.
+     */
+    public static List<Path> readManifest(Path manifest) throws IOException {
+        Path baseDirectory = manifest.toAbsolutePath().getParent();
+        List<Path> inputs = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(manifest)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String entry = line.trim();
+
+                if (!entry.isEmpty()) {
+                    inputs.add(baseDirectory.resolve(entry));
+                }
+            }
+        }
+
+        return inputs;
+    }
+
+    /**
+     * @return sink of batch results, one per input file, of all formulas.
+     */
+    public static ResultSink openSink(OutputStream output, ResultSink.Format format) {
+        return openSink(output, format, FormulaSelection.all());
+    }
+
+    /**
+     * @return sink of results, one per input file, of the selected formulas.
+     */
+    public static ResultSink openSink(OutputStream output, ResultSink.Format format, FormulaSelection formulas) {
+        return new ResultSink(output, format, formulas, SOURCE_NAME, false);
+    }
+
+    /**
+     * Writes one result per input to the sink, see {@link #openSink}.
+     *
+     * @return number of classified inputs.
+     */
+    public int classify(List<Path> inputs, ResultSink sink) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            if (ordered) {
+                classifyOrdered(inputs, sink, pool);
+            } else {
+                classifyUnordered(inputs, sink, pool);
+            }
+        } finally {
+            pool.shutdownNow();
+            sink.flush();
+        }
+
+        return inputs.size();
+    }
+
+    private void classifyOrdered(List<Path> inputs, ResultSink sink, ForkJoinPool pool) throws InterruptedException {
+        final int window = parallelism * TASKS_PER_THREAD;
+        Queue<Future<Outcome>> inFlight = new ArrayDeque<>(window);
+
+        for (Path input : inputs) {
+            if (inFlight.size() == window) {
+                await(inFlight.remove()).writeTo(sink);
+            }
+
+            if (Metrics.ENABLED) {
+                QUEUE_DEPTH.record(inFlight.size());
+            }
+
+            inFlight.add(pool.submit(() -> classify(input)));
+        }
+
+        while (!inFlight.isEmpty()) {
+            await(inFlight.remove()).writeTo(sink);
+        }
+    }
+
+    private void classifyUnordered(List<Path> inputs, ResultSink sink, ForkJoinPool pool) throws InterruptedException {
+        final int window = parallelism * TASKS_PER_THREAD;
+        CompletionService<Outcome> completionService = new ExecutorCompletionService<>(pool);
+        int inFlight = 0;
+
+        for (Path input : inputs) {
+            if (inFlight == window) {
+                await(completionService.take()).writeTo(sink);
+                inFlight--;
+            }
+
+            if (Metrics.ENABLED) {
+                QUEUE_DEPTH.record(inFlight);
+            }
+
+            completionService.submit(() -> classify(input));
+            inFlight++;
+        }
+
+        for (; inFlight > 0; inFlight--) {
+            await(completionService.take()).writeTo(sink);
+        }
+    }
+
+    private Outcome await(Future<Outcome> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch classification task failed", e.getCause());
+        }
+    }
+
+    private Outcome classify(Path input) {
+        try {
+            Character inputCharacter = csvHandler.readCharacter(new FileCharacterInfo(input.toString(), null));
+
+            if (inputCharacter == null) {
+                return new Outcome(input, null, UNREADABLE_INPUT);
+            }
+
+            return new Outcome(input, scoringEngine.determine(inputCharacter, library), null);
+        } catch (RuntimeException e) {
+            return new Outcome(input, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Result of one input, written to the sink by the thread that keeps the output order.
+     */
+    private static class Outcome {
+        private final Path input;
+        private final FormulaResults results;
+        private final String error;
+
+        Outcome(Path input, FormulaResults results, String error) {
+            this.input = input;
+            this.results = results;
+            this.error = error;
+        }
+
+        void writeTo(ResultSink sink) {
+            if (results == null) {
+                sink.writeError(input.toString(), null, error);
+            } else {
+                sink.write(input.toString(), null, results);
+            }
+        }
+    }
+}
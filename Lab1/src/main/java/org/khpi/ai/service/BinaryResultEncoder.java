@@ -0,0 +1,93 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact big-endian results. Strings are an {@code int} byte length, -1 for null, and UTF-8 bytes.
+ * <pre>
+ * header:  int magic 'KHRS', byte version 1, byte 1 when results are labelled, string source name,
+ *          short formula count, formula count strings with formula names
+ * result:  byte 0, string source, [string label], formula count bytes of standard ordinals, -1 for none
+ * error:   byte 1, string source, [string label], string message
+ * </pre>
+ */
+class BinaryResultEncoder implements ResultSink.Encoder {
+    static final int MAGIC = 'K' << 24 | 'H' << 16 | 'R' << 8 | 'S';
+    static final int VERSION = 1;
+    static final int RESULT = 0;
+    static final int ERROR = 1;
+    private static final int NO_STANDARD = -1;
+
+    private final FormulaSelection formulas;
+    private final String sourceName;
+    private final boolean labelled;
+
+    BinaryResultEncoder(FormulaSelection formulas, String sourceName, boolean labelled) {
+        this.formulas = formulas;
+        this.sourceName = sourceName;
+        this.labelled = labelled;
+    }
+
+    @Override
+    public void header(ResultSink.Output output) {
+        output.putInt(MAGIC).putByte(VERSION).putByte(labelled ? 1 : 0);
+        string(output, sourceName);
+        output.putShort(formulas.getFormulas().size() + formulas.getQualitativeFormulas().size());
+
+        for (Formula formula : formulas.getFormulas()) {
+            string(output, formula.name());
+        }
+
+        for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+            string(output, formula.name());
+        }
+    }
+
+    @Override
+    public void result(ResultSink.Output output, String source, String label, FormulaResults results) {
+        key(output, RESULT, source, label);
+
+        for (Formula formula : formulas.getFormulas()) {
+            standard(output, results.getStandard(formula));
+        }
+
+        for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+            standard(output, results.getStandard(formula));
+        }
+    }
+
+    @Override
+    public void error(ResultSink.Output output, String source, String label, String message) {
+        key(output, ERROR, source, label);
+        string(output, message);
+    }
+
+    private void key(ResultSink.Output output, int kind, String source, String label) {
+        output.putByte(kind);
+        string(output, source);
+
+        if (labelled) {
+            string(output, label);
+        }
+    }
+
+    private static void standard(ResultSink.Output output, Standard standard) {
+        output.putByte(standard == null ? NO_STANDARD : standard.ordinal());
+    }
+
+    private static void string(ResultSink.Output output, String value) {
+        if (value == null) {
+            output.putInt(-1);
+        } else if (ResultSink.isAscii(value)) {
+            output.putInt(value.length()).putAscii(value);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.putInt(bytes.length).putBytes(bytes);
+        }
+    }
+}
@@ -1,44 +1,94 @@
 package org.khpi.ai.service;
 
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
 import org.khpi.ai.model.Character;
 import org.khpi.ai.model.FileCharacterInfo;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.model.Template;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class CSVHandler {
-    private static final String COMMA_DELIMITER = ",";
+    private static final ThreadLocal<GlyphParser> PARSERS = ThreadLocal.withInitial(GlyphParser::new);
+    private static final Histogram PARSE_TIME = Metrics.histogram("parse.file", Metrics.NANOSECONDS);
 
+    /**
+     * @return first character of the file, or null when the file cannot be read or is empty.
+     * @throws IllegalArgumentException when the file is malformed.
+     */
     public Character readCharacter(FileCharacterInfo fileInfo) {
-        List<List<String>> records = new ArrayList<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(fileInfo.getFileName()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(COMMA_DELIMITER);
-                records.add(Arrays.asList(values));
-            }
+        List<Character> characters = readCharacters(fileInfo);
+
+        return characters == null || characters.isEmpty()
+                ? null
+                : characters.get(0);
+    }
+
+    /**
+     * Reads every record of a multi-record file. Record header label takes precedence
+     * over the standard of the file info.
+     *
+     * @return characters in file order, or null when the file cannot be read.
+     * @throws IllegalArgumentException when the file is malformed.
+     */
+    public List<Character> readCharacters(FileCharacterInfo fileInfo) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        List<Character> characters = new ArrayList<>();
+
+        try {
+            PARSERS.get().parse(Paths.get(fileInfo.getFileName()),
+                    glyph -> characters.add(glyph.toCharacter(toStandard(glyph.getLabel(), fileInfo.getStandard()))));
         } catch (IOException e) {
             return null;
         }
 
-        if (records.isEmpty()) {
+        if (Metrics.ENABLED) {
+            Metrics.recordParse(PARSE_TIME, fileInfo.getFileName(), start, characters.size());
+        }
+
+        return characters;
+    }
+
+    /**
+     * Reads every record of a multi-record file as a template. Record header label takes precedence
+     * over the default label, any label is accepted and registered.
+     *
+     * @return templates in file order, or null when the file cannot be read.
+     * @throws IllegalArgumentException when the file is malformed.
+     */
+    public List<Template> readTemplates(Path file, String defaultLabel, LabelRegistry registry) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        List<Template> templates = new ArrayList<>();
+
+        try {
+            PARSERS.get().parse(file, glyph -> templates.add(new Template(
+                    registry.register(glyph.getLabel() != null ? glyph.getLabel() : defaultLabel),
+                    glyph.toCharacter(null))));
+        } catch (IOException e) {
             return null;
         }
 
-        List<List<Integer>> characterData = records.stream()
-                .map(stringList -> stringList
-                        .stream()
-                        .map(Integer::parseInt)
-                        .collect(Collectors.toList()))
-                .collect(Collectors.toList());
+        if (Metrics.ENABLED) {
+            Metrics.recordParse(PARSE_TIME, file.toString(), start, templates.size());
+        }
+
+        return templates;
+    }
+
+    private Standard toStandard(String label, Standard defaultStandard) {
+        if (label == null) {
+            return defaultStandard;
+        }
 
-        return new Character(characterData, fileInfo.getStandard());
+        try {
+            return Standard.valueOf(label);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown standard label: %s", label), e);
+        }
     }
 }
@@ -0,0 +1,77 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.Arrays;
+
+/**
+ * Two stage classification for large libraries: the coarse descriptors of the input are compared with
+ * the ones prepared for every standard, and only the nearest {@code candidates} standards are scored by
+ * the formula. More candidates trade speed for recall, with at least as many candidates as standards
+ * the result is the same as without the filter.
+ * <p>
+ * The descriptors follow the geometric distances. {@link Formula#WITH_ARCCOS} wraps its sum around a circle,
+ * so its nearest standards are unrelated to them and it always scores the whole library.
+ */
+public class CascadeFilter {
+    private final int candidates;
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    /**
+     * @param candidates number of standards shortlisted for the formula.
+     */
+    public CascadeFilter(int candidates) {
+        if (candidates <= 0) {
+            throw new IllegalArgumentException(String.format("Number of candidates must be positive, got %d", candidates));
+        }
+
+        this.candidates = candidates;
+    }
+
+    public Standard determineCharacter(Character inputCharacter, PreparedLibrary library, Formula formula) {
+        return rank(inputCharacter, library, 1, formula).getBest().getStandard();
+    }
+
+    /**
+     * @param k number of standards to return, at most the number of candidates.
+     * @return k nearest shortlisted standards by the formula with their distances, nearest first.
+     */
+    public Ranking rank(Character inputCharacter, PreparedLibrary library, int k, Formula formula) {
+        final int[] shortlist = formula == Formula.WITH_ARCCOS ? null : shortlist(inputCharacter, library);
+
+        return determinant.rank(inputCharacter, library, shortlist, k, formula);
+    }
+
+    /**
+     * @return indexes of the shortlisted standards in ascending order, null to score the whole library.
+     */
+    int[] shortlist(Character inputCharacter, PreparedLibrary library) {
+        final CoarseFeatures features = library.getCoarseFeatures();
+
+        if (library.size() <= candidates || features == null) {
+            return null;
+        }
+
+        if (!library.accepts(inputCharacter)) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
+        final int[] descriptor = CoarseFeatures.describe(inputCharacter);
+        TopStandards top = new TopStandards(candidates);
+
+        for (int i = 0; i < library.size(); i++) {
+            top.offer(features.distance(descriptor, i), i);
+        }
+
+        int[] shortlist = new int[top.size()];
+        for (int i = 0; i < shortlist.length; i++) {
+            shortlist[i] = top.getIndex(i);
+        }
+
+        Arrays.sort(shortlist);
+        return shortlist;
+    }
+}
@@ -1,117 +1,336 @@
 package org.khpi.ai.service;
 
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
 import org.khpi.ai.model.Character;
 import org.khpi.ai.model.QualitativeParameters;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.ScoredStandard;
 import org.khpi.ai.model.Standard;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.function.BiFunction;
 import java.util.function.ToDoubleFunction;
 
 public class CharacterDeterminant {
+    private static final DistanceKernels KERNELS = DistanceKernels.load();
+    private static final Histogram[] SCORING_TIMES = new Histogram[Formula.values().length];
+    private static final Histogram[] QUALITATIVE_SCORING_TIMES = new Histogram[QualitativeFormula.values().length];
+
+    static {
+        for (Formula formula : Formula.values()) {
+            SCORING_TIMES[formula.ordinal()] = Metrics.histogram("scoring." + formula, Metrics.NANOSECONDS);
+        }
+        for (QualitativeFormula formula : QualitativeFormula.values()) {
+            QUALITATIVE_SCORING_TIMES[formula.ordinal()] = Metrics.histogram("scoring." + formula, Metrics.NANOSECONDS);
+        }
+    }
 
     public Standard determineCharacter(Character inputCharacter, List<Character> standardList, List<Character> metadata,
                                        Formula formula) {
+        return determineCharacter(inputCharacter, PreparedLibrary.wrap(standardList, metadata), formula);
+    }
+
+    public Standard determineCharacter(Character inputCharacter, PreparedLibrary library, Formula formula) {
+        TopStandards top = findTop(inputCharacter, library, null, formula, 1);
+
+        return library.getStandard(top.getIndex(0)).getStandard();
+    }
+
+    /**
+     * @param k number of standards to return, the ranking is shorter when there are fewer standards.
+     * @return k nearest standards by the formula with their distances, nearest first.
+     */
+    public Ranking rank(Character inputCharacter, List<Character> standardList, List<Character> metadata, int k,
+                        Formula formula) {
+        return rank(inputCharacter, PreparedLibrary.wrap(standardList, metadata), k, formula);
+    }
+
+    /**
+     * @param k number of standards to return, the ranking is shorter when there are fewer standards.
+     * @return k nearest standards by the formula with their distances, nearest first.
+     */
+    public Ranking rank(Character inputCharacter, PreparedLibrary library, int k, Formula formula) {
+        return rank(inputCharacter, library, null, k, formula);
+    }
+
+    /**
+     * @param candidates indexes of the standards to scan in ascending order, null to scan all.
+     */
+    Ranking rank(Character inputCharacter, PreparedLibrary library, int[] candidates, int k, Formula formula) {
+        TopStandards top = findTop(inputCharacter, library, candidates, formula, k);
+        top.sort();
+
+        final boolean rooted = formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_COEFFICIENT;
+        List<ScoredStandard> entries = new ArrayList<>(top.size());
+
+        for (int i = 0; i < top.size(); i++) {
+            double key = top.getKey(i);
+            entries.add(new ScoredStandard(library.getStandard(top.getIndex(i)).getStandard(), rooted ? Math.sqrt(key) : key));
+        }
+
+        return new Ranking(entries);
+    }
+
+    /**
+     * @param k number of standards to return, the ranking is shorter when there are fewer standards.
+     * @return k most similar standards by the formula with their similarities, most similar first.
+     */
+    public Ranking rank(Character inputCharacter, List<Character> standardList, int k, QualitativeFormula formula) {
+        return rank(inputCharacter, PreparedLibrary.wrap(standardList, List.of()), k, formula);
+    }
+
+    /**
+     * @param k number of standards to return, the ranking is shorter when there are fewer standards.
+     * @return k most similar standards by the formula with their similarities, most similar first.
+     */
+    public Ranking rank(Character inputCharacter, PreparedLibrary library, int k, QualitativeFormula formula) {
+        TopStandards top = top(inputCharacter, library, k, formula);
+        top.sort();
+        List<ScoredStandard> entries = new ArrayList<>(top.size());
+
+        for (int i = 0; i < top.size(); i++) {
+            entries.add(new ScoredStandard(library.getStandard(top.getIndex(i)).getStandard(), -top.getKey(i)));
+        }
+
+        return new Ranking(entries);
+    }
+
+    /**
+     * @return k nearest standards, unsorted, keyed by the sum of the formula without the final root.
+     */
+    TopStandards top(Character inputCharacter, PreparedLibrary library, int k, Formula formula) {
+        return findTop(inputCharacter, library, null, formula, k);
+    }
+
+    /**
+     * @return k most similar standards, unsorted, keyed by the negated similarity.
+     */
+    TopStandards top(Character inputCharacter, PreparedLibrary library, int k, QualitativeFormula formula) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        TopStandards top = new TopStandards(k, library.size());
+
+        if (library.size() > 0 && !library.accepts(inputCharacter)) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
+        for (int i = 0; i < library.size(); i++) {
+            top.offer(-computeSimilarity(inputCharacter, library.getStandard(i), formula), i);
+        }
+
+        if (top.size() == 0) {
+            throw new IllegalStateException("Cannot find max value");
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.recordScoring(QUALITATIVE_SCORING_TIMES[formula.ordinal()], formula.name(), start, library.size(), 0, 0);
+        }
+
+        return top;
+    }
+
+    private TopStandards findTop(Character inputCharacter, PreparedLibrary library, int[] candidates, Formula formula,
+                                 int k) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        final ScanStatistics statistics = Metrics.ENABLED ? new ScanStatistics() : null;
+        TopStandards top = new TopStandards(k, candidates == null ? library.size() : candidates.length);
+        final boolean accepted = formula == Formula.WITH_COEFFICIENT
+                ? library.acceptsWithMetadata(inputCharacter)
+                : library.accepts(inputCharacter);
+
+        if (library.size() > 0 && !accepted) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
         switch (formula) {
             case WITH_SQUARE_ROOT:
-                return determineCharacter(inputCharacter, standardList,
-                        standardCharacter -> computeBySquareRootFormula(inputCharacter, standardCharacter));
+                findNearest(library, candidates, top, statistics, euclideanLowerBound(inputCharacter, library),
+                        (standardCharacter, bound) -> computeBySquareRootFormula(inputCharacter, standardCharacter, bound));
+                break;
             case WITH_MODULE:
-                return determineCharacter(inputCharacter, standardList,
-                        standardCharacter -> computeByModuleFormula(inputCharacter, standardCharacter));
+                findNearest(library, candidates, top, statistics, manhattanLowerBound(inputCharacter, library),
+                        (standardCharacter, bound) -> computeByModuleFormula(inputCharacter, standardCharacter, bound));
+                break;
             case WITH_COEFFICIENT:
-                return determineCharacterWithMetadata(inputCharacter, standardList, metadata,
-                        (standardCharacter, metaCharacter) -> computeByFormulaWithCoefficient(inputCharacter, standardCharacter, metaCharacter));
+                findNearestWithMetadata(library, candidates, top, statistics,
+                        (standardCharacter, metaCharacter, bound) -> computeByFormulaWithCoefficient(inputCharacter, standardCharacter, metaCharacter, bound));
+                break;
             case WITH_MODULE_AND_FRACTION:
-                return determineCharacter(inputCharacter, standardList,
-                        standardCharacter -> computeByFormulaWithModuleAndFraction(inputCharacter, standardCharacter));
+                findNearest(library, candidates, top, statistics, null,
+                        (standardCharacter, bound) -> computeByFormulaWithModuleAndFraction(inputCharacter, standardCharacter, bound));
+                break;
             case WITH_ARCCOS:
-                return determineCharacter(inputCharacter, standardList,
-                        standardCharacter -> computeByFormulaWithArcCos(inputCharacter, standardCharacter));
+                final int[] inputTerms = FormulaTerms.arcCosInputTerms(inputCharacter.getCells());
+                findNearest(library, candidates, top, statistics, null,
+                        (standardCharacter, bound) -> computeByFormulaWithArcCos(inputCharacter, inputTerms, standardCharacter));
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
         }
 
-        throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
+        if (top.size() == 0) {
+            throw new IllegalStateException("Cannot find min value");
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.recordScoring(SCORING_TIMES[formula.ordinal()], formula.name(), start,
+                    candidates == null ? library.size() : candidates.length, statistics.pruned, statistics.rejected);
+        }
+
+        return top;
     }
 
+    /**
+     * @return sum of the formula for the input and a standard as ordered by {@link #rank}: without the final root,
+     * abandoned above the bound where the formula allows it. Metadata is read by {@link Formula#WITH_COEFFICIENT} only.
+     */
+    PartialSumWithMetadata partialSum(Character inputCharacter, Formula formula) {
+        switch (formula) {
+            case WITH_SQUARE_ROOT:
+                return (standardCharacter, metaCharacter, bound) -> computeBySquareRootFormula(inputCharacter, standardCharacter, bound);
+            case WITH_MODULE:
+                return (standardCharacter, metaCharacter, bound) -> computeByModuleFormula(inputCharacter, standardCharacter, bound);
+            case WITH_COEFFICIENT:
+                return (standardCharacter, metaCharacter, bound) -> computeByFormulaWithCoefficient(inputCharacter, standardCharacter, metaCharacter, bound);
+            case WITH_MODULE_AND_FRACTION:
+                return (standardCharacter, metaCharacter, bound) -> computeByFormulaWithModuleAndFraction(inputCharacter, standardCharacter, bound);
+            case WITH_ARCCOS:
+                final int[] inputTerms = FormulaTerms.arcCosInputTerms(inputCharacter.getCells());
+                return (standardCharacter, metaCharacter, bound) -> computeByFormulaWithArcCos(inputCharacter, inputTerms, standardCharacter);
+            default:
+                throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
+        }
+    }
 
-    private Standard determineCharacter(Character inputCharacter, List<Character> standardList, ToDoubleFunction<Character> function) {
-        Map<Double, Standard> standardDoubleMap = new HashMap<>();
+    /**
+     * Nearest standards search for formulas whose sum only grows cell by cell, so the sum itself
+     * (without the final root) orders standards. Every standard gets the worst kept sum as a bound
+     * and its scan is abandoned once the partial sum exceeds it. A standard whose lower bound already
+     * exceeds it is not scanned at all. The later standard wins a tie.
+     *
+     * @param candidates indexes of the standards to scan in ascending order, null to scan all.
+     * @param statistics counts of pruned and rejected standards, null when metrics are disabled.
+     * @param lowerBound may be null when the library has no norms for the formula.
+     */
+    private void findNearest(PreparedLibrary library, int[] candidates, TopStandards top, ScanStatistics statistics,
+                             LowerBound lowerBound, PartialSum partialSum) {
+        final int count = candidates == null ? library.size() : candidates.length;
 
-        standardList.forEach(standardCharacter -> {
+        for (int c = 0; c < count; c++) {
+            final int i = candidates == null ? c : candidates[c];
+            final double bound = top.bound();
 
-            if (!isCharactersDimensionsEqual(inputCharacter, standardCharacter)) {
-                throw new IllegalArgumentException("Input character have illegal dimension size.");
+            if (lowerBound != null && FormulaTerms.exceeds(lowerBound.compute(i), bound)) {
+                if (Metrics.ENABLED) {
+                    statistics.pruned++;
+                }
+                continue;
             }
 
-            standardDoubleMap.put(function.applyAsDouble(standardCharacter), standardCharacter.getStandard());
-        });
+            final double sum = partialSum.compute(library.getStandard(i), bound);
+
+            if (Metrics.ENABLED && sum > bound) {
+                statistics.rejected++;
+            }
 
-        return findMin(standardDoubleMap);
+            top.offer(sum, i);
+        }
     }
 
-    private Standard determineCharacterWithMetadata(Character inputCharacter, List<Character> standardList,
-                                                List<Character> metadata, BiFunction<Character, Character, Double> function) {
-        Map<Double, Standard> standardDoubleMap = new HashMap<>();
+    private void findNearestWithMetadata(PreparedLibrary library, int[] candidates, TopStandards top,
+                                         ScanStatistics statistics, PartialSumWithMetadata partialSum) {
+        final int count = candidates == null ? library.size() : candidates.length;
 
-        standardList.forEach(standardCharacter -> {
-            Character metaCharacter = metadata.get(metadata.indexOf(standardCharacter));
+        for (int c = 0; c < count; c++) {
+            final int i = candidates == null ? c : candidates[c];
+            final double bound = top.bound();
+            double sum = partialSum.compute(library.getStandard(i), library.getMetadata(i), bound);
 
-            if (!isCharactersDimensionsEqual(inputCharacter, standardCharacter, metaCharacter)) {
-                throw new IllegalArgumentException("Input character have illegal dimension size.");
+            if (Metrics.ENABLED && sum > bound) {
+                statistics.rejected++;
             }
 
-            standardDoubleMap.put(function.apply(standardCharacter, metaCharacter), standardCharacter.getStandard());
-        });
+            if (sum < 0) {
+                sum = Double.NaN; // root of negative sum, ordered after every number as before
+            }
+
+            top.offer(sum, i);
+        }
+    }
+
+    /**
+     * @see FormulaTerms#euclideanLowerBound(double, long, double, long)
+     */
+    private static LowerBound euclideanLowerBound(Character input, PreparedLibrary library) {
+        if (!library.hasNorms()) {
+            return null;
+        }
+
+        final double inputNorm = PreparedLibrary.norm(input);
+        final long inputSum = PreparedLibrary.absoluteSum(input);
+
+        return index -> FormulaTerms.euclideanLowerBound(inputNorm, inputSum, library.getNorm(index),
+                library.getAbsoluteSum(index));
+    }
+
+    /**
+     * @see FormulaTerms#manhattanLowerBound(long, long)
+     */
+    private static LowerBound manhattanLowerBound(Character input, PreparedLibrary library) {
+        if (!library.hasNorms()) {
+            return null;
+        }
 
-        return findMin(standardDoubleMap);
+        final long inputSum = PreparedLibrary.absoluteSum(input);
+
+        return index -> FormulaTerms.manhattanLowerBound(inputSum, library.getAbsoluteSum(index));
     }
 
     public List<Standard> determineCharacterWithParameters(Character inputCharacter, List<Character> standardList, List<ToDoubleFunction<Character>> functions) {
         List<Standard> results = new ArrayList<>();
-        Map<Double, Standard> standardDoubleMap = new HashMap<>();
 
         functions.forEach(function -> {
-            standardList.forEach(standardCharacter -> {
+            double max = Double.NEGATIVE_INFINITY;
+            Standard nearest = null;
 
+            for (Character standardCharacter : standardList) {
                 if (!isCharactersDimensionsEqual(inputCharacter, standardCharacter)) {
                     throw new IllegalArgumentException("Input character have illegal dimension size.");
                 }
 
-                standardDoubleMap.put(function.applyAsDouble(standardCharacter), standardCharacter.getStandard());
-            });
-            results.add(findMax(standardDoubleMap));
-            standardDoubleMap.clear();
-        });
+                double score = function.applyAsDouble(standardCharacter);
 
-        return results;
-    }
+                if (nearest == null || Double.compare(score, max) >= 0) {
+                    max = score;
+                    nearest = standardCharacter.getStandard();
+                }
+            }
 
-    private Standard findMin(Map<Double, Standard> standardDoubleMap) {
-        Optional<Standard> min = standardDoubleMap.keySet().stream()
-                .min(Double::compareTo)
-                .map(standardDoubleMap::get);
+            if (nearest == null) {
+                throw new IllegalStateException("Cannot find min value");
+            }
 
-        if (min.isEmpty()) {
-            throw new IllegalStateException("Cannot find min value");
-        }
+            results.add(nearest);
+        });
 
-        return min.get();
+        return results;
     }
 
-    private Standard findMax(Map<Double, Standard> standardDoubleMap) {
-        Optional<Standard> max = standardDoubleMap.keySet().stream()
-                .max(Double::compareTo)
-                .map(standardDoubleMap::get);
+    private double computeSimilarity(Character input, Character standard, QualitativeFormula formula) {
+        QualitativeParameters parameters = computeByFormulaWithParameters(input, standard);
 
-        if (max.isEmpty()) {
-            throw new IllegalStateException("Cannot find min value");
+        switch (formula) {
+            case RUSSELL_AND_RAO:
+                return computeByRussellAndRao(parameters);
+            case JOKARD_AND_NEEDMAN:
+                return computeByJokardAndNeedman(parameters);
+            case DYCE:
+                return computeByDyce(parameters);
+            case SOKAL_AND_SNIF:
+                return computeBySokalAndSnif(parameters);
         }
 
-        return max.get();
+        throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
     }
 
 
@@ -122,24 +341,20 @@ public class CharacterDeterminant {
      *              \/ k=1
      * @param input character that need to determine.
      * @param standard standard character.
-     * @return result of formula.
+     * @param bound sum above which scan is abandoned.
+     * @return sum under the root, or partial sum greater than bound.
      */
-    private double computeBySquareRootFormula(Character input, Character standard) {
-        final int n = input.getData().size();
-        List<List<Integer>> inputData = input.getData();
-        List<List<Integer>> standardData = standard.getData();
+    private double computeBySquareRootFormula(Character input, Character standard, double bound) {
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
+        final int width = input.getWidth();
         double rawSum = 0;
 
-        for (int i = 0; i < n; i++) {
-            List<Integer> inputRaw = inputData.get(i);
-            List<Integer> standardRaw = standardData.get(i);
-
-            for (int j = 0; j < inputRaw.size(); j++) {
-                rawSum += Math.pow(inputRaw.get(j) - (double) standardRaw.get(j), 2);
-            }
+        for (int rowStart = 0; rowStart < inputData.length && rawSum <= bound; rowStart += width) {
+            rawSum = KERNELS.addSquaredDifferences(rawSum, inputData, standardData, 0, rowStart, rowStart + width);
         }
 
-        return Math.sqrt(rawSum);
+        return rawSum;
     }
 
     /**
@@ -149,21 +364,17 @@ public class CharacterDeterminant {
      *
      * @param input character that need to determine.
      * @param standard standard character.
-     * @return result of formula.
+     * @param bound sum above which scan is abandoned.
+     * @return result of formula, or partial sum greater than bound.
      */
-    private double computeByModuleFormula(Character input, Character standard) {
-        final int n = input.getData().size();
-        List<List<Integer>> inputData = input.getData();
-        List<List<Integer>> standardData = standard.getData();
+    private double computeByModuleFormula(Character input, Character standard, double bound) {
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
+        final int width = input.getWidth();
         double rawSum = 0;
 
-        for (int i = 0; i < n; i++) {
-            List<Integer> inputRaw = inputData.get(i);
-            List<Integer> standardRaw = standardData.get(i);
-
-            for (int j = 0; j < inputRaw.size(); j++) {
-                rawSum += Math.abs(inputRaw.get(j) - (double) standardRaw.get(j));
-            }
+        for (int rowStart = 0; rowStart < inputData.length && rawSum <= bound; rowStart += width) {
+            rawSum = KERNELS.addAbsoluteDifferences(rawSum, inputData, standardData, 0, rowStart, rowStart + width);
         }
 
         return rawSum;
@@ -178,26 +389,24 @@ public class CharacterDeterminant {
      * @param input character that need to determine.
      * @param standard standard character.
      * @param metaData coefficients of each point of data.
-     * @return result of formula.
+     * @param bound sum above which scan is abandoned, ignored when some coefficients are negative.
+     * @return sum under the root, or partial sum greater than bound.
      */
-    private double computeByFormulaWithCoefficient(Character input, Character standard, Character metaData) {
-        final int n = input.getData().size();
-        List<List<Integer>> inputData = input.getData();
-        List<List<Integer>> standardData = standard.getData();
-        List<List<Integer>> meta = metaData.getData();
+    private double computeByFormulaWithCoefficient(Character input, Character standard, Character metaData,
+                                                   double bound) {
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
+        final int width = input.getWidth();
+        final int[] meta = metaData.getCells();
+        final double limit = metaData.isNonNegative() ? bound : Double.POSITIVE_INFINITY;
         double rawSum = 0;
 
-        for (int i = 0; i < n; i++) {
-            List<Integer> inputRaw = inputData.get(i);
-            List<Integer> standardRaw = standardData.get(i);
-            List<Integer> metaRaw = meta.get(i);
-
-            for (int j = 0; j < inputRaw.size(); j++) {
-                rawSum += metaRaw.get(j) * Math.pow(inputRaw.get(j) - (double) standardRaw.get(j), 2);
-            }
+        for (int rowStart = 0; rowStart < inputData.length && rawSum <= limit; rowStart += width) {
+            rawSum = KERNELS.addWeightedSquaredDifferences(rawSum, inputData, standardData, 0, meta, rowStart,
+                    rowStart + width);
         }
 
-        return Math.sqrt(rawSum);
+        return rawSum;
     }
 
     /**
@@ -207,23 +416,17 @@ public class CharacterDeterminant {
      *
      * @param input character that need to determine.
      * @param standard standard character.
-     * @return result of formula.
+     * @param bound sum above which scan is abandoned.
+     * @return result of formula, or partial sum greater than bound.
      */
-    private double computeByFormulaWithModuleAndFraction(Character input, Character standard) {
-        final int n = input.getData().size();
-        List<List<Integer>> inputData = input.getData();
-        List<List<Integer>> standardData = standard.getData();
+    private double computeByFormulaWithModuleAndFraction(Character input, Character standard, double bound) {
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
+        final int width = input.getWidth();
         double rawSum = 0;
 
-        for (int i = 0; i < n; i++) {
-            List<Integer> inputRaw = inputData.get(i);
-            List<Integer> standardRaw = standardData.get(i);
-
-            for (int j = 0; j < inputRaw.size(); j++) {
-                double numerator = Math.abs(inputRaw.get(j) - (double) standardRaw.get(j)) + 1; // +1 is used in cases when multiplication provides 0
-                double denominator = Math.abs(inputRaw.get(j) + (double) standardRaw.get(j)) + 1; // +1 is used in cases when multiplication provides 0
-                rawSum += numerator / denominator;
-            }
+        for (int rowStart = 0; rowStart < inputData.length && rawSum <= bound; rowStart += width) {
+            rawSum = KERNELS.addFractions(rawSum, inputData, standardData, 0, rowStart, rowStart + width);
         }
 
         return rawSum;
@@ -235,32 +438,19 @@ public class CharacterDeterminant {
      *                      k=1
      *
      * @param input character that need to determine.
+     * @param inputTerms input side of the denominators, see {@link FormulaTerms#arcCosInputTerms(int[])}.
      * @param standard standard character.
      * @return result of formula.
      */
-    private double computeByFormulaWithArcCos(Character input, Character standard) {
-        final int n = input.getData().size();
-        List<List<Integer>> inputData = input.getData();
-        List<List<Integer>> standardData = standard.getData();
-        double rawSum = 0;
-
-        for (int i = 0; i < n; i++) {
-            List<Integer> inputRaw = inputData.get(i);
-            List<Integer> standardRaw = standardData.get(i);
-
-            for (int j = 0; j < inputRaw.size(); j++) {
-                double numerator = (inputRaw.get(j) * standardRaw.get(j)) + 1.0; // +1 is used in cases when multiplication provides 0
-                double denominator = ((Math.abs(inputRaw.get(j)) + 1) * (Math.abs(standardRaw.get(j)) + 1)); // +1 is used in cases when multiplication provides 0
-                rawSum += numerator / denominator;
-            }
-        }
-
-        return Math.toDegrees(Math.acos(Math.cos(rawSum)));
+    private double computeByFormulaWithArcCos(Character input, int[] inputTerms, Character standard) {
+        return FormulaTerms.arcCos(input.getCells(), inputTerms, standard.getCells(), 0);
     }
 
     public double computeByRussellAndRao(Character input, Character standard) {
-        QualitativeParameters qualitativeParameters = computeByFormulaWithParameters(input, standard);
+        return computeByRussellAndRao(computeByFormulaWithParameters(input, standard));
+    }
 
+    static double computeByRussellAndRao(QualitativeParameters qualitativeParameters) {
         double denominator =
                 qualitativeParameters.getASum() +
                         qualitativeParameters.getBSum() +
@@ -275,8 +465,10 @@ public class CharacterDeterminant {
     }
 
     public double computeByJokardAndNeedman(Character input, Character standard) {
-        QualitativeParameters qualitativeParameters = computeByFormulaWithParameters(input, standard);
+        return computeByJokardAndNeedman(computeByFormulaWithParameters(input, standard));
+    }
 
+    static double computeByJokardAndNeedman(QualitativeParameters qualitativeParameters) {
         double n =
                 qualitativeParameters.getASum() +
                         qualitativeParameters.getBSum() +
@@ -293,8 +485,10 @@ public class CharacterDeterminant {
     }
 
     public double computeByDyce(Character input, Character standard) {
-        QualitativeParameters qualitativeParameters = computeByFormulaWithParameters(input, standard);
+        return computeByDyce(computeByFormulaWithParameters(input, standard));
+    }
 
+    static double computeByDyce(QualitativeParameters qualitativeParameters) {
         double denominator = (2 * qualitativeParameters.getASum()) + qualitativeParameters.getGSum() +
                 qualitativeParameters.getHSum();
 
@@ -306,8 +500,10 @@ public class CharacterDeterminant {
     }
 
     public double computeBySokalAndSnif(Character input, Character standard) {
-        QualitativeParameters qualitativeParameters = computeByFormulaWithParameters(input, standard);
+        return computeBySokalAndSnif(computeByFormulaWithParameters(input, standard));
+    }
 
+    static double computeBySokalAndSnif(QualitativeParameters qualitativeParameters) {
         double denominator = qualitativeParameters.getASum() + 2 * (qualitativeParameters.getGSum() +
                 qualitativeParameters.getHSum());
 
@@ -319,26 +515,26 @@ public class CharacterDeterminant {
     }
 
     private QualitativeParameters computeByFormulaWithParameters(Character input, Character standard) {
-        final int n = input.getData().size();
+        if (input.isBinary() && standard.isBinary()) {
+            return computeByFormulaWithParametersOnBits(input, standard);
+        }
 
-        List<List<Integer>> inputData = input.getData();
-        List<List<Integer>> standardData = standard.getData();
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
 
         double aSum = 0;
         double bSum = 0;
         double gSum = 0;
         double hSum = 0;
 
-        for (int i = 0; i < n; i++) {
-            List<Integer> inputRaw = inputData.get(i);
-            List<Integer> standardRaw = standardData.get(i);
+        for (int k = 0; k < inputData.length; k++) {
+            int x = inputData[k];
+            int s = standardData[k];
 
-            for (int j = 0; j < inputRaw.size(); j++) {
-                aSum += (inputRaw.get(j) * standardRaw.get(j)) + 1;
-                bSum += ((1 - inputRaw.get(j)) * (1 - standardRaw.get(j))) + 1;
-                gSum += (inputRaw.get(j) * (1 - standardRaw.get(j))) + 1;
-                hSum += ((1 - inputRaw.get(j)) * standardRaw.get(j));
-            }
+            aSum += (x * s) + 1;
+            bSum += ((1 - x) * (1 - s)) + 1;
+            gSum += (x * (1 - s)) + 1;
+            hSum += ((1 - x) * s);
         }
 
         return QualitativeParameters.builder()
@@ -349,43 +545,64 @@ public class CharacterDeterminant {
                 .build();
     }
 
-    private boolean isCharactersDimensionsEqual(Character one, Character two) {
-        List<List<Integer>> oneData = one.getData();
-        List<List<Integer>> twoData = two.getData();
-
-        if (oneData.size() != twoData.size()) {
-            return false;
+    /**
+     * Same sums as {@link #computeByFormulaWithParameters(Character, Character)} for 0/1 characters,
+     * counted 64 cells at a time. Every cell adds 1 to a, b and g sums, h sum has no smoothing.
+     */
+    private QualitativeParameters computeByFormulaWithParametersOnBits(Character input, Character standard) {
+        final long[] inputBits = input.getBits();
+        final long[] standardBits = standard.getBits();
+        final int n = input.getSize();
+
+        long both = 0;
+        long inputOnly = 0;
+        long standardOnly = 0;
+
+        for (int w = 0; w < inputBits.length; w++) {
+            long x = inputBits[w];
+            long s = standardBits[w];
+
+            both += Long.bitCount(x & s);
+            inputOnly += Long.bitCount(x & ~s);
+            standardOnly += Long.bitCount(~x & s);
         }
 
-        for (int i = 0; i < oneData.size(); i++) {
-            if (oneData.get(i).size() != twoData.get(i).size()) {
-                return false;
-            }
-        }
+        long neither = n - both - inputOnly - standardOnly;
 
-        return true;
+        return QualitativeParameters.builder()
+                .aSum(both + n)
+                .bSum(neither + n)
+                .gSum(inputOnly + n)
+                .hSum(standardOnly)
+                .build();
     }
 
-    private boolean isCharactersDimensionsEqual(Character one, Character two, Character three) {
-        List<List<Integer>> firstData = one.getData();
-        List<List<Integer>> secondData = two.getData();
-        List<List<Integer>> thirdData = three.getData();
+    private boolean isCharactersDimensionsEqual(Character one, Character two) {
+        return one.hasSameDimensions(two);
+    }
 
-        if (firstData.size() != secondData.size() || secondData.size() != thirdData.size()) {
-            return false;
-        }
+    private interface PartialSum {
+        double compute(Character standard, double bound);
+    }
 
-        for (int i = 0; i < firstData.size(); i++) {
-            if (firstData.get(i).size() != secondData.get(i).size()
-                    || thirdData.get(i).size() != secondData.get(i).size()) {
-                return false;
-            }
-        }
+    private static class ScanStatistics {
+        private int pruned;
+        private int rejected;
+    }
 
-        return true;
+    private interface LowerBound {
+        double compute(int standardIndex);
+    }
+
+    interface PartialSumWithMetadata {
+        double compute(Character standard, Character metaData, double bound);
     }
 
     public enum Formula {
         WITH_SQUARE_ROOT, WITH_MODULE, WITH_COEFFICIENT, WITH_MODULE_AND_FRACTION, WITH_ARCCOS
     }
+
+    public enum QualitativeFormula {
+        RUSSELL_AND_RAO, JOKARD_AND_NEEDMAN, DYCE, SOKAL_AND_SNIF
+    }
 }
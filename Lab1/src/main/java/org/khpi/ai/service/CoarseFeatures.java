@@ -0,0 +1,107 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+
+import java.util.List;
+
+/**
+ * Cheap descriptors of glyphs for the {@link CascadeFilter}: row and column projections of absolute cell
+ * values, ink, bounding box and a {@code THUMBNAIL_SIZE}×{@code THUMBNAIL_SIZE} thumbnail of block sums.
+ * Descriptors of all standards lie back to back in one array and are compared by L1 distance, so comparing
+ * a glyph with a standard reads about {@code width + height} values instead of {@code width × height} cells.
+ */
+final class CoarseFeatures {
+    static final int THUMBNAIL_SIZE = 4;
+    private static final int BOUNDING_BOX = 4;
+
+    private final int length;
+    private final int[] descriptors;
+
+    private CoarseFeatures(int length, int[] descriptors) {
+        this.length = length;
+        this.descriptors = descriptors;
+    }
+
+    /**
+     * @param standards standards of the given dimensions.
+     */
+    static CoarseFeatures of(List<Character> standards, int width, int height) {
+        final int length = length(width, height);
+        int[] descriptors = new int[standards.size() * length];
+
+        for (int i = 0; i < standards.size(); i++) {
+            describe(standards.get(i), descriptors, i * length);
+        }
+
+        return new CoarseFeatures(length, descriptors);
+    }
+
+    static int[] describe(Character character) {
+        int[] descriptor = new int[length(character.getWidth(), character.getHeight())];
+        describe(character, descriptor, 0);
+        return descriptor;
+    }
+
+    /**
+     * @return L1 distance between the descriptor of a glyph and the descriptor of the standard.
+     */
+    long distance(int[] descriptor, int index) {
+        final int offset = index * length;
+        long sum = 0;
+
+        for (int k = 0; k < length; k++) {
+            sum += Math.abs((long) descriptor[k] - descriptors[offset + k]);
+        }
+
+        return sum;
+    }
+
+    private static int length(int width, int height) {
+        return height + width + 1 + BOUNDING_BOX + THUMBNAIL_SIZE * THUMBNAIL_SIZE;
+    }
+
+    /**
+     * Layout: rows, columns, ink, top, bottom, left, right, thumbnail row-major. An empty glyph has a zero box.
+     */
+    private static void describe(Character character, int[] target, int offset) {
+        final int width = character.getWidth();
+        final int height = character.getHeight();
+        final int[] cells = character.getCells();
+        final int columns = offset + height;
+        final int ink = columns + width;
+        final int box = ink + 1;
+        final int thumbnail = box + BOUNDING_BOX;
+        int top = height;
+        int bottom = -1;
+        int left = width;
+        int right = -1;
+
+        for (int row = 0; row < height; row++) {
+            final int thumbnailRow = thumbnail + row * THUMBNAIL_SIZE / height * THUMBNAIL_SIZE;
+
+            for (int column = 0; column < width; column++) {
+                final int value = Math.abs(cells[row * width + column]);
+
+                if (value == 0) {
+                    continue;
+                }
+
+                target[offset + row] += value;
+                target[columns + column] += value;
+                target[ink] += value;
+                target[thumbnailRow + column * THUMBNAIL_SIZE / width] += value;
+                top = Math.min(top, row);
+                bottom = Math.max(bottom, row);
+                left = Math.min(left, column);
+                right = Math.max(right, column);
+            }
+        }
+
+        if (bottom >= 0) {
+            target[box] = top;
+            target[box + 1] = bottom;
+            target[box + 2] = left;
+            target[box + 3] = right;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+/**
+ * Comma separated results: a header line {@code source[,label],<formulas>} and one line of winners per result,
+ * or {@code source[,label],error: <message>}. Sources, labels and messages holding a delimiter, quote or line break
+ * are quoted as RFC 4180 requires.
+ */
+class CsvResultEncoder implements ResultSink.Encoder {
+    private static final String DELIMITER = ",";
+    private static final String QUOTE = "\"";
+
+    private final FormulaSelection formulas;
+    private final String sourceName;
+    private final boolean labelled;
+
+    CsvResultEncoder(FormulaSelection formulas, String sourceName, boolean labelled) {
+        this.formulas = formulas;
+        this.sourceName = sourceName;
+        this.labelled = labelled;
+    }
+
+    @Override
+    public void header(ResultSink.Output output) {
+        field(output, sourceName);
+        if (labelled) {
+            output.putAscii(DELIMITER).putAscii("label");
+        }
+
+        for (Formula formula : formulas.getFormulas()) {
+            output.putAscii(DELIMITER).putAscii(formula.name());
+        }
+
+        for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+            output.putAscii(DELIMITER).putAscii(formula.name());
+        }
+
+        output.putLineSeparator();
+    }
+
+    @Override
+    public void result(ResultSink.Output output, String source, String label, FormulaResults results) {
+        key(output, source, label);
+
+        for (Formula formula : formulas.getFormulas()) {
+            output.putAscii(DELIMITER).putAscii(String.valueOf(results.getStandard(formula)));
+        }
+
+        for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+            output.putAscii(DELIMITER).putAscii(String.valueOf(results.getStandard(formula)));
+        }
+
+        output.putLineSeparator();
+    }
+
+    @Override
+    public void error(ResultSink.Output output, String source, String label, String message) {
+        key(output, source, label);
+        output.putAscii(DELIMITER);
+        field(output, "error: " + message);
+        output.putLineSeparator();
+    }
+
+    private void key(ResultSink.Output output, String source, String label) {
+        field(output, source);
+        if (labelled) {
+            output.putAscii(DELIMITER);
+            field(output, label == null ? "" : label);
+        }
+    }
+
+    private static void field(ResultSink.Output output, String value) {
+        if (needsQuotes(value)) {
+            output.putAscii(QUOTE).putUtf8(value.replace(QUOTE, QUOTE + QUOTE)).putAscii(QUOTE);
+        } else {
+            output.putUtf8(value);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package org.khpi.ai.service;
+
+/**
+ * Inner loops of the distance formulas over cells {@code [from, to)}, each adding its terms to {@code sum}.
+ * Standard cell {@code k} is read at {@code offset + k}, so templates stored back to back in one array
+ * are scanned in place.
+ * {@link #load()} picks the Vector API implementation when the runtime provides it
+ * (Java 17+ with {@code --add-modules jdk.incubator.vector}) and falls back to the scalar one otherwise.
+ * Integer valued sums are exact in both while they stay below 2^53, fractions are added in cell order in both,
+ * so every implementation returns the same double.
+ */
+interface DistanceKernels {
+    String KERNELS_PROPERTY = "org.khpi.ai.kernels";
+    String SCALAR = "scalar";
+    String VECTOR_KERNELS_CLASS = "org.khpi.ai.service.VectorDistanceKernels";
+
+    double addSquaredDifferences(double sum, int[] input, int[] standard, int offset, int from, int to);
+
+    double addAbsoluteDifferences(double sum, int[] input, int[] standard, int offset, int from, int to);
+
+    double addWeightedSquaredDifferences(double sum, int[] input, int[] standard, int offset, int[] weights, int from,
+                                         int to);
+
+    double addFractions(double sum, int[] input, int[] standard, int offset, int from, int to);
+
+    String getName();
+
+    /**
+     * @return vector kernels when available and not disabled with {@code -Dorg.khpi.ai.kernels=scalar}.
+     */
+    static DistanceKernels load() {
+        if (SCALAR.equals(System.getProperty(KERNELS_PROPERTY))) {
+            return new ScalarDistanceKernels();
+        }
+
+        try {
+            return (DistanceKernels) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarDistanceKernels();
+        }
+    }
+}
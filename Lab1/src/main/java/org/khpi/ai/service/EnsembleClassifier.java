@@ -0,0 +1,151 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.EnsembleResult;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Majority vote of the selected formulas, evaluated cheapest first and stopped early. Every formula
+ * votes for its nearest standard. Evaluation stops once the leader has more votes than any other standard
+ * can still reach, so the winner is the same as with every formula evaluated, or once the confidence
+ * reaches the threshold.
+ * <p>
+ * The confidence is the mean normalised margin of the evaluated formulas, counting 0 for formulas voting
+ * for another standard. The normalised margin of a formula is the score gap between its best and second
+ * standards divided by the larger of the two scores. It is only checked after {@code MIN_AGREEING_FORMULAS}
+ * formulas, so a single formula never decides alone. A threshold above 1 turns the confidence stop off.
+ * <p>
+ * Equal votes go to the standard with the larger summed margin, then to the one voted for first.
+ */
+public class EnsembleClassifier {
+    public static final double EXACT = Double.POSITIVE_INFINITY;
+    private static final int MIN_AGREEING_FORMULAS = 2;
+
+    /**
+     * Cost order on 16x16 glyphs: qualitative formulas count bits of packed glyphs, distances with norm
+     * bounds prune most standards, fraction and arccos scan every cell of every standard.
+     */
+    private static final List<Enum<?>> COST_ORDER = List.of(
+            QualitativeFormula.RUSSELL_AND_RAO,
+            QualitativeFormula.JOKARD_AND_NEEDMAN,
+            QualitativeFormula.SOKAL_AND_SNIF,
+            QualitativeFormula.DYCE,
+            Formula.WITH_MODULE,
+            Formula.WITH_SQUARE_ROOT,
+            Formula.WITH_COEFFICIENT,
+            Formula.WITH_MODULE_AND_FRACTION,
+            Formula.WITH_ARCCOS);
+
+    private final List<Enum<?>> formulas = new ArrayList<>();
+    private final double threshold;
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    /**
+     * @param threshold confidence to stop at, {@link #EXACT} to stop only when the winner is decided.
+     */
+    public EnsembleClassifier(FormulaSelection selection, double threshold) {
+        if (!(threshold > 0)) {
+            throw new IllegalArgumentException(String.format("Confidence threshold must be positive, got %s", threshold));
+        }
+
+        for (Enum<?> formula : COST_ORDER) {
+            if (selection.getFormulas().contains(formula) || selection.getQualitativeFormulas().contains(formula)) {
+                formulas.add(formula);
+            }
+        }
+
+        if (formulas.isEmpty()) {
+            throw new IllegalArgumentException("Ensemble needs at least one formula");
+        }
+
+        this.threshold = threshold;
+    }
+
+    public EnsembleResult determine(Character input, PreparedLibrary library) {
+        final int standards = Standard.values().length;
+        int[] votes = new int[standards];
+        double[] margins = new double[standards];
+        int[] firstVotes = new int[standards];
+        List<Enum<?>> evaluated = new ArrayList<>();
+        Standard leader = null;
+        double confidence = 0;
+
+        for (Enum<?> formula : formulas) {
+            Ranking ranking = formula instanceof Formula
+                    ? determinant.rank(input, library, 2, (Formula) formula)
+                    : determinant.rank(input, library, 2, (QualitativeFormula) formula);
+            final Standard standard = ranking.getBest().getStandard();
+            final int vote = standard.ordinal();
+
+            evaluated.add(formula);
+            if (votes[vote] == 0) {
+                firstVotes[vote] = evaluated.size();
+            }
+            votes[vote]++;
+            margins[vote] += normalisedMargin(ranking);
+
+            leader = leader(votes, margins, firstVotes);
+            confidence = margins[leader.ordinal()] / evaluated.size();
+
+            final int remaining = formulas.size() - evaluated.size();
+            if (votes[leader.ordinal()] > runnerUpVotes(votes, leader) + remaining
+                    || (evaluated.size() >= MIN_AGREEING_FORMULAS && confidence >= threshold)) {
+                break;
+            }
+        }
+
+        return new EnsembleResult(leader, confidence, votes[leader.ordinal()], evaluated);
+    }
+
+    private static Standard leader(int[] votes, double[] margins, int[] firstVotes) {
+        int leader = -1;
+
+        for (int i = 0; i < votes.length; i++) {
+            if (votes[i] == 0) {
+                continue;
+            }
+
+            if (leader < 0 || votes[i] > votes[leader]
+                    || (votes[i] == votes[leader] && (margins[i] > margins[leader]
+                    || (margins[i] == margins[leader] && firstVotes[i] < firstVotes[leader])))) {
+                leader = i;
+            }
+        }
+
+        return Standard.values()[leader];
+    }
+
+    private static int runnerUpVotes(int[] votes, Standard leader) {
+        int runnerUp = 0;
+
+        for (int i = 0; i < votes.length; i++) {
+            if (i != leader.ordinal()) {
+                runnerUp = Math.max(runnerUp, votes[i]);
+            }
+        }
+
+        return runnerUp;
+    }
+
+    /**
+     * @return gap between the best and second scores relative to the larger one, 1 without a second standard,
+     * 0 when the scores are not comparable.
+     */
+    private static double normalisedMargin(Ranking ranking) {
+        if (ranking.getEntries().size() < 2) {
+            return 1;
+        }
+
+        final double scale = Math.max(Math.abs(ranking.getEntries().get(0).getScore()),
+                Math.abs(ranking.getEntries().get(1).getScore()));
+        final double margin = ranking.getMargin() / scale;
+
+        return Double.isNaN(margin) ? 0 : Math.min(1, margin);
+    }
+}
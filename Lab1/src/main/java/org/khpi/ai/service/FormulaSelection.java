@@ -0,0 +1,166 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set of formulas a caller is interested in, written as {@code all} or as comma separated formula names,
+ * e.g. {@code WITH_MODULE,DYCE}. A single formula is computed alone with early abandoning,
+ * several formulas share one {@link FusedScoringEngine} scan.
+ */
+public class FormulaSelection {
+    public static final String ALL = "all";
+    private static final String DELIMITER = ",";
+
+    private final Set<Formula> formulas;
+    private final Set<QualitativeFormula> qualitativeFormulas;
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+    private final FusedScoringEngine scoringEngine = new FusedScoringEngine();
+
+    private FormulaSelection(Set<Formula> formulas, Set<QualitativeFormula> qualitativeFormulas) {
+        this.formulas = formulas;
+        this.qualitativeFormulas = qualitativeFormulas;
+    }
+
+    public static FormulaSelection all() {
+        return new FormulaSelection(EnumSet.allOf(Formula.class), EnumSet.allOf(QualitativeFormula.class));
+    }
+
+    public static FormulaSelection parse(String specification) {
+        if (ALL.equalsIgnoreCase(specification.trim())) {
+            return all();
+        }
+
+        Set<Formula> formulas = EnumSet.noneOf(Formula.class);
+        Set<QualitativeFormula> qualitativeFormulas = EnumSet.noneOf(QualitativeFormula.class);
+
+        for (String name : specification.split(DELIMITER)) {
+            String formula = name.trim();
+
+            if (isFormula(formula)) {
+                formulas.add(Formula.valueOf(formula));
+            } else if (isQualitativeFormula(formula)) {
+                qualitativeFormulas.add(QualitativeFormula.valueOf(formula));
+            } else {
+                throw new IllegalArgumentException(String.format("Unknown formula: %s", formula));
+            }
+        }
+
+        return new FormulaSelection(formulas, qualitativeFormulas);
+    }
+
+    public Set<Formula> getFormulas() {
+        return formulas;
+    }
+
+    public Set<QualitativeFormula> getQualitativeFormulas() {
+        return qualitativeFormulas;
+    }
+
+    /**
+     * @return winners of the selected formulas only.
+     */
+    public FormulaResults determine(Character input, PreparedLibrary library) {
+        return compute(input, library);
+    }
+
+    /**
+     * Same as {@link #determine(Character, PreparedLibrary)}, answered from the cache for a repeated glyph.
+     *
+     * @param cache may be null to compute every time.
+     */
+    public FormulaResults determine(Character input, PreparedLibrary library, ResultCache cache) {
+        if (cache == null) {
+            return compute(input, library);
+        }
+
+        return cache.get(input, this, library, () -> compute(input, library));
+    }
+
+    private FormulaResults compute(Character input, PreparedLibrary library) {
+        if (formulas.size() + qualitativeFormulas.size() > 1) {
+            FormulaResults results = scoringEngine.determine(input, library);
+            Map<Formula, Standard> formulaWinners = new EnumMap<>(results.getFormulaWinners());
+            Map<QualitativeFormula, Standard> qualitativeWinners = new EnumMap<>(results.getQualitativeWinners());
+
+            formulaWinners.keySet().retainAll(formulas);
+            qualitativeWinners.keySet().retainAll(qualitativeFormulas);
+
+            return new FormulaResults(formulaWinners, qualitativeWinners);
+        }
+
+        Map<Formula, Standard> formulaWinners = new EnumMap<>(Formula.class);
+        Map<QualitativeFormula, Standard> qualitativeWinners = new EnumMap<>(QualitativeFormula.class);
+
+        for (Formula formula : formulas) {
+            formulaWinners.put(formula, determinant.determineCharacter(input, library, formula));
+        }
+
+        for (QualitativeFormula formula : qualitativeFormulas) {
+            qualitativeWinners.put(formula, determinant.rank(input, library, 1, formula).getBest().getStandard());
+        }
+
+        return new FormulaResults(formulaWinners, qualitativeWinners);
+    }
+
+    private static boolean isFormula(String name) {
+        for (Formula formula : Formula.values()) {
+            if (formula.name().equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isQualitativeFormula(String name) {
+        for (QualitativeFormula formula : QualitativeFormula.values()) {
+            if (formula.name().equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FormulaSelection)) {
+            return false;
+        }
+
+        FormulaSelection other = (FormulaSelection) o;
+        return formulas.equals(other.formulas) && qualitativeFormulas.equals(other.qualitativeFormulas);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * formulas.hashCode() + qualitativeFormulas.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder specification = new StringBuilder();
+
+        for (Formula formula : formulas) {
+            specification.append(specification.length() == 0 ? "" : DELIMITER).append(formula);
+        }
+
+        for (QualitativeFormula formula : qualitativeFormulas) {
+            specification.append(specification.length() == 0 ? "" : DELIMITER).append(formula);
+        }
+
+        return specification.toString();
+    }
+}
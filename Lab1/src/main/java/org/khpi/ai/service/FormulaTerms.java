@@ -0,0 +1,130 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+/**
+ * Per-cell terms of the distance formulas and the norm lower bounds of their sums. Every scan, kernel and
+ * scorer builds its sums from these, so all of them compute the same doubles and agree on winners and ties.
+ */
+final class FormulaTerms {
+    /**
+     * Relative slack of a lower bound before it prunes, so rounding of the norms never drops an exact tie.
+     */
+    static final double LOWER_BOUND_TOLERANCE = 1e-9;
+
+    private FormulaTerms() {
+    }
+
+    /**
+     * (Sik - Xjk)², term of {@link Formula#WITH_SQUARE_ROOT}.
+     */
+    static double squaredDifference(double x, double s) {
+        final double difference = x - s;
+        return difference * difference;
+    }
+
+    /**
+     * |Sik - Xjk|, term of {@link Formula#WITH_MODULE}.
+     */
+    static double absoluteDifference(double x, double s) {
+        return Math.abs(x - s);
+    }
+
+    /**
+     * Ŋk(Sik - Xjk)², term of {@link Formula#WITH_COEFFICIENT}.
+     */
+    static double weightedSquaredDifference(double x, double s, double weight) {
+        final double difference = x - s;
+        return weight * (difference * difference);
+    }
+
+    /**
+     * (|Sik - Xjk| + 1) / (|Sik + Xjk| + 1), term of {@link Formula#WITH_MODULE_AND_FRACTION}.
+     */
+    static double fraction(double x, double s) {
+        double numerator = Math.abs(x - s) + 1; // +1 is used in cases when multiplication provides 0
+        double denominator = Math.abs(x + s) + 1; // +1 is used in cases when multiplication provides 0
+        return numerator / denominator;
+    }
+
+    /**
+     * (Sik×Xjk + 1) / ((|Xjk| + 1)×(|Sik| + 1)), term of {@link Formula#WITH_ARCCOS}.
+     *
+     * @param inputTerm |Xjk| + 1, see {@link #arcCosInputTerms(int[])}.
+     */
+    static double arcCosTerm(double x, double inputTerm, double s) {
+        double numerator = (x * s) + 1.0; // +1 is used in cases when multiplication provides 0
+        double denominator = inputTerm * (Math.abs(s) + 1); // +1 is used in cases when multiplication provides 0
+        return numerator / denominator;
+    }
+
+    /**
+     * @return |Xk| + 1 of every input cell, computed once per query instead of once per standard.
+     */
+    static int[] arcCosInputTerms(int[] input) {
+        int[] terms = new int[input.length];
+
+        for (int k = 0; k < input.length; k++) {
+            terms[k] = Math.abs(input[k]) + 1;
+        }
+
+        return terms;
+    }
+
+    /**
+     * @return {@link Formula#WITH_ARCCOS} of the input and the standard starting at {@code offset} of the cells.
+     */
+    static double arcCos(int[] input, int[] inputTerms, int[] cells, int offset) {
+        double rawSum = 0;
+
+        for (int k = 0; k < input.length; k++) {
+            rawSum += arcCosTerm(input[k], inputTerms[k], cells[offset + k]);
+        }
+
+        return arcCos(rawSum);
+    }
+
+    /**
+     * @return {@link Formula#WITH_ARCCOS} of the sum of its terms, in degrees.
+     */
+    static double arcCos(double rawSum) {
+        return Math.toDegrees(Math.acos(Math.cos(rawSum)));
+    }
+
+    /**
+     * (|X| - |Si|)² never exceeds the squared distance, by the triangle inequality. Cells are integers,
+     * so every squared difference is at least the absolute one and the Manhattan bound holds as well.
+     */
+    static double euclideanLowerBound(double inputNorm, long inputSum, double norm, long absoluteSum) {
+        final double difference = inputNorm - norm;
+        return Math.max(difference * difference, manhattanLowerBound(inputSum, absoluteSum));
+    }
+
+    /**
+     * |Σ|Xk| - Σ|Sik|| never exceeds Σ|Sik - Xk|.
+     */
+    static double manhattanLowerBound(long inputSum, long absoluteSum) {
+        return Math.abs(inputSum - absoluteSum);
+    }
+
+    /**
+     * @return lower bound of the sum of the formula without the final root, 0 when the formula has none.
+     */
+    static double lowerBound(Formula formula, double inputNorm, long inputSum, double norm, long absoluteSum) {
+        switch (formula) {
+            case WITH_SQUARE_ROOT:
+                return euclideanLowerBound(inputNorm, inputSum, norm, absoluteSum);
+            case WITH_MODULE:
+                return manhattanLowerBound(inputSum, absoluteSum);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return whether a sum with this lower bound cannot reach the bound, allowing {@link #LOWER_BOUND_TOLERANCE}.
+     */
+    static boolean exceeds(double lowerBound, double bound) {
+        return lowerBound * (1 - LOWER_BOUND_TOLERANCE) > bound;
+    }
+}
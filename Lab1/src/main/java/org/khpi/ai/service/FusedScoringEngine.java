@@ -0,0 +1,216 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.QualitativeParameters;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores the input against every standard in a single pass over the cells, producing all
+ * {@link Formula} distances and {@link QualitativeFormula} similarities at once.
+ * Results and tie handling are the same as calling {@link CharacterDeterminant} per formula:
+ * the later standard wins a tie and a NaN distance is ordered after every number.
+ */
+public class FusedScoringEngine {
+    private static final Formula[] FORMULAS = Formula.values();
+    private static final QualitativeFormula[] QUALITATIVE_FORMULAS = QualitativeFormula.values();
+    private static final String FUSED = "fused";
+    private static final Histogram SCORING_TIME = Metrics.histogram("scoring." + FUSED, Metrics.NANOSECONDS);
+    private static final double[] BINARY_FRACTION_TERMS = new double[4];
+    private static final double[] BINARY_ARCCOS_TERMS = new double[4];
+
+    static {
+        for (int x = 0; x <= 1; x++) {
+            for (int s = 0; s <= 1; s++) {
+                BINARY_FRACTION_TERMS[(x << 1) | s] = FormulaTerms.fraction(x, s);
+                BINARY_ARCCOS_TERMS[(x << 1) | s] = arcCosTerm(x, s);
+            }
+        }
+    }
+
+    public FormulaResults determine(Character inputCharacter, List<Character> standardList, List<Character> metadata) {
+        return determine(inputCharacter, PreparedLibrary.wrap(standardList, metadata));
+    }
+
+    public FormulaResults determine(Character inputCharacter, PreparedLibrary library) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+
+        if (library.size() == 0) {
+            throw new IllegalStateException("Cannot find min value");
+        }
+
+        if (!library.acceptsWithMetadata(inputCharacter)) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
+        double[] scores = new double[FORMULAS.length];
+        double[] minScores = new double[FORMULAS.length];
+        Standard[] formulaWinners = new Standard[FORMULAS.length];
+        double[] qualitativeScores = new double[QUALITATIVE_FORMULAS.length];
+        double[] maxScores = new double[QUALITATIVE_FORMULAS.length];
+        Standard[] qualitativeWinners = new Standard[QUALITATIVE_FORMULAS.length];
+
+        Arrays.fill(minScores, Double.NaN);
+        Arrays.fill(maxScores, Double.NEGATIVE_INFINITY);
+
+        for (int i = 0; i < library.size(); i++) {
+            Character standardCharacter = library.getStandard(i);
+
+            score(inputCharacter, standardCharacter, library.getMetadata(i), scores, qualitativeScores);
+
+            for (int f = 0; f < scores.length; f++) {
+                if (Double.compare(scores[f], minScores[f]) <= 0) {
+                    minScores[f] = scores[f];
+                    formulaWinners[f] = standardCharacter.getStandard();
+                }
+            }
+
+            for (int f = 0; f < qualitativeScores.length; f++) {
+                if (qualitativeScores[f] >= maxScores[f]) {
+                    maxScores[f] = qualitativeScores[f];
+                    qualitativeWinners[f] = standardCharacter.getStandard();
+                }
+            }
+        }
+
+        Map<Formula, Standard> formulaResults = new EnumMap<>(Formula.class);
+        for (Formula formula : FORMULAS) {
+            formulaResults.put(formula, formulaWinners[formula.ordinal()]);
+        }
+
+        Map<QualitativeFormula, Standard> qualitativeResults = new EnumMap<>(QualitativeFormula.class);
+        for (QualitativeFormula formula : QUALITATIVE_FORMULAS) {
+            qualitativeResults.put(formula, qualitativeWinners[formula.ordinal()]);
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.recordScoring(SCORING_TIME, FUSED, start, library.size(), 0, 0);
+        }
+
+        return new FormulaResults(formulaResults, qualitativeResults);
+    }
+
+    private void score(Character input, Character standard, Character metaData,
+                       double[] scores, double[] qualitativeScores) {
+        if (input.isBinary() && standard.isBinary()) {
+            scoreBinary(input, standard, metaData, scores, qualitativeScores);
+            return;
+        }
+
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
+        final int[] meta = metaData.getCells();
+
+        double squareSum = 0;
+        double moduleSum = 0;
+        double coefficientSum = 0;
+        double fractionSum = 0;
+        double arcCosSum = 0;
+        long aSum = 0;
+        long bSum = 0;
+        long gSum = 0;
+        long hSum = 0;
+
+        for (int k = 0; k < inputData.length; k++) {
+            int x = inputData[k];
+            int s = standardData[k];
+
+            squareSum += FormulaTerms.squaredDifference(x, s);
+            moduleSum += FormulaTerms.absoluteDifference(x, s);
+            coefficientSum += FormulaTerms.weightedSquaredDifference(x, s, meta[k]);
+            fractionSum += FormulaTerms.fraction(x, s);
+            arcCosSum += arcCosTerm(x, s);
+
+            aSum += (x * s) + 1;
+            bSum += ((1 - x) * (1 - s)) + 1;
+            gSum += (x * (1 - s)) + 1;
+            hSum += ((1 - x) * s);
+        }
+
+        setScores(scores, squareSum, moduleSum, coefficientSum, fractionSum, arcCosSum);
+        setQualitativeScores(qualitativeScores, aSum, bSum, gSum, hSum);
+    }
+
+    /**
+     * For 0/1 cells the fraction and arccos terms take one of four values, so they are looked up
+     * instead of divided. The terms are the same doubles added in the same order, so sums do not change.
+     */
+    private void scoreBinary(Character input, Character standard, Character metaData,
+                             double[] scores, double[] qualitativeScores) {
+        final int[] inputData = input.getCells();
+        final int[] standardData = standard.getCells();
+        final int[] meta = metaData.getCells();
+
+        double squareSum = 0;
+        double moduleSum = 0;
+        double coefficientSum = 0;
+        double fractionSum = 0;
+        double arcCosSum = 0;
+
+        for (int k = 0; k < inputData.length; k++) {
+            int x = inputData[k];
+            int s = standardData[k];
+            int pair = (x << 1) | s;
+
+            squareSum += FormulaTerms.squaredDifference(x, s);
+            moduleSum += FormulaTerms.absoluteDifference(x, s);
+            coefficientSum += FormulaTerms.weightedSquaredDifference(x, s, meta[k]);
+            fractionSum += BINARY_FRACTION_TERMS[pair];
+            arcCosSum += BINARY_ARCCOS_TERMS[pair];
+        }
+
+        final long[] inputBits = input.getBits();
+        final long[] standardBits = standard.getBits();
+        final int n = input.getSize();
+        long both = 0;
+        long inputOnly = 0;
+        long standardOnly = 0;
+
+        for (int w = 0; w < inputBits.length; w++) {
+            both += Long.bitCount(inputBits[w] & standardBits[w]);
+            inputOnly += Long.bitCount(inputBits[w] & ~standardBits[w]);
+            standardOnly += Long.bitCount(~inputBits[w] & standardBits[w]);
+        }
+
+        long neither = n - both - inputOnly - standardOnly;
+
+        setScores(scores, squareSum, moduleSum, coefficientSum, fractionSum, arcCosSum);
+        setQualitativeScores(qualitativeScores, both + n, neither + n, inputOnly + n, standardOnly);
+    }
+
+    private static double arcCosTerm(int x, int s) {
+        return FormulaTerms.arcCosTerm(x, Math.abs(x) + 1, s);
+    }
+
+    private static void setScores(double[] scores, double squareSum, double moduleSum, double coefficientSum,
+                                  double fractionSum, double arcCosSum) {
+        scores[Formula.WITH_SQUARE_ROOT.ordinal()] = Math.sqrt(squareSum);
+        scores[Formula.WITH_MODULE.ordinal()] = moduleSum;
+        scores[Formula.WITH_COEFFICIENT.ordinal()] = Math.sqrt(coefficientSum);
+        scores[Formula.WITH_MODULE_AND_FRACTION.ordinal()] = fractionSum;
+        scores[Formula.WITH_ARCCOS.ordinal()] = FormulaTerms.arcCos(arcCosSum);
+    }
+
+    private static void setQualitativeScores(double[] qualitativeScores, long aSum, long bSum, long gSum, long hSum) {
+        QualitativeParameters parameters = QualitativeParameters.builder()
+                .aSum(aSum)
+                .bSum(bSum)
+                .gSum(gSum)
+                .hSum(hSum)
+                .build();
+
+        qualitativeScores[QualitativeFormula.RUSSELL_AND_RAO.ordinal()] = CharacterDeterminant.computeByRussellAndRao(parameters);
+        qualitativeScores[QualitativeFormula.JOKARD_AND_NEEDMAN.ordinal()] = CharacterDeterminant.computeByJokardAndNeedman(parameters);
+        qualitativeScores[QualitativeFormula.DYCE.ordinal()] = CharacterDeterminant.computeByDyce(parameters);
+        qualitativeScores[QualitativeFormula.SOKAL_AND_SNIF.ordinal()] = CharacterDeterminant.computeBySokalAndSnif(parameters);
+    }
+}
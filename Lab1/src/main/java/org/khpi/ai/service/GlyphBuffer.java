@@ -0,0 +1,74 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+
+import java.util.Arrays;
+
+/**
+ * Reusable row-major cell buffer that {@link GlyphParser} fills record by record.
+ * Its content is valid only until the parser continues with the next record.
+ */
+public class GlyphBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] cells = new int[INITIAL_CAPACITY];
+    private int size;
+    private int width;
+    private int height;
+    private String label;
+
+    void append(int value) {
+        if (size == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+        }
+
+        cells[size++] = value;
+    }
+
+    void endRow(int rowWidth) {
+        width = rowWidth;
+        height++;
+    }
+
+    void setLabel(String label) {
+        this.label = label;
+    }
+
+    void clear() {
+        size = 0;
+        width = 0;
+        height = 0;
+        label = null;
+    }
+
+    public Character toCharacter(Standard standard) {
+        return Character.of(cells, width, height, standard);
+    }
+
+    /**
+     * @return backing cells, only the first {@link #getSize()} are valid.
+     */
+    public int[] getCells() {
+        return cells;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return label from the record header line, or null when the record has no header.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,267 @@
+package org.khpi.ai.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Byte level parser of comma separated glyphs. Values go straight into a reusable {@link GlyphBuffer},
+ * no Strings are created for cells. One input may hold many records:
+ * <pre>
+ * # A
+ * 0,1,1,1,0
+ * 1,0,0,0,1
+ *
+ * # K
+ * ...
+ * </pre>
+ * A record ends at a blank line, at the next {@code #} header line or at the end of input.
+ * Text after {@code #} is the record label. Handlers may also follow a record row by row.
+ * Parser is not thread safe, use one instance per thread.
+ */
+public class GlyphParser {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+    private static final long MAX_MAPPED_REGION = 1L << 30;
+
+    private final GlyphBuffer glyph = new GlyphBuffer();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private byte[] header = new byte[32];
+
+    private RecordHandler handler;
+    private int lineNumber;
+    private boolean inHeader;
+    private int headerLength;
+    private int rowColumns;
+    private long value;
+    private boolean negative;
+    private boolean hasDigits;
+    private boolean valueEnded;
+
+    public interface RecordHandler {
+        /**
+         * @param glyph parsed record, reused for the next one, so it has to be copied to be kept.
+         */
+        void onRecord(GlyphBuffer glyph);
+
+        /**
+         * Called as soon as a row of the current record is complete, before {@link #onRecord}.
+         *
+         * @param glyph record so far, its last row starts at {@code (height - 1) * width}.
+         */
+        default void onRow(GlyphBuffer glyph) {
+        }
+    }
+
+    /**
+     * Parses the whole file, memory mapping it when it is large.
+     */
+    public void parse(Path file, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            if (size < MAP_THRESHOLD) {
+                parse(channel, handler);
+                return;
+            }
+
+            start(handler);
+            for (long position = 0; position < size; position += MAX_MAPPED_REGION) {
+                feed(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPED_REGION, size - position)));
+            }
+            finish();
+        }
+    }
+
+    /**
+     * Parses channel until its end, handing every record over as soon as it is complete,
+     * so it can be used on pipes and sockets.
+     */
+    public void parse(ReadableByteChannel channel, RecordHandler handler) throws IOException {
+        start(handler);
+
+        readBuffer.clear();
+        while (channel.read(readBuffer) != -1) {
+            readBuffer.flip();
+            feed(readBuffer);
+            readBuffer.clear();
+        }
+
+        finish();
+    }
+
+    public void parse(ByteBuffer bytes, RecordHandler handler) {
+        start(handler);
+        feed(bytes);
+        finish();
+    }
+
+    private void start(RecordHandler handler) {
+        this.handler = handler;
+        glyph.clear();
+        lineNumber = 1;
+        inHeader = false;
+        headerLength = 0;
+        rowColumns = 0;
+        resetValue();
+    }
+
+    private void feed(ByteBuffer bytes) {
+        final int limit = bytes.limit();
+
+        for (int i = bytes.position(); i < limit; i++) {
+            accept(bytes.get(i));
+        }
+
+        bytes.position(limit);
+    }
+
+    private void accept(byte b) {
+        if (inHeader) {
+            if (b == '\n') {
+                endHeader();
+            } else {
+                appendHeader(b);
+            }
+            return;
+        }
+
+        if (b >= '0' && b <= '9') {
+            if (valueEnded) {
+                throw error("Unexpected space inside value");
+            }
+
+            value = value * 10 + (b - '0');
+            hasDigits = true;
+
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw error("Value does not fit into int");
+            }
+            return;
+        }
+
+        switch (b) {
+            case ',':
+                endValue();
+                break;
+            case '\n':
+                endLine();
+                break;
+            case '-':
+                if (hasDigits || negative) {
+                    throw error("Unexpected '-'");
+                }
+                negative = true;
+                break;
+            case ' ':
+            case '\t':
+            case '\r':
+                valueEnded = hasDigits;
+                break;
+            case '#':
+                if (rowColumns != 0 || hasDigits || negative) {
+                    throw error("Header must start a line");
+                }
+                finishRecord();
+                inHeader = true;
+                headerLength = 0;
+                break;
+            default:
+                throw error(String.format("Unexpected character '%c'", (char) (b & 0xFF)));
+        }
+    }
+
+    private void finish() {
+        if (inHeader) {
+            endHeader();
+        } else if (rowColumns != 0 || hasDigits || negative) {
+            endLine();
+        }
+
+        finishRecord();
+        handler = null;
+    }
+
+    private void endValue() {
+        if (!hasDigits) {
+            throw error("Missing value");
+        }
+
+        long signed = negative ? -value : value;
+        if (signed > Integer.MAX_VALUE) {
+            throw error("Value does not fit into int");
+        }
+
+        glyph.append((int) signed);
+        rowColumns++;
+        resetValue();
+    }
+
+    private void endLine() {
+        if (rowColumns == 0 && !hasDigits && !negative) {
+            finishRecord();
+            lineNumber++;
+            return;
+        }
+
+        if (hasDigits || negative) {
+            endValue();
+        }
+
+        if (glyph.getHeight() != 0 && rowColumns != glyph.getWidth()) {
+            throw error(String.format("Row has %d cells, expected %d", rowColumns, glyph.getWidth()));
+        }
+
+        glyph.endRow(rowColumns);
+        handler.onRow(glyph);
+        rowColumns = 0;
+        lineNumber++;
+    }
+
+    private void endHeader() {
+        int from = 0;
+        int to = headerLength;
+
+        while (from < to && (header[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        while (to > from && (header[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+
+        glyph.setLabel(from == to ? null : new String(header, from, to - from, StandardCharsets.UTF_8));
+        inHeader = false;
+        lineNumber++;
+    }
+
+    private void appendHeader(byte b) {
+        if (headerLength == header.length) {
+            header = Arrays.copyOf(header, header.length * 2);
+        }
+
+        header[headerLength++] = b;
+    }
+
+    private void finishRecord() {
+        if (glyph.getHeight() != 0) {
+            handler.onRecord(glyph);
+            glyph.clear();
+        }
+    }
+
+    private void resetValue() {
+        value = 0;
+        negative = false;
+        hasDigits = false;
+        valueEnded = false;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("%s at line %d", message, lineNumber));
+    }
+}
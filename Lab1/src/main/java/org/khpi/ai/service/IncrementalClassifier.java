@@ -0,0 +1,391 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+/**
+ * Classifies a glyph by a distance formula while its rows arrive, e.g. from {@link GlyphParser.RecordHandler#onRow}.
+ * Every standard keeps the running sum of its rows seen so far. The rows still to come add at least the smallest
+ * and at most the largest term their cells can give for any input value in {@code [minCell, maxCell]},
+ * so every sum lies between a lower and an upper bound. A standard whose lower bound exceeds the best upper bound
+ * cannot win and is dropped, and the answer is committed as soon as a single standard is left,
+ * possibly rows before the end of the glyph. The committed standard is the one a scan of the whole glyph picks,
+ * the later standard on equal sums.
+ * <p>
+ * Only formulas that are sums of cell terms are supported, {@link Formula#WITH_ARCCOS} is not.
+ * Bounds of the remaining rows of every standard are computed once here, a classifier serves
+ * any number of {@link Session sessions} of the same library.
+ */
+public class IncrementalClassifier {
+    private static final DistanceKernels KERNELS = DistanceKernels.load();
+    private static final Histogram COMMITTED_ROWS = Metrics.histogram("incremental.rows", "");
+
+    private final PreparedLibrary library;
+    private final Formula formula;
+    private final int minCell;
+    private final int maxCell;
+    private final int width;
+    private final int height;
+    private final int[][] metadata;
+    private final double[] minRemaining;
+    private final double[] maxRemaining;
+
+    /**
+     * Classifier of glyphs with cells in the range of the standards, widened to 0/1 at least.
+     */
+    public IncrementalClassifier(PreparedLibrary library, Formula formula) {
+        this(library, formula, minCell(library), maxCell(library));
+    }
+
+    /**
+     * @param minCell smallest value an input cell may have.
+     * @param maxCell largest value an input cell may have.
+     * @throws IllegalArgumentException when the formula is not a sum of cell terms, the library is empty
+     *                                  or has standards of different dimensions, or the cell range is empty.
+     */
+    public IncrementalClassifier(PreparedLibrary library, Formula formula, int minCell, int maxCell) {
+        if (formula == Formula.WITH_ARCCOS) {
+            throw new IllegalArgumentException(String.format("Formula %s is not a sum of cell terms", formula));
+        }
+
+        if (minCell > maxCell) {
+            throw new IllegalArgumentException(String.format("Illegal cell range [%d, %d]", minCell, maxCell));
+        }
+
+        if (library.size() == 0) {
+            throw new IllegalArgumentException("Cannot classify against empty standards library");
+        }
+
+        this.library = library;
+        this.formula = formula;
+        this.minCell = minCell;
+        this.maxCell = maxCell;
+        this.width = library.getWidth();
+        this.height = library.getHeight();
+        this.metadata = new int[library.size()][];
+        this.minRemaining = new double[library.size() * (height + 1)];
+        this.maxRemaining = new double[library.size() * (height + 1)];
+
+        for (int i = 0; i < library.size(); i++) {
+            Character standard = library.getStandard(i);
+
+            if (standard.getWidth() != width || standard.getHeight() != height) {
+                throw new IllegalArgumentException("Standards have different dimensions");
+            }
+
+            if (formula == Formula.WITH_COEFFICIENT) {
+                Character metaCharacter = library.getMetadata(i);
+
+                if (!metaCharacter.hasSameDimensions(standard)) {
+                    throw new IllegalArgumentException("Metadata and standards have different dimensions");
+                }
+
+                metadata[i] = metaCharacter.getCells();
+            }
+
+            computeRemainingBounds(i, standard.getCells());
+        }
+    }
+
+    public Formula getFormula() {
+        return formula;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMinCell() {
+        return minCell;
+    }
+
+    public int getMaxCell() {
+        return maxCell;
+    }
+
+    /**
+     * @return new classification of one glyph, rows are accepted top to bottom.
+     */
+    public Session start() {
+        return new Session();
+    }
+
+    /**
+     * Suffix sums over the rows of a standard: entry r holds the bounds of the terms of rows r and below.
+     */
+    private void computeRemainingBounds(int index, int[] cells) {
+        final int base = index * (height + 1);
+        double minimum = 0;
+        double maximum = 0;
+
+        for (int r = height - 1; r >= 0; r--) {
+            for (int k = r * width; k < (r + 1) * width; k++) {
+                final int cell = cells[k];
+                final int weight = metadata[index] == null ? 1 : metadata[index][k];
+                double rowMinimum = Double.POSITIVE_INFINITY;
+                double rowMaximum = Double.NEGATIVE_INFINITY;
+
+                // every term is monotone between the range ends and the points x = s and x = -s
+                for (int x : new int[]{minCell, maxCell, clamp(cell), clamp(-cell)}) {
+                    final double term = term(x, cell, weight);
+                    rowMinimum = Math.min(rowMinimum, term);
+                    rowMaximum = Math.max(rowMaximum, term);
+                }
+
+                minimum += rowMinimum;
+                maximum += rowMaximum;
+            }
+
+            minRemaining[base + r] = minimum;
+            maxRemaining[base + r] = maximum;
+        }
+    }
+
+    private static int minCell(PreparedLibrary library) {
+        int minimum = 0;
+
+        for (Character standard : library.getStandards()) {
+            for (int cell : standard.getCells()) {
+                minimum = Math.min(minimum, cell);
+            }
+        }
+
+        return minimum;
+    }
+
+    private static int maxCell(PreparedLibrary library) {
+        int maximum = 1;
+
+        for (Character standard : library.getStandards()) {
+            for (int cell : standard.getCells()) {
+                maximum = Math.max(maximum, cell);
+            }
+        }
+
+        return maximum;
+    }
+
+    private int clamp(int value) {
+        return Math.max(minCell, Math.min(maxCell, value));
+    }
+
+    private double term(int x, int cell, int weight) {
+        switch (formula) {
+            case WITH_SQUARE_ROOT:
+                return FormulaTerms.squaredDifference(x, cell);
+            case WITH_MODULE:
+                return FormulaTerms.absoluteDifference(x, cell);
+            case WITH_COEFFICIENT:
+                return FormulaTerms.weightedSquaredDifference(x, cell, weight);
+            case WITH_MODULE_AND_FRACTION:
+                return FormulaTerms.fraction(x, cell);
+            default:
+                throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
+        }
+    }
+
+    /**
+     * Classification of one glyph. Not thread safe.
+     */
+    public class Session {
+        private final double[] sums = new double[library.size()];
+        private final int[] candidates = new int[library.size()];
+        private int candidateCount;
+        private int rows;
+        private Standard standard;
+
+        private Session() {
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = i;
+            }
+            candidateCount = candidates.length;
+        }
+
+        /**
+         * @param row cells of the next row.
+         * @return true when the answer is committed.
+         */
+        public boolean accept(int[] row) {
+            if (row.length != width) {
+                throw new IllegalArgumentException(String.format("Row has %d cells, expected %d", row.length, width));
+            }
+
+            return accept(row, 0);
+        }
+
+        /**
+         * Accepts the last row of a record in place, as handed over by {@link GlyphParser.RecordHandler#onRow}.
+         *
+         * @return true when the answer is committed.
+         */
+        public boolean accept(GlyphBuffer glyph) {
+            if (glyph.getWidth() != width) {
+                throw new IllegalArgumentException(String.format("Row has %d cells, expected %d", glyph.getWidth(), width));
+            }
+
+            return accept(glyph.getCells(), (glyph.getHeight() - 1) * width);
+        }
+
+        /**
+         * Rows after the answer is committed are only checked and counted.
+         *
+         * @param cells array holding the row at {@code [from, from + width)}.
+         * @throws IllegalArgumentException when a cell is out of the range of the classifier
+         *                                  or the glyph has more rows than the standards.
+         */
+        private boolean accept(int[] cells, int from) {
+            if (rows == height) {
+                throw new IllegalArgumentException(String.format("Glyph has more than %d rows", height));
+            }
+
+            for (int k = from; k < from + width; k++) {
+                if (cells[k] < minCell || cells[k] > maxCell) {
+                    throw new IllegalArgumentException(
+                            String.format("Cell value %d is out of range [%d, %d]", cells[k], minCell, maxCell));
+                }
+            }
+
+            rows++;
+            if (standard != null) {
+                return true;
+            }
+
+            addRow(cells, from);
+            prune();
+
+            if (candidateCount == 1 || rows == height) {
+                commit();
+            }
+
+            return standard != null;
+        }
+
+        public boolean isCommitted() {
+            return standard != null;
+        }
+
+        /**
+         * @throws IllegalStateException when the answer is not committed yet.
+         */
+        public Standard getStandard() {
+            if (standard == null) {
+                throw new IllegalStateException(String.format("Answer is not committed after %d of %d rows", rows, height));
+            }
+
+            return standard;
+        }
+
+        /**
+         * @return rows accepted so far.
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return standards that can still win.
+         */
+        public int getCandidates() {
+            return candidateCount;
+        }
+
+        private void addRow(int[] cells, int from) {
+            final int offset = (rows - 1) * width - from;
+
+            for (int c = 0; c < candidateCount; c++) {
+                final int i = candidates[c];
+                final int[] standardCells = library.getStandard(i).getCells();
+
+                switch (formula) {
+                    case WITH_SQUARE_ROOT:
+                        sums[i] = KERNELS.addSquaredDifferences(sums[i], cells, standardCells, offset, from, from + width);
+                        break;
+                    case WITH_MODULE:
+                        sums[i] = KERNELS.addAbsoluteDifferences(sums[i], cells, standardCells, offset, from, from + width);
+                        break;
+                    case WITH_COEFFICIENT:
+                        sums[i] = addWeightedSquaredDifferences(sums[i], cells, standardCells, metadata[i], offset, from);
+                        break;
+                    case WITH_MODULE_AND_FRACTION:
+                        sums[i] = KERNELS.addFractions(sums[i], cells, standardCells, offset, from, from + width);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
+                }
+            }
+        }
+
+        /**
+         * Weights are read at the standard position, which the kernel cannot offset apart from the input.
+         */
+        private double addWeightedSquaredDifferences(double sum, int[] cells, int[] standardCells, int[] weights,
+                                                     int offset, int from) {
+            for (int k = from; k < from + width; k++) {
+                final double difference = cells[k] - (double) standardCells[offset + k];
+                sum += weights[offset + k] * difference * difference;
+            }
+
+            return sum;
+        }
+
+        /**
+         * Keeps the standards whose lower bound does not exceed the best upper bound. A standard whose sum
+         * may still turn negative, and so become the worst by {@link Formula#WITH_COEFFICIENT}, sets no bound.
+         */
+        private void prune() {
+            double bestUpper = Double.POSITIVE_INFINITY;
+
+            for (int c = 0; c < candidateCount; c++) {
+                final int i = candidates[c];
+                final int bounds = i * (height + 1) + rows;
+
+                if (sums[i] + minRemaining[bounds] >= 0) {
+                    bestUpper = Math.min(bestUpper, sums[i] + maxRemaining[bounds]);
+                }
+            }
+
+            int kept = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                final int i = candidates[c];
+                final double lower = sums[i] + minRemaining[i * (height + 1) + rows];
+
+                if (!FormulaTerms.exceeds(lower, bestUpper)) {
+                    candidates[kept++] = i;
+                }
+            }
+
+            candidateCount = kept;
+        }
+
+        /**
+         * Picks the smallest sum among the candidates left, the later standard on equal sums.
+         */
+        private void commit() {
+            int best = -1;
+            double bestKey = Double.NaN;
+
+            for (int c = 0; c < candidateCount; c++) {
+                final int i = candidates[c];
+                final double key = sums[i] < 0 ? Double.NaN : sums[i];
+
+                if (best < 0 || Double.compare(key, bestKey) <= 0) {
+                    best = i;
+                    bestKey = key;
+                }
+            }
+
+            standard = library.getStandard(best).getStandard();
+
+            if (Metrics.ENABLED) {
+                COMMITTED_ROWS.record(rows);
+            }
+        }
+    }
+}
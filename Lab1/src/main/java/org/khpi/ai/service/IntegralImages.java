@@ -0,0 +1,79 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+
+import java.util.List;
+
+/**
+ * Summed-area tables of squared and absolute cell values for the {@link ShiftTolerantMatcher}.
+ * Entry (r, c) of a table holds the sum over the cells above and left of it, so the sum over any
+ * rectangle of a glyph is read from four entries. Tables of all glyphs lie back to back in two arrays.
+ */
+final class IntegralImages {
+    private final int stride;
+    private final int length;
+    private final long[] squares;
+    private final long[] absolutes;
+
+    private IntegralImages(int width, int height, int count) {
+        this.stride = width + 1;
+        this.length = (height + 1) * stride;
+        this.squares = new long[count * length];
+        this.absolutes = new long[count * length];
+    }
+
+    /**
+     * @param characters glyphs of the given dimensions.
+     */
+    static IntegralImages of(List<Character> characters, int width, int height) {
+        IntegralImages images = new IntegralImages(width, height, characters.size());
+
+        for (int i = 0; i < characters.size(); i++) {
+            images.fill(i, characters.get(i).getCells(), width, height);
+        }
+
+        return images;
+    }
+
+    static IntegralImages of(Character character) {
+        return of(List.of(character), character.getWidth(), character.getHeight());
+    }
+
+    private void fill(int index, int[] cells, int width, int height) {
+        final int table = index * length;
+
+        for (int r = 0; r < height; r++) {
+            long rowSquares = 0;
+            long rowAbsolutes = 0;
+
+            for (int c = 0; c < width; c++) {
+                long cell = cells[r * width + c];
+                rowSquares += cell * cell;
+                rowAbsolutes += Math.abs(cell);
+
+                final int entry = table + (r + 1) * stride + c + 1;
+                squares[entry] = squares[entry - stride] + rowSquares;
+                absolutes[entry] = absolutes[entry - stride] + rowAbsolutes;
+            }
+        }
+    }
+
+    /**
+     * @return sum of squared cells of the glyph in rows [top, bottom) and columns [left, right).
+     */
+    long squares(int index, int top, int bottom, int left, int right) {
+        return sum(squares, index * length, top, bottom, left, right);
+    }
+
+    /**
+     * @return sum of absolute cells of the glyph in rows [top, bottom) and columns [left, right).
+     */
+    long absolutes(int index, int top, int bottom, int left, int right) {
+        return sum(absolutes, index * length, top, bottom, left, right);
+    }
+
+    private long sum(long[] tables, int table, int top, int bottom, int left, int right) {
+        return tables[table + bottom * stride + right] - tables[table + top * stride + right]
+                - tables[table + bottom * stride + left] + tables[table + top * stride + left];
+    }
+}
@@ -0,0 +1,117 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+/**
+ * JSON Lines results without a header, one object per line:
+ * <pre>
+ * {"file":"a.csv","WITH_SQUARE_ROOT":"A",...,"SOKAL_AND_SNIF":"A"}
+ * {"record":"7","label":"K","error":"Input character have illegal dimension size."}
+ * </pre>
+ */
+class JsonResultEncoder implements ResultSink.Encoder {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final FormulaSelection formulas;
+    private final String sourceName;
+    private final boolean labelled;
+
+    JsonResultEncoder(FormulaSelection formulas, String sourceName, boolean labelled) {
+        this.formulas = formulas;
+        this.sourceName = sourceName;
+        this.labelled = labelled;
+    }
+
+    @Override
+    public void header(ResultSink.Output output) {
+        // JSON Lines have no header
+    }
+
+    @Override
+    public void result(ResultSink.Output output, String source, String label, FormulaResults results) {
+        key(output, source, label);
+
+        for (Formula formula : formulas.getFormulas()) {
+            field(output, formula.name(), results.getStandard(formula));
+        }
+
+        for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+            field(output, formula.name(), results.getStandard(formula));
+        }
+
+        output.putAscii("}\n");
+    }
+
+    @Override
+    public void error(ResultSink.Output output, String source, String label, String message) {
+        key(output, source, label);
+        output.putAscii(",\"error\":");
+        string(output, message);
+        output.putAscii("}\n");
+    }
+
+    private void key(ResultSink.Output output, String source, String label) {
+        output.putByte('{');
+        string(output, sourceName);
+        output.putByte(':');
+        string(output, source);
+
+        if (labelled) {
+            output.putAscii(",\"label\":");
+            string(output, label);
+        }
+    }
+
+    private static void field(ResultSink.Output output, String name, Standard standard) {
+        output.putAscii(",\"").putAscii(name).putAscii("\":");
+
+        if (standard == null) {
+            output.putAscii("null");
+        } else {
+            output.putByte('"').putAscii(standard.name()).putByte('"');
+        }
+    }
+
+    /**
+     * Writes a JSON string, escaping quotes, backslashes and control characters.
+     */
+    private static void string(ResultSink.Output output, String value) {
+        if (value == null) {
+            output.putAscii("null");
+            return;
+        }
+
+        output.putByte('"');
+
+        int i = 0;
+        while (i < value.length()) {
+            if (value.charAt(i) < 0x80) {
+                escape(output, value.charAt(i++));
+            } else {
+                // runs of other characters need no escaping and are encoded together, keeping surrogate pairs
+                int end = i + 1;
+                while (end < value.length() && value.charAt(end) >= 0x80) {
+                    end++;
+                }
+
+                output.putUtf8(value.substring(i, end));
+                i = end;
+            }
+        }
+
+        output.putByte('"');
+    }
+
+    private static void escape(ResultSink.Output output, char c) {
+        if (c == '"' || c == '\\') {
+            output.putByte('\\').putByte(c);
+        } else if (c < ' ') {
+            output.putAscii("\\u00").putByte(HEX_DIGITS[c >> 4]).putByte(HEX_DIGITS[c & 0xF]);
+        } else {
+            output.putByte(c);
+        }
+    }
+}
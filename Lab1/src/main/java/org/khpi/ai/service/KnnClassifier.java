@@ -0,0 +1,234 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.KnnResult;
+import org.khpi.ai.model.Label;
+import org.khpi.ai.model.ScoredLabel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies a character by voting of its k nearest templates of a {@link TemplateLibrary}
+ * or an {@link OffHeapTemplateStore}.
+ * The scan runs over the contiguous cells with the distance kernels, skips templates by the norm
+ * lower bounds and abandons a template once its partial sum exceeds the k-th nearest one,
+ * like {@link CharacterDeterminant} does for standards.
+ * <p>
+ * Every neighbour gives one vote to its label. Equal votes go to the label with the smaller summed
+ * distance of its neighbours, then to the label of the nearer neighbour.
+ */
+public class KnnClassifier {
+    private static final DistanceKernels KERNELS = DistanceKernels.load();
+    private static final Histogram SCORING_TIME = Metrics.histogram("scoring.knn", Metrics.NANOSECONDS);
+
+    /**
+     * @param k number of voting neighbours, fewer vote when the library has fewer templates.
+     * @param formula any formula but {@link CharacterDeterminant.Formula#WITH_COEFFICIENT},
+     *                templates have no metadata.
+     */
+    public KnnResult classify(Character input, TemplateLibrary library, int k, CharacterDeterminant.Formula formula) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+
+        if (formula == CharacterDeterminant.Formula.WITH_COEFFICIENT) {
+            throw new IllegalArgumentException(String.format("Formula %s does not supported for templates", formula));
+        }
+
+        if (library.size() > 0 && !library.accepts(input)) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
+        final int[] inputData = input.getCells();
+        final int[] inputTerms = formula == CharacterDeterminant.Formula.WITH_ARCCOS
+                ? FormulaTerms.arcCosInputTerms(inputData)
+                : null;
+        final double inputNorm = PreparedLibrary.norm(input);
+        final long inputSum = PreparedLibrary.absoluteSum(input);
+        final int[] cells = library.getCells();
+        TopStandards top = new TopStandards(k, library.size());
+        int pruned = 0;
+        int rejected = 0;
+
+        for (int i = 0; i < library.size(); i++) {
+            final double bound = top.bound();
+
+            if (FormulaTerms.exceeds(FormulaTerms.lowerBound(formula, inputNorm, inputSum, library.getNorm(i),
+                    library.getAbsoluteSum(i)), bound)) {
+                pruned++;
+                continue;
+            }
+
+            final double sum = distance(formula, inputData, inputTerms, cells, library.getOffset(i), input.getWidth(), bound);
+
+            if (sum > bound) {
+                rejected++;
+            }
+
+            top.offer(sum, i);
+        }
+
+        if (top.size() == 0) {
+            throw new IllegalStateException("Cannot find min value");
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.recordScoring(SCORING_TIME, "KNN_" + formula, start, library.size(), pruned, rejected);
+        }
+
+        top.sort();
+        List<ScoredLabel> neighbours = new ArrayList<>(top.size());
+
+        for (int i = 0; i < top.size(); i++) {
+            final double key = top.getKey(i);
+            neighbours.add(new ScoredLabel(library.getLabel(top.getIndex(i)),
+                    formula == CharacterDeterminant.Formula.WITH_SQUARE_ROOT ? Math.sqrt(key) : key));
+        }
+
+        return vote(neighbours);
+    }
+
+    /**
+     * Same scan over an {@link OffHeapTemplateStore}: bounds are read from the records, the cells of a template
+     * are decoded from its direct buffer only when it is scored.
+     *
+     * @param k number of voting neighbours, fewer vote when the store has fewer templates.
+     * @param formula any formula, {@link CharacterDeterminant.Formula#WITH_COEFFICIENT} needs the weights of
+     *                every label.
+     */
+    public KnnResult classify(Character input, OffHeapTemplateStore store, int k, CharacterDeterminant.Formula formula) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+
+        if (store.size() > 0 && !store.accepts(input)) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
+        final int[] inputData = input.getCells();
+        final int width = input.getWidth();
+        final int[] inputTerms = formula == CharacterDeterminant.Formula.WITH_ARCCOS
+                ? FormulaTerms.arcCosInputTerms(inputData)
+                : null;
+        final double inputNorm = PreparedLibrary.norm(input);
+        final long inputSum = PreparedLibrary.absoluteSum(input);
+        final OffHeapTemplateStore.Reader reader = store.reader();
+        TopStandards top = new TopStandards(k, store.size());
+        int pruned = 0;
+        int rejected = 0;
+
+        for (int i = 0; i < store.size(); i++) {
+            final double bound = top.bound();
+
+            if (FormulaTerms.exceeds(FormulaTerms.lowerBound(formula, inputNorm, inputSum,
+                    Math.sqrt(reader.squares(i)), reader.absoluteSum(i)), bound)) {
+                pruned++;
+                continue;
+            }
+
+            double sum = formula == CharacterDeterminant.Formula.WITH_COEFFICIENT
+                    ? weightedDistance(inputData, reader.cells(i), reader.weights(reader.labelId(i)), width, bound)
+                    : distance(formula, inputData, inputTerms, reader.cells(i), 0, width, bound);
+
+            if (sum > bound) {
+                rejected++;
+            }
+
+            if (sum < 0) {
+                sum = Double.NaN; // root of negative sum, ordered after every number as for standards
+            }
+
+            top.offer(sum, i);
+        }
+
+        if (top.size() == 0) {
+            throw new IllegalStateException("Cannot find min value");
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.recordScoring(SCORING_TIME, "KNN_" + formula, start, store.size(), pruned, rejected);
+        }
+
+        top.sort();
+        final boolean rooted = formula == CharacterDeterminant.Formula.WITH_SQUARE_ROOT
+                || formula == CharacterDeterminant.Formula.WITH_COEFFICIENT;
+        List<ScoredLabel> neighbours = new ArrayList<>(top.size());
+
+        for (int i = 0; i < top.size(); i++) {
+            final double key = top.getKey(i);
+            neighbours.add(new ScoredLabel(store.getLabel(top.getIndex(i)), rooted ? Math.sqrt(key) : key));
+        }
+
+        return vote(neighbours);
+    }
+
+    private static KnnResult vote(List<ScoredLabel> neighbours) {
+        Map<Label, Integer> votes = new LinkedHashMap<>();
+        Map<Label, Double> distances = new LinkedHashMap<>();
+
+        for (ScoredLabel neighbour : neighbours) {
+            votes.merge(neighbour.getLabel(), 1, Integer::sum);
+            distances.merge(neighbour.getLabel(), neighbour.getScore(), Double::sum);
+        }
+
+        List<Label> labels = new ArrayList<>(votes.keySet());
+        labels.sort(Comparator.<Label>comparingInt(votes::get).reversed()
+                .thenComparing(distances::get, Double::compare));
+
+        Map<Label, Integer> orderedVotes = new LinkedHashMap<>();
+        for (Label label : labels) {
+            orderedVotes.put(label, votes.get(label));
+        }
+
+        return new KnnResult(labels.get(0), orderedVotes, neighbours);
+    }
+
+    /**
+     * @return sum of the formula without the final root, or a partial sum greater than the bound,
+     * which is checked after every row.
+     */
+    private static double distance(CharacterDeterminant.Formula formula, int[] input, int[] inputTerms, int[] cells,
+                                   int offset, int width, double bound) {
+        if (formula == CharacterDeterminant.Formula.WITH_ARCCOS) {
+            return FormulaTerms.arcCos(input, inputTerms, cells, offset);
+        }
+
+        double rawSum = 0;
+
+        for (int rowStart = 0; rowStart < input.length && rawSum <= bound; rowStart += width) {
+            switch (formula) {
+                case WITH_SQUARE_ROOT:
+                    rawSum = KERNELS.addSquaredDifferences(rawSum, input, cells, offset, rowStart, rowStart + width);
+                    break;
+                case WITH_MODULE:
+                    rawSum = KERNELS.addAbsoluteDifferences(rawSum, input, cells, offset, rowStart, rowStart + width);
+                    break;
+                case WITH_MODULE_AND_FRACTION:
+                    rawSum = KERNELS.addFractions(rawSum, input, cells, offset, rowStart, rowStart + width);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
+            }
+        }
+
+        return rawSum;
+    }
+
+    /**
+     * @param bound sum above which scan is abandoned, ignored when some weights are negative.
+     */
+    private static double weightedDistance(int[] input, int[] cells, Character weights, int width, double bound) {
+        final int[] cellWeights = weights.getCells();
+        final double limit = weights.isNonNegative() ? bound : Double.POSITIVE_INFINITY;
+        double rawSum = 0;
+
+        for (int rowStart = 0; rowStart < input.length && rawSum <= limit; rowStart += width) {
+            rawSum = KERNELS.addWeightedSquaredDifferences(rawSum, input, cells, 0, cellWeights, rowStart,
+                    rowStart + width);
+        }
+
+        return rawSum;
+    }
+}
@@ -0,0 +1,85 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Label;
+import org.khpi.ai.model.Standard;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns label names into {@link Label}s with dense ids in registration order. Lookups do not lock,
+ * registering a new name does.
+ */
+public class LabelRegistry {
+    private final Map<String, Label> labelsByName = new ConcurrentHashMap<>();
+    private volatile Label[] labelsById = new Label[0];
+
+    /**
+     * @return label of the name, registered with the next id on the first call.
+     * @throws IllegalArgumentException when the name is blank.
+     */
+    public Label register(String name) {
+        Label label = labelsByName.get(name);
+
+        return label != null
+                ? label
+                : add(name);
+    }
+
+    public Label register(Standard standard) {
+        return register(standard.name());
+    }
+
+    /**
+     * @return label of the name, or null when it is not registered.
+     */
+    public Label find(String name) {
+        return labelsByName.get(name);
+    }
+
+    /**
+     * @throws IllegalArgumentException when no label has the id.
+     */
+    public Label get(int id) {
+        Label[] labels = labelsById;
+
+        if (id < 0 || id >= labels.length) {
+            throw new IllegalArgumentException(String.format("Unknown label id %d", id));
+        }
+
+        return labels[id];
+    }
+
+    public int size() {
+        return labelsById.length;
+    }
+
+    /**
+     * @return registered labels in id order.
+     */
+    public List<Label> getLabels() {
+        return List.of(labelsById);
+    }
+
+    private synchronized Label add(String name) {
+        Label label = labelsByName.get(name);
+        if (label != null) {
+            return label;
+        }
+
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Label name must not be blank");
+        }
+
+        Label[] labels = Arrays.copyOf(labelsById, labelsById.length + 1);
+        label = new Label(labelsById.length, name);
+        labels[label.getId()] = label;
+
+        labelsById = labels;
+        labelsByName.put(name, label);
+
+        return label;
+    }
+}
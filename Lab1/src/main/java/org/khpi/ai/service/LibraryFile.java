@@ -0,0 +1,378 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Label;
+import org.khpi.ai.model.Standard;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled standards library: one little endian file with standards and metadata.
+ * <pre>
+ * int     magic "CHLB"
+ * int     version
+ * int     labels count
+ * int     standards count
+ * int     metadata count
+ * int     width
+ * int     height
+ * labels count × (short length, UTF-8 label)
+ * padding to 4 bytes
+ * (standards + metadata) count × int label index
+ * (standards + metadata) count × width × height int cells, row-major
+ * </pre>
+ * Reading maps the file and copies cells in bulk, nothing is parsed. {@link #readTemplates} copies all cells into
+ * the single array of a {@link TemplateLibrary}, so no object is created per template and large libraries should be
+ * read that way. {@link #read} copies every standard into its own on-heap {@link Character}, as the standard formulas
+ * scan them, so its load time stays linear in the number of standards.
+ * Header fields are checked against the file size before anything is allocated. A template library is stored
+ * as standards with any labels and without metadata.
+ */
+public class LibraryFile {
+    static final int MAGIC = 0x424C4843;
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 7 * Integer.BYTES;
+    private static final long MAX_MAPPED_REGION = 1L << 30;
+    /**
+     * Bytes of standards copied out of the mapping at once before they are split into characters.
+     */
+    private static final long REGION_BUFFER = 1L << 24;
+
+    public void write(Path file, List<Character> standards, List<Character> metadata) throws IOException {
+        if (standards.isEmpty()) {
+            throw new IllegalArgumentException("Cannot compile empty standards library");
+        }
+
+        final Character first = standards.get(0);
+        List<Character> characters = new ArrayList<>(standards);
+        characters.addAll(metadata);
+
+        Map<Standard, Integer> labelIndexes = new LinkedHashMap<>();
+        for (Character character : characters) {
+            if (!character.hasSameDimensions(first)) {
+                throw new IllegalArgumentException(
+                        String.format("Character %s has illegal dimension size.", character.getStandard()));
+            }
+
+            labelIndexes.putIfAbsent(character.getStandard(), labelIndexes.size());
+        }
+
+        if (!metadata.isEmpty()) {
+            for (Character standard : standards) {
+                if (!metadata.contains(standard)) {
+                    throw new IllegalArgumentException(String.format("No metadata for standard %s", standard.getStandard()));
+                }
+            }
+        }
+
+        List<String> labels = new ArrayList<>();
+        for (Standard label : labelIndexes.keySet()) {
+            labels.add(label.name());
+        }
+
+        int[] indexes = new int[characters.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = labelIndexes.get(characters.get(i).getStandard());
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long cellsOffset = writeHeader(channel, labels, indexes, standards.size(), metadata.size(),
+                    first.getWidth(), first.getHeight());
+
+            writeCells(channel, cellsOffset, (long) first.getSize() * Integer.BYTES, characters);
+        }
+    }
+
+    /**
+     * Writes templates as standards without metadata, so any number of templates per label and any
+     * label names are stored in the same format.
+     */
+    public void writeTemplates(Path file, TemplateLibrary library) throws IOException {
+        if (library.size() == 0) {
+            throw new IllegalArgumentException("Cannot compile empty template library");
+        }
+
+        List<String> labels = new ArrayList<>();
+        Map<Label, Integer> labelIndexes = new HashMap<>();
+        for (Label label : library.getLabels()) {
+            labelIndexes.put(label, labels.size());
+            labels.add(label.getName());
+        }
+
+        int[] indexes = new int[library.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = labelIndexes.get(library.getLabel(i));
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long cellsOffset = writeHeader(channel, labels, indexes, library.size(), 0,
+                    library.getWidth(), library.getHeight());
+            final int[] cells = library.getCells();
+            final int cellsPerRegion = (int) (MAX_MAPPED_REGION / Integer.BYTES);
+
+            for (int from = 0; from < cells.length; from += cellsPerRegion) {
+                int length = Math.min(cells.length - from, cellsPerRegion);
+                map(channel, FileChannel.MapMode.READ_WRITE, cellsOffset + (long) from * Integer.BYTES,
+                        (long) length * Integer.BYTES).asIntBuffer().put(cells, from, length);
+            }
+        }
+    }
+
+    /**
+     * @return offset of the cells.
+     */
+    private long writeHeader(FileChannel channel, List<String> labelNames, int[] labelIndexes, int standardsCount,
+                             int metadataCount, int width, int height) throws IOException {
+        List<byte[]> labels = new ArrayList<>();
+        long labelsSize = 0;
+        for (String label : labelNames) {
+            byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format("Label %s is too long", label));
+            }
+
+            labels.add(bytes);
+            labelsSize += Short.BYTES + bytes.length;
+        }
+
+        final long indexesOffset = align(HEADER_SIZE + labelsSize);
+        final long cellsOffset = indexesOffset + (long) labelIndexes.length * Integer.BYTES;
+
+        MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, indexesOffset);
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(labels.size())
+                .putInt(standardsCount)
+                .putInt(metadataCount)
+                .putInt(width)
+                .putInt(height);
+
+        for (byte[] label : labels) {
+            header.putShort((short) label.length).put(label);
+        }
+
+        map(channel, FileChannel.MapMode.READ_WRITE, indexesOffset, cellsOffset - indexesOffset)
+                .asIntBuffer()
+                .put(labelIndexes);
+
+        return cellsOffset;
+    }
+
+    /**
+     * Adds standards of the file to {@code standards} and metadata to {@code metadata}.
+     *
+     * @return number of standards read.
+     */
+    public int read(Path file, List<Character> standards, List<Character> metadata) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(file, channel);
+            Standard[] labels = new Standard[header.labels.length];
+
+            for (int i = 0; i < labels.length; i++) {
+                try {
+                    labels[i] = Standard.valueOf(header.labels[i]);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format("Unknown standard label: %s", header.labels[i]), e);
+                }
+            }
+
+            readCells(channel, header.cellsOffset, header.width, header.height, labels, header.labelIndexes,
+                    header.standardsCount, standards, metadata);
+
+            return header.standardsCount;
+        }
+    }
+
+    /**
+     * Reads standards of the file as templates with labels of the registry, metadata is skipped.
+     * Cells are copied in bulk into the contiguous library.
+     */
+    public TemplateLibrary readTemplates(Path file, LabelRegistry registry) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(file, channel);
+            final long cellsCount = (long) header.standardsCount * header.width * header.height;
+
+            if (cellsCount > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        String.format("%d templates of file %s do not fit one library", header.standardsCount, file));
+            }
+
+            Label[] templateLabels = new Label[header.standardsCount];
+            for (int i = 0; i < templateLabels.length; i++) {
+                templateLabels[i] = registry.register(header.labels[header.labelIndexes[i]]);
+            }
+
+            int[] cells = new int[(int) cellsCount];
+            final int cellsPerRegion = (int) (MAX_MAPPED_REGION / Integer.BYTES);
+
+            for (int from = 0; from < cells.length; from += cellsPerRegion) {
+                int length = Math.min(cells.length - from, cellsPerRegion);
+                map(channel, FileChannel.MapMode.READ_ONLY, header.cellsOffset + (long) from * Integer.BYTES,
+                        (long) length * Integer.BYTES).asIntBuffer().get(cells, from, length);
+            }
+
+            return new TemplateLibrary(templateLabels, cells, header.width, header.height);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the first header field that does not fit the file.
+     */
+    private Header readHeader(Path file, FileChannel channel) throws IOException {
+        final long size = channel.size();
+
+        if (size < HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format("File %s is not a standards library", file));
+        }
+
+        MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException(String.format("File %s is not a standards library", file));
+        }
+
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported standards library version %d", version));
+        }
+
+        final int labelsCount = buffer.getInt();
+        Header header = new Header();
+        header.standardsCount = buffer.getInt();
+        header.metadataCount = buffer.getInt();
+        header.width = buffer.getInt();
+        header.height = buffer.getInt();
+
+        checkField(file, "labels count", labelsCount, labelsCount >= 0
+                && labelsCount <= (size - HEADER_SIZE) / Short.BYTES);
+        checkField(file, "width", header.width, header.width > 0);
+        checkField(file, "height", header.height, header.height > 0
+                && (long) header.width * header.height <= Integer.MAX_VALUE);
+
+        final long templateBytes = (long) header.width * header.height * Integer.BYTES;
+        final long maxCount = Math.min(Integer.MAX_VALUE, (size - HEADER_SIZE) / (Integer.BYTES + templateBytes));
+        checkField(file, "standards count", header.standardsCount, header.standardsCount >= 0
+                && header.standardsCount <= maxCount);
+        checkField(file, "metadata count", header.metadataCount, header.metadataCount >= 0
+                && header.metadataCount <= maxCount - header.standardsCount);
+
+        final int count = header.standardsCount + header.metadataCount;
+        header.labels = new String[labelsCount];
+        final long indexesOffset = align(readLabels(file, channel, header.labels));
+        header.cellsOffset = indexesOffset + (long) count * Integer.BYTES;
+
+        if (header.cellsOffset + count * templateBytes > size) {
+            throw new IllegalArgumentException(String.format("Standards library %s is truncated", file));
+        }
+
+        header.labelIndexes = new int[count];
+        map(channel, FileChannel.MapMode.READ_ONLY, indexesOffset, header.cellsOffset - indexesOffset)
+                .asIntBuffer()
+                .get(header.labelIndexes);
+
+        for (int i = 0; i < count; i++) {
+            checkField(file, "label index of template " + i, header.labelIndexes[i],
+                    header.labelIndexes[i] >= 0 && header.labelIndexes[i] < labelsCount);
+        }
+
+        return header;
+    }
+
+    private long readLabels(Path file, FileChannel channel, String[] labels) throws IOException {
+        MappedByteBuffer region = map(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                Math.min(MAX_MAPPED_REGION, channel.size() - HEADER_SIZE));
+        byte[] label = new byte[Short.MAX_VALUE];
+
+        for (int i = 0; i < labels.length; i++) {
+            checkField(file, "labels count", labels.length, region.remaining() >= Short.BYTES);
+            int length = region.getShort();
+            checkField(file, "length of label " + i, length, length >= 0 && length <= region.remaining());
+            region.get(label, 0, length);
+            labels[i] = new String(label, 0, length, StandardCharsets.UTF_8);
+        }
+
+        return HEADER_SIZE + region.position();
+    }
+
+    private void readCells(FileChannel channel, long offset, int width, int height, Standard[] labels,
+                           int[] labelIndexes, int standardsCount, List<Character> standards,
+                           List<Character> metadata) throws IOException {
+        final int templateSize = width * height;
+        final long templateBytes = (long) templateSize * Integer.BYTES;
+        final int templatesPerRegion = (int) Math.max(1, Math.min(labelIndexes.length, REGION_BUFFER / templateBytes));
+        int[] cells = new int[templatesPerRegion * templateSize];
+
+        for (int from = 0; from < labelIndexes.length; from += templatesPerRegion) {
+            int to = Math.min(labelIndexes.length, from + templatesPerRegion);
+            map(channel, FileChannel.MapMode.READ_ONLY, offset + from * templateBytes, (to - from) * templateBytes)
+                    .asIntBuffer()
+                    .get(cells, 0, (to - from) * templateSize);
+
+            for (int i = from; i < to; i++) {
+                Character character = Character.of(cells, (i - from) * templateSize, width, height,
+                        labels[labelIndexes[i]]);
+                (i < standardsCount ? standards : metadata).add(character);
+            }
+        }
+    }
+
+    private void writeCells(FileChannel channel, long offset, long templateBytes, List<Character> characters)
+            throws IOException {
+        final int templatesPerRegion = (int) Math.max(1, MAX_MAPPED_REGION / templateBytes);
+
+        for (int from = 0; from < characters.size(); from += templatesPerRegion) {
+            int to = Math.min(characters.size(), from + templatesPerRegion);
+            IntBuffer region = map(channel, FileChannel.MapMode.READ_WRITE, offset + from * templateBytes,
+                    (to - from) * templateBytes).asIntBuffer();
+
+            for (int i = from; i < to; i++) {
+                region.put(characters.get(i).getCells());
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the field when its value does not fit the file.
+     */
+    private static void checkField(Path file, String field, long value, boolean valid) {
+        if (!valid) {
+            throw new IllegalArgumentException(
+                    String.format("Corrupt standards library %s: illegal %s: %d", file, field, value));
+        }
+    }
+
+    private static class Header {
+        private String[] labels;
+        private int standardsCount;
+        private int metadataCount;
+        private int width;
+        private int height;
+        private int[] labelIndexes;
+        private long cellsOffset;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+}
@@ -0,0 +1,118 @@
+package org.khpi.ai.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the sources of a {@link StandardsLoader} and reloads the library in a background thread
+ * when they change. Changes are collected until the files stay quiet for {@code QUIET_PERIOD_MILLIS},
+ * so copying a set of templates causes a single reload. A failed reload keeps the previous library and is
+ * retried on the next change. Reloading fails on a file that is still empty or cannot be read, on a malformed file
+ * and on dimensions that do not match, so a half written file is not published as long as it is in one of these
+ * states.
+ */
+public class LibraryReloader implements Closeable {
+    private static final long QUIET_PERIOD_MILLIS = 200;
+
+    private final StandardsLoader loader;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedFiles = new HashMap<>();
+    private final Thread thread;
+
+    public interface Listener {
+        void reloaded(PreparedLibrary library);
+
+        void failed(Exception e);
+    }
+
+    /**
+     * Starts watching, directories are watched for any file, a library file for itself only.
+     */
+    public LibraryReloader(StandardsLoader loader, Listener listener) throws IOException {
+        this.loader = loader;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            for (Path source : loader.getSources()) {
+                Path absolute = source.toAbsolutePath().normalize();
+                boolean directory = Files.isDirectory(absolute);
+                WatchKey key = (directory ? absolute : absolute.getParent()).register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+
+                watchedFiles.put(key, directory ? null : absolute.getFileName());
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        thread = new Thread(this::watch, "library-reloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (!isSourceChanged(watchService.take())) {
+                    continue;
+                }
+
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    isSourceChanged(key);
+                }
+
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void reload() {
+        try {
+            listener.reloaded(loader.reload());
+        } catch (IOException | RuntimeException e) {
+            listener.failed(e);
+        }
+    }
+
+    /**
+     * Consumes events of the key and resets it.
+     */
+    private boolean isSourceChanged(WatchKey key) {
+        final Path watchedFile = watchedFiles.get(key);
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || watchedFile == null
+                    || watchedFile.equals(event.context());
+        }
+
+        key.reset();
+        return changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,171 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Part of the standards library owned by one worker of a sharded deployment. The standards of a shard
+ * keep their order and are prepared as a library of their own, paired with the metadata of the whole library,
+ * while their results are reported under the indexes of the whole library.
+ */
+public class LibraryShard {
+    private final PreparedLibrary library;
+    private final int[] globalIndexes;
+    private final int shard;
+    private final int shards;
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    private LibraryShard(PreparedLibrary library, int[] globalIndexes, int shard, int shards) {
+        this.library = library;
+        this.globalIndexes = globalIndexes;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    /**
+     * How standards are assigned to shards.
+     */
+    public enum Assignment {
+        /**
+         * Contiguous ranges of standards, e.g. whole letters of a library sorted by label.
+         */
+        RANGE,
+        /**
+         * Every n-th standard, so every shard gets a similar mix of labels.
+         */
+        ROUND_ROBIN;
+
+        /**
+         * @param name {@code range} or {@code round-robin}, case insensitive.
+         */
+        public static Assignment parse(String name) {
+            try {
+                return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Unknown shard assignment: %s", name), e);
+            }
+        }
+
+        boolean owns(int index, int size, int shard, int shards) {
+            if (this == ROUND_ROBIN) {
+                return index % shards == shard;
+            }
+
+            return (int) ((long) index * shards / size) == shard;
+        }
+    }
+
+    /**
+     * @return the whole library as a single shard.
+     */
+    public static LibraryShard whole(PreparedLibrary library) {
+        return new LibraryShard(library, null, 0, 1);
+    }
+
+    /**
+     * @param shard number of the shard, from 0 to {@code shards - 1}.
+     * @throws IllegalArgumentException when the shard number is out of range or the library has fewer
+     *                                  standards than shards, so some shard would be empty.
+     */
+    public static LibraryShard of(PreparedLibrary library, Assignment assignment, int shard, int shards) {
+        return of(library.getStandards(), library.getMetadataList(), library.getVersion(), assignment, shard, shards);
+    }
+
+    /**
+     * Prepares the shard straight from the standards of the whole library, so norms and coarse descriptors
+     * are computed for the owned standards only.
+     *
+     * @param version version of the whole library, kept by the library of the shard.
+     * @throws IllegalArgumentException when the shard number is out of range, the library has fewer
+     *                                  standards than shards or standards and metadata have different dimensions.
+     */
+    public static LibraryShard of(List<Character> library, List<Character> metadata, long version,
+                                  Assignment assignment, int shard, int shards) {
+        if (shards <= 0 || shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException(String.format("Illegal shard %d of %d", shard, shards));
+        }
+
+        if (library.size() < shards) {
+            throw new IllegalArgumentException(
+                    String.format("Cannot split %d standards into %d shards", library.size(), shards));
+        }
+
+        // the whole library is checked, so every shard accepts the same inputs
+        PreparedLibrary.checkDimensions(library, metadata);
+        List<Character> standards = new ArrayList<>();
+        int[] globalIndexes = new int[library.size() / shards + 1];
+
+        for (int i = 0; i < library.size(); i++) {
+            if (assignment.owns(i, library.size(), shard, shards)) {
+                globalIndexes[standards.size()] = i;
+                standards.add(library.get(i));
+            }
+        }
+
+        return new LibraryShard(PreparedLibrary.prepare(standards, metadata, version),
+                Arrays.copyOf(globalIndexes, standards.size()), shard, shards);
+    }
+
+    public PreparedLibrary getLibrary() {
+        return library;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public int size() {
+        return library.size();
+    }
+
+    /**
+     * @return index in the whole library of the standard with the given index in this shard.
+     */
+    public int getGlobalIndex(int index) {
+        return globalIndexes == null ? index : globalIndexes[index];
+    }
+
+    /**
+     * @param k number of results, a shard never returns more than its standards, so larger values are clamped.
+     * @return k best standards of this shard for every selected formula.
+     * @throws IllegalArgumentException when k is not positive.
+     */
+    public TopEntries top(Character input, FormulaSelection formulas, int k) {
+        TopEntries entries = new TopEntries(Math.min(k, library.size()));
+
+        for (Formula formula : formulas.getFormulas()) {
+            TopStandards top = determinant.top(input, library, k, formula);
+
+            for (int i = 0; i < top.size(); i++) {
+                int index = top.getIndex(i);
+                entries.offer(formula, top.getKey(i), getGlobalIndex(index), library.getStandard(index).getStandard());
+            }
+        }
+
+        for (QualitativeFormula formula : formulas.getQualitativeFormulas()) {
+            TopStandards top = determinant.top(input, library, k, formula);
+
+            for (int i = 0; i < top.size(); i++) {
+                int index = top.getIndex(i);
+                entries.offer(formula, top.getKey(i), getGlobalIndex(index), library.getStandard(index).getStandard());
+            }
+        }
+
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("shard %d of %d with %d standards", shard, shards, library.size());
+    }
+}
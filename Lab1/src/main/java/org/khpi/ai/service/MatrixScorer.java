@@ -0,0 +1,329 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.ScoreMatrix;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Scores many inputs against a whole library at once, e.g. all glyphs of a page. Inputs and standards are
+ * packed into flat arrays and scored in tiles of {@code ROW_TILE} inputs × {@code STANDARD_TILE} standards
+ * × {@code CELL_TILE} cells, so a tile of standards stays in cache while every input of the row tile is
+ * compared with it, instead of the library streaming through cache once per input. Row tiles run in parallel.
+ * <p>
+ * The squared Euclidean distance is expanded into ‖x‖² + ‖s‖² − 2x·s with exact integer dot products. The other
+ * sums add the cells of every pair in ascending order, so scores and nearest standards, the later one on a tie,
+ * are the same as from {@link CharacterDeterminant}.
+ */
+public class MatrixScorer {
+    private static final int ROW_TILE = 8;
+    private static final int STANDARD_TILE = 64;
+    private static final int CELL_TILE = 256;
+
+    private final int parallelism;
+
+    public MatrixScorer(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format("Parallelism must be positive, got %d", parallelism));
+        }
+
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return scores of every input against every standard, distances as in {@link CharacterDeterminant#rank},
+     * and the nearest standard of every input.
+     */
+    public ScoreMatrix score(List<Character> inputs, PreparedLibrary library, Formula formula)
+            throws InterruptedException {
+        if ((long) inputs.size() * library.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Matrix of %d inputs and %d standards is too large",
+                    inputs.size(), library.size()));
+        }
+
+        return compute(inputs, library, formula, new double[inputs.size() * library.size()]);
+    }
+
+    /**
+     * Same as {@link #score} without keeping the matrix, for libraries too large to keep every score.
+     */
+    public ScoreMatrix nearest(List<Character> inputs, PreparedLibrary library, Formula formula)
+            throws InterruptedException {
+        return compute(inputs, library, formula, null);
+    }
+
+    private ScoreMatrix compute(List<Character> inputs, PreparedLibrary library, Formula formula, double[] scores)
+            throws InterruptedException {
+        if (library.size() == 0) {
+            throw new IllegalStateException("Cannot find min value");
+        }
+
+        for (Character input : inputs) {
+            boolean accepted = formula == Formula.WITH_COEFFICIENT
+                    ? library.acceptsWithMetadata(input)
+                    : library.accepts(input);
+
+            if (!accepted) {
+                throw new IllegalArgumentException("Input character have illegal dimension size.");
+            }
+        }
+
+        Tiles tiles = new Tiles(inputs, library, formula, scores);
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int row = 0; row < inputs.size(); row += ROW_TILE) {
+            final int from = row;
+            tasks.add(() -> {
+                tiles.scoreRows(from, Math.min(inputs.size(), from + ROW_TILE));
+                return null;
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<Void> task : pool.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Standard[] nearest = new Standard[inputs.size()];
+        for (int i = 0; i < nearest.length; i++) {
+            nearest[i] = library.getStandard(tiles.nearestIndexes[i]).getStandard();
+        }
+
+        return new ScoreMatrix(inputs.size(), library.size(), scores, tiles.nearestIndexes, nearest);
+    }
+
+    /**
+     * Packed operands of one computation. Standards, and their weights for {@link Formula#WITH_COEFFICIENT},
+     * are packed as panels of {@code STANDARD_TILE} standards, cell-major inside a panel and zero padded,
+     * so the innermost loop runs over the independent sums of a panel's standards and is vectorized by the JIT.
+     * Panels hold ints for the integer dot products and doubles otherwise, which spares a conversion per term.
+     * Every row tile writes its own rows only.
+     */
+    private static final class Tiles {
+        private final Formula formula;
+        private final int size;
+        private final int inputCount;
+        private final int standardCount;
+        private final int[] inputs;
+        private final int[] panels;
+        private final double[] doublePanels;
+        private final double[] weightPanels;
+        private final long[] inputSquares;
+        private final long[] standardSquares;
+        private final double[] scores;
+        private final int[] nearestIndexes;
+
+        private Tiles(List<Character> inputList, PreparedLibrary library, Formula formula, double[] scores) {
+            this.formula = formula;
+            this.size = library.getWidth() * library.getHeight();
+            this.inputCount = inputList.size();
+            this.standardCount = library.size();
+            this.inputs = new int[Math.multiplyExact(inputCount, size)];
+            this.panels = formula == Formula.WITH_SQUARE_ROOT ? panels(library::getStandard) : null;
+            this.doublePanels = formula == Formula.WITH_SQUARE_ROOT ? null : toDoubles(panels(library::getStandard));
+            this.weightPanels = formula == Formula.WITH_COEFFICIENT ? toDoubles(panels(library::getMetadata)) : null;
+            this.inputSquares = formula == Formula.WITH_SQUARE_ROOT ? new long[inputCount] : null;
+            this.standardSquares = formula == Formula.WITH_SQUARE_ROOT ? new long[standardCount] : null;
+            this.scores = scores;
+            this.nearestIndexes = new int[inputCount];
+
+            for (int i = 0; i < inputCount; i++) {
+                System.arraycopy(inputList.get(i).getCells(), 0, inputs, i * size, size);
+            }
+
+            if (formula == Formula.WITH_SQUARE_ROOT) {
+                for (int i = 0; i < inputCount; i++) {
+                    inputSquares[i] = squares(inputList.get(i).getCells());
+                }
+                for (int j = 0; j < standardCount; j++) {
+                    standardSquares[j] = squares(library.getStandard(j).getCells());
+                }
+            }
+        }
+
+        private int[] panels(IntFunction<Character> characters) {
+            final int panelCount = (standardCount + STANDARD_TILE - 1) / STANDARD_TILE;
+            int[] packed = new int[Math.multiplyExact(panelCount * STANDARD_TILE, size)];
+
+            for (int j = 0; j < standardCount; j++) {
+                final int[] cells = characters.apply(j).getCells();
+                final int offset = j / STANDARD_TILE * STANDARD_TILE * size + j % STANDARD_TILE;
+
+                for (int k = 0; k < size; k++) {
+                    packed[offset + k * STANDARD_TILE] = cells[k];
+                }
+            }
+
+            return packed;
+        }
+
+        private static double[] toDoubles(int[] values) {
+            double[] doubles = new double[values.length];
+
+            for (int k = 0; k < values.length; k++) {
+                doubles[k] = values[k];
+            }
+
+            return doubles;
+        }
+
+        private void scoreRows(int rowStart, int rowEnd) {
+            double[] sums = new double[ROW_TILE * STANDARD_TILE];
+            long[] dots = new long[ROW_TILE * STANDARD_TILE];
+            double[] nearestKeys = new double[ROW_TILE];
+
+            for (int columnStart = 0; columnStart < standardCount; columnStart += STANDARD_TILE) {
+                final int columnEnd = Math.min(standardCount, columnStart + STANDARD_TILE);
+                final int panel = columnStart * size;
+                Arrays.fill(sums, 0);
+                Arrays.fill(dots, 0);
+
+                for (int cellStart = 0; cellStart < size; cellStart += CELL_TILE) {
+                    final int cellEnd = Math.min(size, cellStart + CELL_TILE);
+
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        addCells((i - rowStart) * STANDARD_TILE, i * size, panel, cellStart, cellEnd, sums, dots);
+                    }
+                }
+
+                for (int i = rowStart; i < rowEnd; i++) {
+                    final int row = i - rowStart;
+
+                    for (int j = columnStart; j < columnEnd; j++) {
+                        final int pair = row * STANDARD_TILE + (j - columnStart);
+                        final double key = key(i, j, sums[pair], dots[pair]);
+
+                        if (scores != null) {
+                            scores[i * standardCount + j] = score(key);
+                        }
+
+                        if (j == 0 || Double.compare(key, nearestKeys[row]) <= 0) {
+                            nearestKeys[row] = key;
+                            nearestIndexes[i] = j;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds cells {@code from} to {@code to} of one input to its sums with every standard of the panel,
+         * cell by cell, so each sum gets its terms in ascending cell order.
+         */
+        private void addCells(int row, int input, int panel, int from, int to, double[] sums, long[] dots) {
+            final int[] inputs = this.inputs;
+            final double[] panels = this.doublePanels;
+
+            switch (formula) {
+                case WITH_SQUARE_ROOT:
+                    final int[] integerPanels = this.panels;
+
+                    for (int k = from; k < to; k++) {
+                        final long x = inputs[input + k];
+                        final int cells = panel + k * STANDARD_TILE;
+
+                        for (int j = 0; j < STANDARD_TILE; j++) {
+                            dots[row + j] += x * integerPanels[cells + j];
+                        }
+                    }
+                    break;
+                case WITH_MODULE:
+                    for (int k = from; k < to; k++) {
+                        final double x = inputs[input + k];
+                        final int cells = panel + k * STANDARD_TILE;
+
+                        for (int j = 0; j < STANDARD_TILE; j++) {
+                            sums[row + j] += FormulaTerms.absoluteDifference(x, panels[cells + j]);
+                        }
+                    }
+                    break;
+                case WITH_COEFFICIENT:
+                    final double[] weights = this.weightPanels;
+
+                    for (int k = from; k < to; k++) {
+                        final double x = inputs[input + k];
+                        final int cells = panel + k * STANDARD_TILE;
+
+                        for (int j = 0; j < STANDARD_TILE; j++) {
+                            sums[row + j] += FormulaTerms.weightedSquaredDifference(x, panels[cells + j],
+                                    weights[cells + j]);
+                        }
+                    }
+                    break;
+                case WITH_MODULE_AND_FRACTION:
+                    for (int k = from; k < to; k++) {
+                        final double x = inputs[input + k];
+                        final int cells = panel + k * STANDARD_TILE;
+
+                        for (int j = 0; j < STANDARD_TILE; j++) {
+                            sums[row + j] += FormulaTerms.fraction(x, panels[cells + j]);
+                        }
+                    }
+                    break;
+                case WITH_ARCCOS:
+                    for (int k = from; k < to; k++) {
+                        final double x = inputs[input + k];
+                        final double inputTerm = Math.abs(x) + 1;
+                        final int cells = panel + k * STANDARD_TILE;
+
+                        for (int j = 0; j < STANDARD_TILE; j++) {
+                            sums[row + j] += FormulaTerms.arcCosTerm(x, inputTerm, panels[cells + j]);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Formula %s does not supported", formula));
+            }
+        }
+
+        /**
+         * @return value ordering standards of a row, as compared by {@link CharacterDeterminant}.
+         */
+        private double key(int input, int standard, double sum, long dot) {
+            switch (formula) {
+                case WITH_SQUARE_ROOT:
+                    return inputSquares[input] + standardSquares[standard] - 2 * dot;
+                case WITH_COEFFICIENT:
+                    return sum < 0 ? Double.NaN : sum;
+                case WITH_ARCCOS:
+                    return FormulaTerms.arcCos(sum);
+                default:
+                    return sum;
+            }
+        }
+
+        private double score(double key) {
+            return formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_COEFFICIENT
+                    ? Math.sqrt(key)
+                    : key;
+        }
+
+        private static long squares(int[] cells) {
+            long sum = 0;
+
+            for (int cell : cells) {
+                sum += (long) cell * cell;
+            }
+
+            return sum;
+        }
+    }
+}
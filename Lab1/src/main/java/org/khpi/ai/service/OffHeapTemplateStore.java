@@ -0,0 +1,451 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Label;
+import org.khpi.ai.model.Template;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template library kept in direct buffers outside the Java heap, for libraries of millions of templates.
+ * Every template is a record of its label id, the sums of squared and absolute cells for the lower bounds
+ * and its cells quantized by the {@link Encoding}. Records lie back to back in chunks of up to
+ * {@code CHUNK_BYTES}, so the heap holds one reference per chunk and its usage stays flat as the library grows.
+ * Weights of {@link CharacterDeterminant.Formula#WITH_COEFFICIENT} are kept per label in the same encoding.
+ * <p>
+ * Values are stored exactly, a cell or weight outside the range of the encoding is rejected.
+ * The store is immutable and read through a {@link Reader} per scanning thread.
+ * <p>
+ * Templates keep the order they were added in, while a {@link TemplateLibrary} groups them by label id.
+ * The later template wins a tie in the k-NN scan, so neighbours at equal distances can differ between the two
+ * unless the templates are added grouped by label id, in which case both give the same results.
+ */
+public class OffHeapTemplateStore {
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int CHUNK_BYTES = 1 << 26;
+    private static final int FIRST_CHUNK_RECORDS = 16;
+
+    private final Encoding encoding;
+    private final int width;
+    private final int height;
+    private final int recordBytes;
+    private final int recordsPerChunk;
+    private final ByteBuffer[] chunks;
+    private final int size;
+    private final Label[] labelsById;
+    private final ByteBuffer weights;
+    private final boolean[] weighted;
+
+    /**
+     * Quantization of cells and weights, a record holds {@code bits} per cell.
+     * {@link #UNSIGNED_BYTE} holds 8 bit grayscale cells of 0..255.
+     */
+    public enum Encoding {
+        NIBBLE(4, 0, 15), BYTE(8, Byte.MIN_VALUE, Byte.MAX_VALUE), UNSIGNED_BYTE(8, 0, 255);
+
+        private final int bits;
+        private final int min;
+        private final int max;
+
+        Encoding(int bits, int min, int max) {
+            this.bits = bits;
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        int bytes(int cells) {
+            return (cells * bits + Byte.SIZE - 1) / Byte.SIZE;
+        }
+
+        long maxSquare() {
+            final long largest = Math.max(Math.abs((long) min), max);
+            return largest * largest;
+        }
+    }
+
+    private OffHeapTemplateStore(Builder builder, ByteBuffer[] chunks, Label[] labelsById, ByteBuffer weights,
+                                 boolean[] weighted) {
+        this.encoding = builder.encoding;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.recordBytes = builder.recordBytes;
+        this.recordsPerChunk = builder.recordsPerChunk;
+        this.chunks = chunks;
+        this.size = builder.size;
+        this.labelsById = labelsById;
+        this.weights = weights;
+        this.weighted = weighted;
+    }
+
+    /**
+     * @return number of templates.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public boolean accepts(Character input) {
+        return input.getWidth() == width && input.getHeight() == height;
+    }
+
+    public Label getLabel(int template) {
+        return labelsById[chunks[template / recordsPerChunk].getInt((template % recordsPerChunk) * recordBytes)];
+    }
+
+    /**
+     * @return labels having templates, in id order.
+     */
+    public List<Label> getLabels() {
+        List<Label> labels = new ArrayList<>();
+
+        for (Label label : labelsById) {
+            if (label != null) {
+                labels.add(label);
+            }
+        }
+
+        return labels;
+    }
+
+    public boolean hasWeights(Label label) {
+        return label.getId() < weighted.length && weighted[label.getId()];
+    }
+
+    /**
+     * @return copy of the template as a character without standard.
+     */
+    public Character getTemplate(int template) {
+        return Character.of(reader().cells(template), width, height, null);
+    }
+
+    /**
+     * @return bytes of the direct buffers holding the templates and weights.
+     */
+    public long getOffHeapBytes() {
+        long bytes = weights.capacity();
+
+        for (ByteBuffer chunk : chunks) {
+            bytes += chunk.capacity();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return reader for one thread, reusing its buffers for every template.
+     */
+    Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Reads records of the store for one scan. Decoded cells land in an array reused for every template,
+     * so a scan allocates nothing per template.
+     */
+    class Reader {
+        private final ByteBuffer[] views = new ByteBuffer[chunks.length];
+        private final byte[] packed = new byte[encoding.bytes(width * height)];
+        private final int[] cells = new int[width * height];
+        private final Character[] decodedWeights = new Character[weighted.length];
+
+        private Reader() {
+            for (int c = 0; c < chunks.length; c++) {
+                views[c] = chunks[c].duplicate();
+            }
+        }
+
+        int labelId(int template) {
+            return chunks[template / recordsPerChunk].getInt((template % recordsPerChunk) * recordBytes);
+        }
+
+        long squares(int template) {
+            return chunks[template / recordsPerChunk].getInt((template % recordsPerChunk) * recordBytes + Integer.BYTES);
+        }
+
+        long absoluteSum(int template) {
+            return chunks[template / recordsPerChunk].getInt((template % recordsPerChunk) * recordBytes + 2 * Integer.BYTES);
+        }
+
+        /**
+         * @return cells of the template, valid until the next call.
+         */
+        int[] cells(int template) {
+            ByteBuffer view = views[template / recordsPerChunk];
+            view.position((template % recordsPerChunk) * recordBytes + HEADER_BYTES);
+            view.get(packed);
+            decode(packed, cells, encoding);
+
+            return cells;
+        }
+
+        /**
+         * @throws IllegalArgumentException when the label has no weights.
+         */
+        Character weights(int labelId) {
+            if (labelId >= weighted.length || !weighted[labelId]) {
+                throw new IllegalArgumentException(String.format("No weights for label %s", labelsById[labelId]));
+            }
+
+            if (decodedWeights[labelId] == null) {
+                ByteBuffer view = weights.duplicate();
+                byte[] packedWeights = new byte[packed.length];
+                int[] cellWeights = new int[cells.length];
+
+                view.position(labelId * packed.length);
+                view.get(packedWeights);
+                decode(packedWeights, cellWeights, encoding);
+                decodedWeights[labelId] = Character.of(cellWeights, width, height, null);
+            }
+
+            return decodedWeights[labelId];
+        }
+    }
+
+    private static void encode(int[] cells, byte[] packed, Encoding encoding) {
+        if (encoding != Encoding.NIBBLE) {
+            for (int k = 0; k < cells.length; k++) {
+                packed[k] = (byte) cells[k];
+            }
+            return;
+        }
+
+        for (int k = 0; k < cells.length; k += 2) {
+            final int high = k + 1 < cells.length ? cells[k + 1] : 0;
+            packed[k / 2] = (byte) (cells[k] | high << 4);
+        }
+    }
+
+    private static void decode(byte[] packed, int[] cells, Encoding encoding) {
+        if (encoding == Encoding.BYTE) {
+            for (int k = 0; k < cells.length; k++) {
+                cells[k] = packed[k];
+            }
+            return;
+        }
+
+        if (encoding == Encoding.UNSIGNED_BYTE) {
+            for (int k = 0; k < cells.length; k++) {
+                cells[k] = packed[k] & 0xFF;
+            }
+            return;
+        }
+
+        final int pairs = cells.length / 2;
+        for (int j = 0; j < pairs; j++) {
+            cells[2 * j] = packed[j] & 0xF;
+            cells[2 * j + 1] = (packed[j] >>> 4) & 0xF;
+        }
+        if (cells.length % 2 != 0) {
+            cells[cells.length - 1] = packed[pairs] & 0xF;
+        }
+    }
+
+    /**
+     * Appends templates straight into direct buffers, the last chunk doubles until it reaches the full size.
+     * Not thread-safe.
+     */
+    public static class Builder {
+        private final Encoding encoding;
+        private final int chunkBytes;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private final List<Label> labelsById = new ArrayList<>();
+        private final Map<Label, Character> weightsByLabel = new HashMap<>();
+        private int width;
+        private int height;
+        private int recordBytes;
+        private int recordsPerChunk;
+        private int size;
+        private byte[] packed;
+
+        public Builder(Encoding encoding) {
+            this(encoding, CHUNK_BYTES);
+        }
+
+        /**
+         * @param chunkBytes largest chunk, smaller than {@code CHUNK_BYTES} to cover several chunks in tests.
+         */
+        Builder(Encoding encoding, int chunkBytes) {
+            this.encoding = encoding;
+            this.chunkBytes = chunkBytes;
+        }
+
+        public Builder add(Template template) {
+            return add(template.getLabel(), template.getCharacter());
+        }
+
+        /**
+         * @throws IllegalArgumentException when the template has other dimensions than the first one
+         *                                  or a cell outside the range of the encoding.
+         */
+        public Builder add(Label label, Character template) {
+            if (packed == null) {
+                setDimensions(template);
+            }
+
+            check(label, template, "Template");
+
+            final int[] cells = template.getCells();
+            long squares = 0;
+            long absolutes = 0;
+
+            for (int cell : cells) {
+                squares += (long) cell * cell;
+                absolutes += Math.abs(cell);
+            }
+
+            encode(cells, packed, encoding);
+
+            ByteBuffer chunk = chunkWithRoom();
+            final int position = (size % recordsPerChunk) * recordBytes;
+            chunk.putInt(position, label.getId());
+            chunk.putInt(position + Integer.BYTES, (int) squares);
+            chunk.putInt(position + 2 * Integer.BYTES, (int) absolutes);
+            chunk.position(position + HEADER_BYTES);
+            chunk.put(packed);
+
+            while (labelsById.size() <= label.getId()) {
+                labelsById.add(null);
+            }
+            labelsById.set(label.getId(), label);
+            size++;
+
+            return this;
+        }
+
+        /**
+         * Weights of the label for {@link CharacterDeterminant.Formula#WITH_COEFFICIENT}, the first ones are kept.
+         *
+         * @throws IllegalArgumentException when the weights have other dimensions than the templates
+         *                                  or a weight outside the range of the encoding.
+         */
+        public Builder addWeights(Label label, Character labelWeights) {
+            if (packed == null) {
+                setDimensions(labelWeights);
+            }
+
+            check(label, labelWeights, "Weights of");
+            weightsByLabel.putIfAbsent(label, labelWeights);
+
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Trims the last chunk to its records. The builder must not be used afterwards.
+         */
+        public OffHeapTemplateStore build() {
+            if (packed == null) {
+                setDimensions(null);
+            }
+
+            ByteBuffer[] storeChunks = chunks.toArray(new ByteBuffer[0]);
+            final int last = storeChunks.length - 1;
+            if (last >= 0 && storeChunks[last].capacity() > (size - last * recordsPerChunk) * recordBytes) {
+                storeChunks[last] = copy(storeChunks[last], (size - last * recordsPerChunk) * recordBytes);
+            }
+
+            int labelCount = labelsById.size();
+            for (Label label : weightsByLabel.keySet()) {
+                labelCount = Math.max(labelCount, label.getId() + 1);
+            }
+
+            Label[] labels = new Label[labelCount];
+            for (int id = 0; id < labelsById.size(); id++) {
+                labels[id] = labelsById.get(id);
+            }
+
+            ByteBuffer weights = ByteBuffer.allocateDirect(weightsByLabel.isEmpty() ? 0 : labelCount * packed.length);
+            boolean[] weighted = new boolean[labelCount];
+            for (Map.Entry<Label, Character> entry : weightsByLabel.entrySet()) {
+                final int id = entry.getKey().getId();
+
+                labels[id] = labels[id] == null ? entry.getKey() : labels[id];
+                weighted[id] = true;
+                encode(entry.getValue().getCells(), packed, encoding);
+                weights.position(id * packed.length);
+                weights.put(packed);
+            }
+
+            return new OffHeapTemplateStore(this, storeChunks, labels, weights, weighted);
+        }
+
+        private void setDimensions(Character first) {
+            width = first == null ? 0 : first.getWidth();
+            height = first == null ? 0 : first.getHeight();
+
+            final int cells = width * height;
+            if (cells > Integer.MAX_VALUE / encoding.maxSquare()) {
+                throw new IllegalArgumentException(
+                        String.format("Templates of %d cells do not fit %s encoding", cells, encoding));
+            }
+
+            packed = new byte[encoding.bytes(cells)];
+            recordBytes = HEADER_BYTES + (packed.length + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+            recordsPerChunk = Math.max(1, chunkBytes / recordBytes);
+        }
+
+        private void check(Label label, Character character, String kind) {
+            if (character.getWidth() != width || character.getHeight() != height) {
+                throw new IllegalArgumentException(String.format("%s %s has illegal dimension size.", kind, label));
+            }
+
+            for (int cell : character.getCells()) {
+                if (cell < encoding.min || cell > encoding.max) {
+                    throw new IllegalArgumentException(String.format("%s %s has value %d outside of %s range [%d, %d]",
+                            kind, label, cell, encoding, encoding.min, encoding.max));
+                }
+            }
+        }
+
+        private ByteBuffer chunkWithRoom() {
+            final int record = size % recordsPerChunk;
+
+            if (record == 0) {
+                chunks.add(ByteBuffer.allocateDirect(Math.min(recordsPerChunk, FIRST_CHUNK_RECORDS) * recordBytes));
+            } else if (chunks.get(chunks.size() - 1).capacity() == record * recordBytes) {
+                final int records = (int) Math.min(recordsPerChunk, 2L * record);
+                chunks.set(chunks.size() - 1, copy(chunks.get(chunks.size() - 1), records * recordBytes));
+            }
+
+            return chunks.get(chunks.size() - 1);
+        }
+
+        private static ByteBuffer copy(ByteBuffer chunk, int capacity) {
+            ByteBuffer source = chunk.duplicate();
+            source.position(0);
+            source.limit(Math.min(capacity, source.capacity()));
+
+            ByteBuffer copy = ByteBuffer.allocateDirect(capacity);
+            copy.put(source);
+
+            return copy;
+        }
+    }
+}
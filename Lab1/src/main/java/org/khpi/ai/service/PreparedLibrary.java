@@ -0,0 +1,259 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Standards library prepared once for classification: every standard is paired with its metadata,
+ * the common dimensions are checked and the per-standard norms and coarse descriptors are computed up front.
+ * A query then checks its own dimensions once and reads the prepared values, so its preparation
+ * work scales with the input only. The library is immutable, a changed one is prepared as a new version.
+ * <p>
+ * Per-cell standard terms are not stored: they would double the library footprint, while deriving them
+ * from the cells costs less than the load of a second array. Summed-area tables of the shift tolerant
+ * mode are larger than the cells, so they are built by its first query only.
+ */
+public class PreparedLibrary {
+    private final long version;
+    private final List<Character> standards;
+    private final List<Character> metadataList;
+    private final Character[] metadata;
+    private final int width;
+    private final int height;
+    private final boolean uniform;
+    private final boolean uniformMetadata;
+    private final double[] norms;
+    private final long[] absoluteSums;
+    private final CoarseFeatures coarseFeatures;
+    private volatile IntegralImages integralImages;
+
+    private PreparedLibrary(long version, List<Character> standards, List<Character> metadata, boolean withNorms) {
+        this.version = version;
+        this.standards = standards;
+        this.metadataList = metadata;
+        this.metadata = new Character[standards.size()];
+
+        Map<Standard, Character> metadataByStandard = new HashMap<>();
+        for (Character metaCharacter : metadata) {
+            metadataByStandard.putIfAbsent(metaCharacter.getStandard(), metaCharacter);
+        }
+
+        final Character first = standards.isEmpty() ? null : standards.get(0);
+        boolean sameDimensions = true;
+        boolean sameMetadataDimensions = true;
+
+        for (int i = 0; i < standards.size(); i++) {
+            Character standard = standards.get(i);
+            Character metaCharacter = metadataByStandard.get(standard.getStandard());
+
+            sameDimensions &= standard.hasSameDimensions(first);
+            sameMetadataDimensions &= metaCharacter == null || metaCharacter.hasSameDimensions(first);
+            this.metadata[i] = metaCharacter;
+        }
+
+        this.width = first == null ? 0 : first.getWidth();
+        this.height = first == null ? 0 : first.getHeight();
+        this.uniform = sameDimensions;
+        this.uniformMetadata = sameDimensions && sameMetadataDimensions;
+        this.norms = withNorms ? new double[standards.size()] : null;
+        this.absoluteSums = withNorms ? new long[standards.size()] : null;
+        this.coarseFeatures = withNorms ? CoarseFeatures.of(standards, width, height) : null;
+
+        if (withNorms) {
+            for (int i = 0; i < standards.size(); i++) {
+                norms[i] = norm(standards.get(i));
+                absoluteSums[i] = absoluteSum(standards.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param metadata coefficients of {@link CharacterDeterminant.Formula#WITH_COEFFICIENT}, the first one
+     *                 of a standard's label is paired with it. May be empty when the formula is not used.
+     * @throws IllegalArgumentException when standards and metadata have different dimensions.
+     */
+    public static PreparedLibrary prepare(List<Character> standards, List<Character> metadata) {
+        return prepare(standards, metadata, 0);
+    }
+
+    /**
+     * @param version number telling this library from the ones prepared before it.
+     */
+    public static PreparedLibrary prepare(List<Character> standards, List<Character> metadata, long version) {
+        checkDimensions(standards, metadata);
+
+        return new PreparedLibrary(version, List.copyOf(standards), List.copyOf(metadata), true);
+    }
+
+    /**
+     * Checks the dimensions {@link #prepare(List, List, long)} requires without preparing anything.
+     *
+     * @throws IllegalArgumentException when standards and metadata have different dimensions.
+     */
+    static void checkDimensions(List<Character> standards, List<Character> metadata) {
+        if (!standards.isEmpty()) {
+            checkDimensions(standards, standards.get(0));
+            checkDimensions(metadata, standards.get(0));
+        }
+    }
+
+    /**
+     * Pairs the lists of a single query without computing norms, for the list based methods.
+     * Standards of different dimensions are accepted here and reject every input.
+     */
+    static PreparedLibrary wrap(List<Character> standards, List<Character> metadata) {
+        return new PreparedLibrary(0, Collections.unmodifiableList(standards), Collections.unmodifiableList(metadata),
+                false);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Character> getStandards() {
+        return standards;
+    }
+
+    public List<Character> getMetadataList() {
+        return metadataList;
+    }
+
+    public int size() {
+        return standards.size();
+    }
+
+    public Character getStandard(int index) {
+        return standards.get(index);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the library has no metadata for the standard.
+     */
+    public Character getMetadata(int index) {
+        Character metaCharacter = metadata[index];
+
+        if (metaCharacter == null) {
+            throw new IllegalArgumentException(
+                    String.format("No metadata for standard %s", standards.get(index).getStandard()));
+        }
+
+        return metaCharacter;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return whether the input has the dimensions of every standard.
+     */
+    public boolean accepts(Character input) {
+        return uniform && input.getWidth() == width && input.getHeight() == height;
+    }
+
+    /**
+     * @return whether the input has the dimensions of every standard and of its metadata.
+     */
+    public boolean acceptsWithMetadata(Character input) {
+        return uniformMetadata && accepts(input);
+    }
+
+    /**
+     * @return whether some standard has the dimensions, an input of any other size matches none of them.
+     */
+    public boolean hasStandardOfSize(int width, int height) {
+        if (uniform) {
+            return !standards.isEmpty() && width == this.width && height == this.height;
+        }
+
+        for (Character standard : standards) {
+            if (standard.getWidth() == width && standard.getHeight() == height) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    boolean hasNorms() {
+        return norms != null;
+    }
+
+    /**
+     * @return Euclidean norm of the standard cells.
+     */
+    double getNorm(int index) {
+        return norms[index];
+    }
+
+    /**
+     * @return sum of absolute values of the standard cells.
+     */
+    long getAbsoluteSum(int index) {
+        return absoluteSums[index];
+    }
+
+    /**
+     * @return descriptors of the standards for the cascade pre-filter, null without norms.
+     */
+    CoarseFeatures getCoarseFeatures() {
+        return coarseFeatures;
+    }
+
+    /**
+     * @return summed-area tables of the standards, built on the first call. The library has to be uniform.
+     */
+    IntegralImages getIntegralImages() {
+        IntegralImages images = integralImages;
+
+        if (images == null) {
+            synchronized (this) {
+                images = integralImages;
+                if (images == null) {
+                    images = IntegralImages.of(standards, width, height);
+                    integralImages = images;
+                }
+            }
+        }
+
+        return images;
+    }
+
+    private static void checkDimensions(List<Character> characters, Character first) {
+        for (Character character : characters) {
+            if (!character.hasSameDimensions(first)) {
+                throw new IllegalArgumentException(
+                        String.format("Character %s has illegal dimension size.", character.getStandard()));
+            }
+        }
+    }
+
+    static double norm(Character character) {
+        double sum = 0;
+
+        for (int cell : character.getCells()) {
+            sum += (double) cell * cell;
+        }
+
+        return Math.sqrt(sum);
+    }
+
+    static long absoluteSum(Character character) {
+        long sum = 0;
+
+        for (int cell : character.getCells()) {
+            sum += Math.abs((long) cell);
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,220 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of classification results keyed by glyph content and formula.
+ * Entries are spread over independently locked segments, each evicting its least recently used entry,
+ * so threads rarely contend. A result is computed outside of the lock, two threads missing the same key
+ * at once both compute it.
+ * <p>
+ * Results are valid for one standards library only: every entry remembers the library instance
+ * (a standards list or a {@link PreparedLibrary}) it was computed against and is never returned for another one.
+ * The cache is cleared when it is asked about a different library than before, or explicitly with
+ * {@link #invalidate()} when the standards were changed in place.
+ */
+public class ResultCache {
+    static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile Object library;
+
+    /**
+     * @param capacity number of cached results, rounded up to a multiple of the segment count.
+     */
+    public ResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Cache capacity must be positive, got %d", capacity));
+        }
+
+        final int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * @param formula anything with value equality identifying the computation, e.g. formula enum constant.
+     * @param standards library the result is computed against, compared by identity.
+     * @return cached result, or result of {@code compute} that is cached for the next calls.
+     */
+    public <V> V get(Character glyph, Object formula, Object standards, Supplier<V> compute) {
+        if (standards != library) {
+            switchLibrary(standards);
+        }
+
+        Key key = new Key(glyph, formula);
+        Segment segment = segments[segmentIndex(key.hash)];
+        CachedResult entry;
+
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+
+        if (entry != null && entry.library == standards) {
+            hits.increment();
+            @SuppressWarnings("unchecked")
+            V cached = (V) entry.result;
+            return cached;
+        }
+
+        misses.increment();
+        V computed = compute.get();
+
+        synchronized (segment) {
+            segment.put(key, new CachedResult(standards, computed));
+        }
+
+        return computed;
+    }
+
+    /**
+     * Drops every cached result, e.g. after the standards were changed in place.
+     */
+    public void invalidate() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+
+        invalidations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits %d, misses %d, invalidations %d, size %d",
+                getHits(), getMisses(), getInvalidations(), size());
+    }
+
+    private synchronized void switchLibrary(Object standards) {
+        if (standards != library) {
+            library = standards;
+            invalidate();
+        }
+    }
+
+    /**
+     * 64 bit multiply-xorshift hash of the cells, 0/1 glyphs are hashed by their packed words.
+     */
+    static long hash(Character glyph) {
+        long hash = glyph.getWidth() * 0x9E3779B97F4A7C15L + glyph.getHeight();
+
+        if (glyph.isBinary()) {
+            for (long word : glyph.getBits()) {
+                hash = (hash ^ word) * 0xBF58476D1CE4E5B9L;
+                hash ^= hash >>> 31;
+            }
+        } else {
+            for (int cell : glyph.getCells()) {
+                hash = (hash ^ cell) * 0xBF58476D1CE4E5B9L;
+                hash ^= hash >>> 31;
+            }
+        }
+
+        hash = (hash ^ (hash >>> 30)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    static int keyHash(Character glyph, Object formula) {
+        long glyphHash = hash(glyph);
+        return (int) (glyphHash ^ (glyphHash >>> 32)) * 31 + formula.hashCode();
+    }
+
+    static int segmentIndex(int keyHash) {
+        return (keyHash ^ (keyHash >>> 16)) & (SEGMENTS - 1);
+    }
+
+    private static class Key {
+        private final Character glyph;
+        private final Object formula;
+        private final int hash;
+
+        Key(Character glyph, Object formula) {
+            this.glyph = glyph;
+            this.formula = formula;
+            this.hash = keyHash(glyph, formula);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return hash == other.hash
+                    && formula.equals(other.formula)
+                    && glyph.hasSameDimensions(other.glyph)
+                    && Arrays.equals(glyph.getCells(), other.glyph.getCells());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Result together with the library it was computed against, so no result outlives its library.
+     */
+    private static class CachedResult {
+        private final Object library;
+        private final Object result;
+
+        CachedResult(Object library, Object result) {
+            this.library = library;
+            this.result = result;
+        }
+    }
+
+    private static class Segment extends LinkedHashMap<Key, CachedResult> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+            return size() > capacity;
+        }
+    }
+}
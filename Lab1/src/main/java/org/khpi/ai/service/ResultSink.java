@@ -0,0 +1,358 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.FormulaResults;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes classification results in a machine readable {@link Format} on a dedicated writer thread.
+ * Results are encoded by the calling thread straight into one of two large reusable buffers; a full buffer
+ * is handed over to the writer thread while the caller goes on with the other one. The output is flushed only
+ * when {@link #flush()} is asked for and no further buffer is waiting, so a burst of requests costs one flush.
+ * <p>
+ * Every result is identified by its source, e.g. a file name or a record number, and optionally by a label.
+ * Results of one sink are expected from one thread.
+ */
+public class ResultSink implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BUFFERS = 2;
+    private static final ByteBuffer FLUSH = ByteBuffer.allocate(0);
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+    private static final Histogram WRITE_SIZE = Metrics.histogram("sink.write", "bytes");
+
+    private final OutputStream output;
+    private final Encoder encoder;
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFERS + 2);
+    private final Output encoded = new Output();
+    private final Thread writer;
+    private volatile IOException failure;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean closed;
+
+    /**
+     * Encodings of the results.
+     */
+    public enum Format {
+        /**
+         * Comma separated header and one line per result.
+         */
+        CSV,
+        /**
+         * JSON Lines, one object per result.
+         */
+        JSON,
+        /**
+         * Big-endian binary records, see {@link BinaryResultEncoder}.
+         */
+        BINARY;
+
+        /**
+         * @param name {@code csv}, {@code json} or {@code binary}, case insensitive.
+         */
+        public static Format parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Unknown result format: %s", name), e);
+            }
+        }
+
+        /**
+         * @param sourceName name of the source field, e.g. {@code file} or {@code record}.
+         * @param labelled whether results carry a label field.
+         */
+        public Encoder encoder(FormulaSelection formulas, String sourceName, boolean labelled) {
+            switch (this) {
+                case CSV:
+                    return new CsvResultEncoder(formulas, sourceName, labelled);
+                case JSON:
+                    return new JsonResultEncoder(formulas, sourceName, labelled);
+                case BINARY:
+                    return new BinaryResultEncoder(formulas, sourceName, labelled);
+                default:
+                    throw new IllegalArgumentException(String.format("Format %s does not supported", this));
+            }
+        }
+    }
+
+    /**
+     * Encoding of the results, called on the thread that writes to the sink.
+     */
+    public interface Encoder {
+        void header(Output output);
+
+        /**
+         * @param label may be null.
+         */
+        void result(Output output, String source, String label, FormulaResults results);
+
+        /**
+         * @param label may be null.
+         */
+        void error(Output output, String source, String label, String message);
+    }
+
+    /**
+     * Writes the header of the encoder and starts the writer thread.
+     */
+    public ResultSink(OutputStream output, Encoder encoder) {
+        this.output = output;
+        this.encoder = encoder;
+        this.free.add(ByteBuffer.allocate(BUFFER_SIZE));
+        this.writer = new Thread(this::writeBuffers, "result-sink-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        encoder.header(encoded);
+    }
+
+    public ResultSink(OutputStream output, Format format, FormulaSelection formulas, String sourceName,
+                      boolean labelled) {
+        this(output, format.encoder(formulas, sourceName, labelled));
+    }
+
+    /**
+     * @throws UncheckedIOException when the writer thread failed to write earlier results.
+     */
+    public void write(String source, String label, FormulaResults results) {
+        checkOpen();
+        encoder.result(encoded, source, label, results);
+    }
+
+    /**
+     * Records a result that could not be computed.
+     */
+    public void writeError(String source, String label, String message) {
+        checkOpen();
+        encoder.error(encoded, source, label, message);
+    }
+
+    /**
+     * Hands the results written so far over to the writer thread and asks it to flush the output
+     * once it has no further buffer to write.
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        handOver(buffer.position() == 0 ? null : free());
+        put(FLUSH);
+    }
+
+    /**
+     * Writes the remaining results, flushes the output and waits for the writer thread.
+     * The output itself is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        handOver(buffer.position() == 0 ? null : free());
+        put(CLOSE);
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for result writer");
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Result sink is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Queues the current buffer for writing and continues with the given one.
+     */
+    private void handOver(ByteBuffer next) throws InterruptedIOException {
+        if (next == null) {
+            return;
+        }
+
+        put(buffer.flip());
+        buffer = next;
+    }
+
+    private ByteBuffer free() throws InterruptedIOException {
+        try {
+            return free.take().clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for result writer");
+        }
+    }
+
+    private void put(ByteBuffer filledBuffer) throws InterruptedIOException {
+        try {
+            filled.put(filledBuffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for result writer");
+        }
+    }
+
+    /**
+     * Writer thread. Buffers go back to the free queue once written, also after a failure,
+     * so the encoding thread is never blocked; the failure is reported by its next call.
+     */
+    private void writeBuffers() {
+        try {
+            boolean flushRequested = false;
+            ByteBuffer next;
+
+            while ((next = filled.take()) != CLOSE) {
+                if (next == FLUSH) {
+                    flushRequested = true;
+                } else {
+                    write(next);
+                    free.put(next);
+                }
+
+                if (flushRequested && filled.isEmpty()) {
+                    flushRequested = false;
+                    flushOutput();
+                }
+            }
+
+            flushOutput();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(ByteBuffer written) {
+        if (failure != null) {
+            return;
+        }
+
+        try {
+            output.write(written.array(), 0, written.limit());
+
+            if (Metrics.ENABLED) {
+                WRITE_SIZE.record(written.limit());
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void flushOutput() {
+        if (failure != null) {
+            return;
+        }
+
+        try {
+            output.flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Encoder side of the sink: appends bytes to the current buffer and hands it over when it is full.
+     */
+    public final class Output {
+        private Output() {
+        }
+
+        public Output putByte(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+            return this;
+        }
+
+        public Output putShort(int value) {
+            ensure(Short.BYTES);
+            buffer.putShort((short) value);
+            return this;
+        }
+
+        public Output putInt(int value) {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            return this;
+        }
+
+        public Output putLong(long value) {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+            return this;
+        }
+
+        /**
+         * Appends characters below 128 as single bytes, any other text has to go through {@link #putUtf8}.
+         */
+        public Output putAscii(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                putByte(text.charAt(i));
+            }
+            return this;
+        }
+
+        public Output putUtf8(String text) {
+            return isAscii(text) ? putAscii(text) : putBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public Output putBytes(byte[] bytes) {
+            int offset = 0;
+
+            while (offset < bytes.length) {
+                ensure(1);
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+
+            return this;
+        }
+
+        public Output putLineSeparator() {
+            return putAscii(System.lineSeparator());
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+
+            try {
+                handOver(free());
+            } catch (InterruptedIOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package org.khpi.ai.service;
+
+/**
+ * Plain loops, the reference and fallback for {@link DistanceKernels}.
+ */
+class ScalarDistanceKernels implements DistanceKernels {
+
+    @Override
+    public double addSquaredDifferences(double sum, int[] input, int[] standard, int offset, int from, int to) {
+        for (int k = from; k < to; k++) {
+            sum += FormulaTerms.squaredDifference(input[k], standard[offset + k]);
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double addAbsoluteDifferences(double sum, int[] input, int[] standard, int offset, int from, int to) {
+        for (int k = from; k < to; k++) {
+            sum += FormulaTerms.absoluteDifference(input[k], standard[offset + k]);
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double addWeightedSquaredDifferences(double sum, int[] input, int[] standard, int offset, int[] weights,
+                                                int from, int to) {
+        for (int k = from; k < to; k++) {
+            sum += FormulaTerms.weightedSquaredDifference(input[k], standard[offset + k], weights[k]);
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double addFractions(double sum, int[] input, int[] standard, int offset, int from, int to) {
+        for (int k = from; k < to; k++) {
+            sum += FormulaTerms.fraction(input[k], standard[offset + k]);
+        }
+
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return SCALAR;
+    }
+}
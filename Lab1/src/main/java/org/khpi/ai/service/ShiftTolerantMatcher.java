@@ -0,0 +1,350 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Alignment;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.ScoredStandard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.PartialSumWithMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Classification of glyphs offset from the standards by up to {@code maxShift} cells in each direction.
+ * The input is shifted by every offset in the range, cells shifted in are blank and cells shifted out of
+ * the frame are dropped, and every standard is scored by the formula at its best offset.
+ * Offsets are tried nearest first, so on equal scores the smaller shift is kept.
+ * <p>
+ * The squared distance at an offset is the sum of the squared standard cells left uncovered plus ‖S - X‖²
+ * over the overlap, which is at least (‖S‖ - ‖X‖)² over it. The sums of squares of the uncovered cells and
+ * of both overlaps are read from summed-area tables in constant time, so every offset is bounded without
+ * reading its cells and only offsets bounded below the best score found so far are scored cell by cell.
+ * Absolute sums bound {@link Formula#WITH_MODULE} the same way. For 0/1 glyphs the expansion
+ * ‖S‖² + ‖X‖² - 2 S·X is computed exactly at every offset from the packed bits instead. The other formulas
+ * have no such bound, they score every offset with early abandoning.
+ */
+public class ShiftTolerantMatcher {
+    private static final Histogram SCORING_TIME = Metrics.histogram("scoring.shift", Metrics.NANOSECONDS);
+
+    private final int maxShift;
+    private final int[] rowShifts;
+    private final int[] columnShifts;
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    /**
+     * @param maxShift largest shift tried in each direction, 0 scores the aligned glyphs only.
+     */
+    public ShiftTolerantMatcher(int maxShift) {
+        if (maxShift < 0) {
+            throw new IllegalArgumentException(String.format("Maximal shift must not be negative, got %d", maxShift));
+        }
+
+        final int side = 2 * maxShift + 1;
+        Integer[] offsets = new Integer[side * side];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = i;
+        }
+        Arrays.sort(offsets, Comparator.comparingInt(offset ->
+                Math.abs(offset / side - maxShift) + Math.abs(offset % side - maxShift)));
+
+        this.maxShift = maxShift;
+        this.rowShifts = new int[offsets.length];
+        this.columnShifts = new int[offsets.length];
+
+        for (int i = 0; i < offsets.length; i++) {
+            rowShifts[i] = offsets[i] / side - maxShift;
+            columnShifts[i] = offsets[i] % side - maxShift;
+        }
+    }
+
+    public int getMaxShift() {
+        return maxShift;
+    }
+
+    /**
+     * @return nearest standard by the formula with its distance and the shift of the input matching it.
+     */
+    public Alignment align(Character inputCharacter, PreparedLibrary library, Formula formula) {
+        TopStandards top = findTop(inputCharacter, library, formula, 1);
+
+        return alignment(library, formula, top.getKey(0), top.getIndex(0));
+    }
+
+    /**
+     * @param k number of standards to return, the ranking is shorter when there are fewer standards.
+     * @return k nearest standards by the formula at their best offsets with their distances, nearest first.
+     */
+    public Ranking rank(Character inputCharacter, PreparedLibrary library, int k, Formula formula) {
+        TopStandards top = findTop(inputCharacter, library, formula, k);
+        top.sort();
+
+        List<ScoredStandard> entries = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            Alignment alignment = alignment(library, formula, top.getKey(i), top.getIndex(i));
+            entries.add(new ScoredStandard(alignment.getStandard(), alignment.getScore()));
+        }
+
+        return new Ranking(entries);
+    }
+
+    /**
+     * @param entry index of the standard times the number of offsets plus the index of its best offset.
+     */
+    private Alignment alignment(PreparedLibrary library, Formula formula, double key, int entry) {
+        final int offset = entry % rowShifts.length;
+        final boolean rooted = formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_COEFFICIENT;
+
+        return new Alignment(library.getStandard(entry / rowShifts.length).getStandard(),
+                rooted ? Math.sqrt(key) : key, rowShifts[offset], columnShifts[offset]);
+    }
+
+    /**
+     * Keeps every standard under the entry of its best offset, see {@link #alignment}. Entries of a later
+     * standard are larger, so the later standard still wins a tie.
+     */
+    private TopStandards findTop(Character inputCharacter, PreparedLibrary library, Formula formula, int k) {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        final boolean accepted = formula == Formula.WITH_COEFFICIENT
+                ? library.acceptsWithMetadata(inputCharacter)
+                : library.accepts(inputCharacter);
+
+        if (library.size() > 0 && !accepted) {
+            throw new IllegalArgumentException("Input character have illegal dimension size.");
+        }
+
+        final int offsets = rowShifts.length;
+        final Character[] shiftedInputs = new Character[offsets];
+        final PartialSumWithMetadata[] partialSums = new PartialSumWithMetadata[offsets];
+        for (int s = 0; s < offsets; s++) {
+            shiftedInputs[s] = shift(inputCharacter, rowShifts[s], columnShifts[s]);
+            partialSums[s] = determinant.partialSum(shiftedInputs[s], formula);
+        }
+
+        final boolean geometric = formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_MODULE;
+        final OffsetBounds bounds = geometric ? new OffsetBounds(inputCharacter, library, formula) : null;
+        final BinaryOffsets binaryOffsets = geometric && inputCharacter.isBinary()
+                ? new BinaryOffsets(shiftedInputs)
+                : null;
+        TopStandards top = new TopStandards(k, library.size());
+        int pruned = 0;
+        int rejected = 0;
+
+        for (int i = 0; i < library.size(); i++) {
+            final double bound = top.bound();
+            final Character standard = library.getStandard(i);
+            final Character metaCharacter = formula == Formula.WITH_COEFFICIENT ? library.getMetadata(i) : null;
+            double best = Double.POSITIVE_INFINITY;
+            int bestOffset = -1;
+
+            if (binaryOffsets != null && standard.isBinary()) {
+                bestOffset = binaryOffsets.findBest(standard.getBits());
+                best = binaryOffsets.getBestDistance();
+            } else {
+                if (bounds != null) {
+                    bounds.setStandard(i);
+                }
+
+                for (int s = 0; s < offsets; s++) {
+                    final double limit = best < bound ? best : bound;
+
+                    if (bounds != null && FormulaTerms.exceeds(bounds.compute(s), limit)) {
+                        continue;
+                    }
+
+                    double sum = partialSums[s].compute(standard, metaCharacter, limit);
+                    if (sum < 0) {
+                        sum = Double.NaN; // root of negative sum, ordered after every number as before
+                    }
+
+                    if (bestOffset < 0 || Double.compare(sum, best) < 0) {
+                        best = sum;
+                        bestOffset = s;
+                    }
+                }
+            }
+
+            if (bestOffset < 0) {
+                pruned++;
+                continue;
+            }
+
+            if (best > bound) {
+                rejected++;
+            }
+
+            top.offer(best, i * offsets + bestOffset);
+        }
+
+        if (top.size() == 0) {
+            throw new IllegalStateException("Cannot find min value");
+        }
+
+        if (Metrics.ENABLED) {
+            Metrics.recordScoring(SCORING_TIME, "SHIFT_" + formula, start, library.size(), pruned, rejected);
+        }
+
+        return top;
+    }
+
+    /**
+     * @return copy of the input moved down and right by the shifts, blank where no input cell lands.
+     */
+    static Character shift(Character input, int rowShift, int columnShift) {
+        if (rowShift == 0 && columnShift == 0) {
+            return input;
+        }
+
+        final int width = input.getWidth();
+        final int height = input.getHeight();
+        final int[] source = input.getCells();
+        final int left = Math.max(0, columnShift);
+        final int right = Math.min(width, width + columnShift);
+        int[] cells = new int[width * height];
+
+        for (int r = Math.max(0, rowShift); r < Math.min(height, height + rowShift) && left < right; r++) {
+            System.arraycopy(source, (r - rowShift) * width + left - columnShift, cells, r * width + left, right - left);
+        }
+
+        return Character.of(cells, width, height, input.getStandard());
+    }
+
+    /**
+     * Geometric distances of 0/1 glyphs at every offset by the norm expansion ‖S‖² + ‖X‖² - 2 S·X, where
+     * squares and absolute values of cells are the cells themselves, so both distances are the ink of the
+     * standard plus the ink of the shifted input minus twice their common ink, counted 64 cells at a time.
+     */
+    private static class BinaryOffsets {
+        private final long[][] inputBits;
+        private final long[] inputInks;
+        private double bestDistance;
+
+        BinaryOffsets(Character[] shiftedInputs) {
+            this.inputBits = new long[shiftedInputs.length][];
+            this.inputInks = new long[shiftedInputs.length];
+
+            for (int s = 0; s < shiftedInputs.length; s++) {
+                inputBits[s] = shiftedInputs[s].getBits();
+                inputInks[s] = bitCount(inputBits[s]);
+            }
+        }
+
+        /**
+         * @return index of the first offset with the smallest distance, see {@link #getBestDistance()}.
+         */
+        int findBest(long[] standardBits) {
+            final long standardInk = bitCount(standardBits);
+            long best = Long.MAX_VALUE;
+            int bestOffset = 0;
+
+            for (int s = 0; s < inputBits.length; s++) {
+                final long[] bits = inputBits[s];
+                long common = 0;
+
+                for (int w = 0; w < bits.length; w++) {
+                    common += Long.bitCount(bits[w] & standardBits[w]);
+                }
+
+                final long distance = standardInk + inputInks[s] - 2 * common;
+                if (distance < best) {
+                    best = distance;
+                    bestOffset = s;
+                }
+            }
+
+            bestDistance = best;
+            return bestOffset;
+        }
+
+        double getBestDistance() {
+            return bestDistance;
+        }
+
+        private static long bitCount(long[] bits) {
+            long count = 0;
+
+            for (long word : bits) {
+                count += Long.bitCount(word);
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Lower bounds of the geometric distances of one standard at every offset, from the summed-area tables
+     * of the standards and of the input.
+     */
+    private class OffsetBounds {
+        private final PreparedLibrary library;
+        private final boolean squared;
+        private final int width;
+        private final int height;
+        private final double[] inputNorms;
+        private final long[] inputAbsolutes;
+        private IntegralImages standardImages;
+        private int standard;
+        private long standardSquares;
+        private long standardAbsolutes;
+
+        OffsetBounds(Character input, PreparedLibrary library, Formula formula) {
+            this.library = library;
+            this.squared = formula == Formula.WITH_SQUARE_ROOT;
+            this.width = input.getWidth();
+            this.height = input.getHeight();
+            this.inputNorms = new double[rowShifts.length];
+            this.inputAbsolutes = new long[rowShifts.length];
+
+            final IntegralImages inputImages = IntegralImages.of(input);
+            for (int s = 0; s < rowShifts.length; s++) {
+                final int top = Math.min(height, Math.max(0, -rowShifts[s]));
+                final int bottom = Math.max(top, Math.min(height, height - rowShifts[s]));
+                final int left = Math.min(width, Math.max(0, -columnShifts[s]));
+                final int right = Math.max(left, Math.min(width, width - columnShifts[s]));
+
+                inputNorms[s] = Math.sqrt(inputImages.squares(0, top, bottom, left, right));
+                inputAbsolutes[s] = inputImages.absolutes(0, top, bottom, left, right);
+            }
+        }
+
+        /**
+         * Reads the tables of the standards on the first call, a library of 0/1 glyphs never needs them.
+         */
+        void setStandard(int index) {
+            if (standardImages == null) {
+                standardImages = library.getIntegralImages();
+            }
+
+            standard = index;
+            standardSquares = standardImages.squares(index, 0, height, 0, width);
+            standardAbsolutes = standardImages.absolutes(index, 0, height, 0, width);
+        }
+
+        /**
+         * Cells are integers, so every squared difference is at least the absolute one and the Manhattan
+         * bound holds for the squared distance as well.
+         */
+        double compute(int offset) {
+            final int top = Math.min(height, Math.max(0, rowShifts[offset]));
+            final int bottom = Math.max(top, Math.min(height, height + rowShifts[offset]));
+            final int left = Math.min(width, Math.max(0, columnShifts[offset]));
+            final int right = Math.max(left, Math.min(width, width + columnShifts[offset]));
+            final long overlapAbsolutes = standardImages.absolutes(standard, top, bottom, left, right);
+            final double manhattan = standardAbsolutes - overlapAbsolutes
+                    + Math.abs(overlapAbsolutes - inputAbsolutes[offset]);
+
+            if (!squared) {
+                return manhattan;
+            }
+
+            final long overlapSquares = standardImages.squares(standard, top, bottom, left, right);
+            final double difference = Math.sqrt(overlapSquares) - inputNorms[offset];
+
+            return Math.max(standardSquares - overlapSquares + difference * difference, manhattan);
+        }
+    }
+}
@@ -4,32 +4,138 @@ import org.khpi.ai.model.Character;
 import org.khpi.ai.model.FileCharacterInfo;
 import org.khpi.ai.model.Standard;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/**
+ * Loads standards and metadata into an immutable {@link PreparedLibrary} snapshot published through
+ * an atomic reference, with norms and coarse descriptors of the standards computed once per version.
+ * Readers take the current snapshot without locks or copies and keep using it for as long as they like,
+ * while loading and {@link #reload()} publish a new version.
+ */
 public class StandardsLoader {
-    private final List<Character> standardList = new ArrayList<>();
-    private final List<Character> metaData = new ArrayList<>();
-    private final CSVHandler csvHandler = new CSVHandler();
     private static final String STANDARD_PATH = "./src/main/resources/standards/";
     private static final String META_PATH = "./src/main/resources/meta/";
 
-    public List<Standard> loadStandards() {
-        standardList.addAll(loadData(STANDARD_PATH));
-        return standardList.stream()
-                .map(Character::getStandard)
-                .collect(Collectors.toList());
+    private final AtomicReference<PreparedLibrary> library =
+            new AtomicReference<>(PreparedLibrary.prepare(List.of(), List.of()));
+    private final CSVHandler csvHandler = new CSVHandler();
+    private final LibraryFile libraryFile = new LibraryFile();
+    private Path loadedLibraryFile;
+
+    /**
+     * Loads standards and metadata from the CSV directories and publishes them together as one version,
+     * so no snapshot has the standards without their metadata.
+     */
+    public synchronized PreparedLibrary loadStandardsAndMetadata() {
+        PreparedLibrary current = library.get();
+        List<Character> standards = new ArrayList<>(current.getStandards());
+        List<Character> metadata = new ArrayList<>(current.getMetadataList());
+        standards.addAll(loadData(STANDARD_PATH, false));
+        metadata.addAll(loadData(META_PATH, false));
+
+        return publish(standards, metadata);
     }
 
-    public List<Standard> loadMetadata() {
-        metaData.addAll(loadData(META_PATH));
-        return metaData.stream()
-                .map(Character::getStandard)
-                .collect(Collectors.toList());
+    /**
+     * Loads standards and metadata compiled by {@link #compileLibrary(Path)} instead of the CSV directories.
+     */
+    public synchronized List<Standard> loadLibrary(Path file) throws IOException {
+        PreparedLibrary current = library.get();
+        List<Character> standards = new ArrayList<>(current.getStandards());
+        List<Character> metadata = new ArrayList<>(current.getMetadataList());
+        libraryFile.read(file, standards, metadata);
+        loadedLibraryFile = file;
+
+        return toStandards(publish(standards, metadata).getStandards());
+    }
+
+    /**
+     * Reads the whole library, from the library file when given or the CSV directories otherwise, and prepares
+     * only the standards of one shard. Nothing is published, so the standards of other shards are not kept
+     * once the shard is returned.
+     *
+     * @param file library compiled by {@link #compileLibrary(Path)}, null for the CSV directories.
+     * @throws IllegalArgumentException when the shard cannot be made, see
+     *                                  {@link LibraryShard#of(List, List, long, LibraryShard.Assignment, int, int)}.
+     */
+    public LibraryShard loadShard(Path file, LibraryShard.Assignment assignment, int shard, int shards)
+            throws IOException {
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        if (file != null) {
+            libraryFile.read(file, standards, metadata);
+        } else {
+            standards.addAll(loadData(STANDARD_PATH, false));
+            metadata.addAll(loadData(META_PATH, false));
+        }
+
+        return LibraryShard.of(standards, metadata, library.get().getVersion() + 1, assignment, shard, shards);
+    }
+
+    /**
+     * Reads standards and metadata again from where they were loaded, the library file or the CSV directories,
+     * and publishes them as a new version. The current version stays published when reading fails.
+     * A missing CSV file drops its standard, a CSV file that exists but cannot be read or is still empty
+     * fails the reload.
+     *
+     * @throws IOException when a file exists but cannot be read or is empty.
+     * @throws IllegalArgumentException when the files are malformed or have different dimensions.
+     */
+    public synchronized PreparedLibrary reload() throws IOException {
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        if (loadedLibraryFile != null) {
+            libraryFile.read(loadedLibraryFile, standards, metadata);
+        } else {
+            try {
+                standards.addAll(loadData(STANDARD_PATH, true));
+                metadata.addAll(loadData(META_PATH, true));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        return publish(standards, metadata);
+    }
+
+    /**
+     * @return files and directories {@link #reload()} reads.
+     */
+    public synchronized List<Path> getSources() {
+        return loadedLibraryFile != null
+                ? List.of(loadedLibraryFile)
+                : List.of(Paths.get(STANDARD_PATH), Paths.get(META_PATH));
+    }
+
+    /**
+     * Writes loaded standards and metadata into a single binary library file.
+     */
+    public void compileLibrary(Path file) throws IOException {
+        PreparedLibrary current = library.get();
+        libraryFile.write(file, current.getStandards(), current.getMetadataList());
     }
 
-    private List<Character> loadData(String path) {
+    private PreparedLibrary publish(List<Character> standards, List<Character> metadata) {
+        PreparedLibrary prepared = PreparedLibrary.prepare(standards, metadata, library.get().getVersion() + 1);
+        library.set(prepared);
+        return prepared;
+    }
+
+    /**
+     * @param strict whether a file that exists but cannot be read or is empty fails loading instead of being skipped.
+     * @throws UncheckedIOException when {@code strict} and such a file is found.
+     */
+    private List<Character> loadData(String path, boolean strict) {
         List<Character> data = new ArrayList<>();
 
         for(Standard standard : Standard.values()) {
@@ -39,17 +145,39 @@ public class StandardsLoader {
 
             if (standardCharacter != null) {
                 data.add(standardCharacter);
+            } else if (strict && Files.exists(Paths.get(standardFilePath))) {
+                throw new UncheckedIOException(new IOException(
+                        String.format("Standard file %s cannot be read or is empty", standardFilePath)));
             }
         }
 
         return data;
     }
 
+    private static List<Standard> toStandards(List<Character> characters) {
+        return characters.stream()
+                .map(Character::getStandard)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return current library snapshot, never changes after it is returned.
+     */
+    public PreparedLibrary getLibrary() {
+        return library.get();
+    }
+
+    /**
+     * @return standards of the current snapshot, unmodifiable and not copied.
+     */
     public List<Character> getStandardList() {
-        return new ArrayList<>(standardList);
+        return library.get().getStandards();
     }
 
+    /**
+     * @return metadata of the current snapshot, unmodifiable and not copied.
+     */
     public List<Character> getMetaData() {
-        return new ArrayList<>(metaData);
+        return library.get().getMetadataList();
     }
 }
@@ -0,0 +1,410 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.metrics.Histogram;
+import org.khpi.ai.metrics.Metrics;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FormulaResults;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Classifies an endless stream of glyph records, e.g. standard input or a named pipe.
+ * Calling thread parses records and submits them to worker threads, a writer thread writes
+ * results in input order to a {@link ResultSink}. Before every read from the input the writer is asked to flush results of
+ * the data read so far, so results appear while the stream is still open, yet a fast input is flushed
+ * once per read buffer instead of once per record. Records are handed to workers in tasks of up to
+ * {@code RECORDS_PER_TASK}, a task is also dispatched before every read. At most
+ * {@code parallelism * TASKS_PER_THREAD} tasks are in flight, parsing waits for the writer beyond that.
+ * <p>
+ * CSV stream uses {@link GlyphParser} records. Binary stream is a sequence of frames:
+ * <pre>
+ * int   width, little endian
+ * int   height, little endian
+ * ⌈width × height / 8⌉ bytes of 0/1 cells, row-major, most significant bit first
+ * </pre>
+ */
+public class StreamClassifier {
+    private static final int TASKS_PER_THREAD = 4;
+    private static final int RECORDS_PER_TASK = 64;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_FRAME_CELLS = 1 << 28;
+    private static final String SOURCE_NAME = "record";
+    private static final Future<Results> END_OF_STREAM = CompletableFuture.completedFuture(null);
+    private static final Future<Results> FLUSH = CompletableFuture.completedFuture(null);
+    private static final Histogram QUEUE_DEPTH = Metrics.histogram("stream.queue", "");
+
+    private final Supplier<PreparedLibrary> library;
+    private final FormulaSelection formulas;
+    private final int parallelism;
+    private final ResultCache cache;
+
+    public enum Format {
+        CSV, BINARY
+    }
+
+    public StreamClassifier(PreparedLibrary library, FormulaSelection formulas, int parallelism) {
+        this(library, formulas, parallelism, null);
+    }
+
+    /**
+     * @param cache results of repeated glyphs, may be null.
+     */
+    public StreamClassifier(PreparedLibrary library, FormulaSelection formulas, int parallelism, ResultCache cache) {
+        this(() -> library, formulas, parallelism, cache);
+    }
+
+    /**
+     * @param library supplies the current library snapshot, taken once per task of records.
+     * @param cache results of repeated glyphs, may be null.
+     */
+    public StreamClassifier(Supplier<PreparedLibrary> library, FormulaSelection formulas, int parallelism,
+                            ResultCache cache) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(String.format("Parallelism must be positive, got %d", parallelism));
+        }
+
+        this.library = library;
+        this.formulas = formulas;
+        this.parallelism = parallelism;
+        this.cache = cache;
+    }
+
+    /**
+     * @return sink of the results of every record, with its label, of the formulas of this classifier.
+     */
+    public ResultSink openSink(OutputStream output, ResultSink.Format format) {
+        return new ResultSink(output, format, formulas, SOURCE_NAME, true);
+    }
+
+    /**
+     * Writes one result per record to the sink until the end of the input, see {@link #openSink}.
+     *
+     * @return number of classified records.
+     * @throws IllegalArgumentException when the input is malformed, results of the preceding records are written.
+     */
+    public long classify(ReadableByteChannel input, Format format, ResultSink sink)
+            throws IOException, InterruptedException {
+        sink.flush();
+
+        BlockingQueue<Future<Results>> pending = new ArrayBlockingQueue<>(parallelism * TASKS_PER_THREAD);
+        ResultWriter resultWriter = new ResultWriter(pending, sink);
+        Thread writerThread = new Thread(resultWriter, "stream-result-writer");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long records = 0;
+
+        writerThread.start();
+        try {
+            Pipeline pipeline = new Pipeline(input, pool, pending, resultWriter);
+            try {
+                records = format == Format.BINARY
+                        ? readBinary(pipeline)
+                        : readCsv(pipeline);
+            } catch (IOException | RuntimeException e) {
+                pipeline.dispatch(); // records parsed before the failure are still written
+                throw e;
+            }
+            pipeline.dispatch();
+        } finally {
+            pending.put(END_OF_STREAM);
+            writerThread.join();
+            pool.shutdownNow();
+        }
+
+        resultWriter.rethrow();
+        return records;
+    }
+
+    private long readCsv(Pipeline pipeline) throws IOException, InterruptedException {
+        long[] records = new long[1];
+
+        try {
+            new GlyphParser().parse(pipeline, glyph -> {
+                try {
+                    pipeline.submit(++records[0], glyph.getLabel(), glyph.toCharacter(null));
+                } catch (InterruptedException e) {
+                    throw new InterruptedRuntimeException(e);
+                }
+            });
+        } catch (InterruptedRuntimeException e) {
+            throw e.getCause();
+        }
+
+        return records[0];
+    }
+
+    private long readBinary(Pipeline pipeline) throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN).flip();
+        byte[] cells = new byte[0];
+        long records = 0;
+
+        while ((buffer = fill(pipeline, buffer, FRAME_HEADER_SIZE)).remaining() != 0) {
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+
+            if (width <= 0 || height <= 0 || (long) width * height > MAX_FRAME_CELLS) {
+                throw new IllegalArgumentException(
+                        String.format("Illegal glyph size %dx%d in frame %d", width, height, records + 1));
+            }
+
+            final int length = (width * height + Byte.SIZE - 1) / Byte.SIZE;
+            if (cells.length < length) {
+                cells = new byte[length];
+            }
+
+            buffer = fill(pipeline, buffer, length);
+            buffer.get(cells, 0, length);
+            pipeline.submit(++records, null, Character.fromPackedBits(cells, 0, width, height, null));
+        }
+
+        return records;
+    }
+
+    /**
+     * Reads until the buffer has at least {@code size} bytes remaining, growing it when needed.
+     *
+     * @return buffer to continue with, with no bytes remaining when the input ended before the next frame.
+     * @throws EOFException when the input ended inside a frame.
+     */
+    private static ByteBuffer fill(ReadableByteChannel input, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN).put(buffer).flip();
+        }
+
+        while (buffer.remaining() < size) {
+            buffer.compact();
+            final int read = input.read(buffer);
+            buffer.flip();
+
+            if (read == -1) {
+                if (buffer.remaining() == 0 && size == FRAME_HEADER_SIZE) {
+                    return buffer;
+                }
+                throw new EOFException("Binary stream ends inside a frame");
+            }
+        }
+
+        return buffer;
+    }
+
+    private Results classify(long firstRecord, String[] labels, Character[] characters, int count) {
+        Results results = new Results(firstRecord, labels, count);
+        PreparedLibrary snapshot = library.get();
+
+        for (int i = 0; i < count; i++) {
+            try {
+                results.results[i] = formulas.determine(characters[i], snapshot, cache);
+            } catch (RuntimeException e) {
+                results.errors[i] = e.getMessage();
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Results of the records of one task.
+     */
+    private static class Results {
+        private final long firstRecord;
+        private final String[] labels;
+        private final FormulaResults[] results;
+        private final String[] errors;
+
+        Results(long firstRecord, String[] labels, int count) {
+            this.firstRecord = firstRecord;
+            this.labels = labels;
+            this.results = new FormulaResults[count];
+            this.errors = new String[count];
+        }
+
+        void writeTo(ResultSink sink) {
+            for (int i = 0; i < results.length; i++) {
+                final String record = Long.toString(firstRecord + i);
+
+                if (results[i] == null) {
+                    sink.writeError(record, labels[i], errors[i]);
+                } else {
+                    sink.write(record, labels[i], results[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes results in submission order. After any failure it keeps draining the queue,
+     * so the parsing thread is never blocked, and the parsing thread stops at its next read.
+     */
+    private static class ResultWriter implements Runnable {
+        private final BlockingQueue<Future<Results>> pending;
+        private final ResultSink sink;
+        private volatile Exception failure;
+
+        ResultWriter(BlockingQueue<Future<Results>> pending, ResultSink sink) {
+            this.pending = pending;
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Future<Results> result;
+
+                while ((result = pending.take()) != END_OF_STREAM) {
+                    if (failure != null) {
+                        continue;
+                    }
+
+                    try {
+                        if (result == FLUSH) {
+                            sink.flush();
+                        } else {
+                            result.get().writeTo(sink);
+                        }
+                    } catch (IOException | ExecutionException e) {
+                        failure = e;
+                    } catch (UncheckedIOException e) {
+                        failure = e.getCause();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+
+                if (failure == null) {
+                    sink.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        void rethrow() throws IOException {
+            final Exception failed = failure;
+
+            if (failed instanceof IOException) {
+                throw (IOException) failed;
+            }
+            if (failed instanceof RuntimeException) {
+                throw (RuntimeException) failed;
+            }
+            if (failed != null) {
+                throw new IllegalStateException("Stream classification task failed", failed.getCause());
+            }
+        }
+    }
+
+    /**
+     * Input of one stream together with the worker pool and the result queue. Before a read that follows
+     * new records the result writer is asked to flush, since the read may block. A failure of the result writer
+     * is thrown by the next read instead, so an endless input is not parsed for results nobody writes.
+     */
+    private class Pipeline implements ReadableByteChannel {
+        private final ReadableByteChannel input;
+        private final ForkJoinPool pool;
+        private final BlockingQueue<Future<Results>> pending;
+        private final ResultWriter resultWriter;
+        private boolean unflushed;
+        private String[] labels = new String[RECORDS_PER_TASK];
+        private Character[] characters = new Character[RECORDS_PER_TASK];
+        private int count;
+        private long firstRecord;
+
+        Pipeline(ReadableByteChannel input, ForkJoinPool pool, BlockingQueue<Future<Results>> pending,
+                 ResultWriter resultWriter) {
+            this.input = input;
+            this.pool = pool;
+            this.pending = pending;
+            this.resultWriter = resultWriter;
+        }
+
+        void submit(long record, String label, Character character) throws InterruptedException {
+            if (count == 0) {
+                firstRecord = record;
+            }
+
+            labels[count] = label;
+            characters[count++] = character;
+
+            if (count == RECORDS_PER_TASK) {
+                dispatch();
+            }
+        }
+
+        void dispatch() throws InterruptedException {
+            if (count == 0) {
+                return;
+            }
+
+            final long taskFirstRecord = firstRecord;
+            final String[] taskLabels = labels;
+            final Character[] taskCharacters = characters;
+            final int taskCount = count;
+
+            if (Metrics.ENABLED) {
+                QUEUE_DEPTH.record(pending.size());
+            }
+
+            pending.put(pool.submit(() -> classify(taskFirstRecord, taskLabels, taskCharacters, taskCount)));
+            labels = new String[RECORDS_PER_TASK];
+            characters = new Character[RECORDS_PER_TASK];
+            count = 0;
+            unflushed = true;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            resultWriter.rethrow();
+
+            try {
+                dispatch();
+
+                if (unflushed) {
+                    pending.put(FLUSH);
+                    unflushed = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for result writer");
+            }
+
+            return input.read(buffer);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return input.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    private static class InterruptedRuntimeException extends RuntimeException {
+        InterruptedRuntimeException(InterruptedException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InterruptedException getCause() {
+            return (InterruptedException) super.getCause();
+        }
+    }
+}
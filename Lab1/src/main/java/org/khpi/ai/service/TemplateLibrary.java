@@ -0,0 +1,192 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Label;
+import org.khpi.ai.model.Template;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable library of any number of templates per label. Cells of all templates lie back to back in one
+ * row-major array, grouped by label id and in load order within a label, so a scan reads memory sequentially
+ * and the templates of a label form a single range. Norms for the lower bounds of the scan are computed
+ * once, as in {@link PreparedLibrary}.
+ */
+public class TemplateLibrary {
+    private final int width;
+    private final int height;
+    private final int[] cells;
+    private final Label[] templateLabels;
+    private final List<Label> labels;
+    private final int[] labelStarts;
+    private final double[] norms;
+    private final long[] absoluteSums;
+
+    /**
+     * @param templateLabels label of every template of {@code cells}, templates in any order.
+     */
+    TemplateLibrary(Label[] templateLabels, int[] cells, int width, int height) {
+        final int size = width * height;
+        final int count = templateLabels.length;
+
+        int maxId = -1;
+        for (Label label : templateLabels) {
+            maxId = Math.max(maxId, label.getId());
+        }
+
+        int[] starts = new int[maxId + 2];
+        for (Label label : templateLabels) {
+            starts[label.getId() + 1]++;
+        }
+        for (int id = 0; id <= maxId; id++) {
+            starts[id + 1] += starts[id];
+        }
+
+        this.width = width;
+        this.height = height;
+        this.cells = new int[count * size];
+        this.templateLabels = new Label[count];
+
+        int[] next = starts.clone();
+        for (int i = 0; i < count; i++) {
+            final int position = next[templateLabels[i].getId()]++;
+            this.templateLabels[position] = templateLabels[i];
+            System.arraycopy(cells, i * size, this.cells, position * size, size);
+        }
+
+        List<Label> presentLabels = new ArrayList<>();
+        int[] presentStarts = new int[starts.length];
+        for (int id = 0; id <= maxId; id++) {
+            if (starts[id] < starts[id + 1]) {
+                presentStarts[presentLabels.size()] = starts[id];
+                presentLabels.add(this.templateLabels[starts[id]]);
+            }
+        }
+        presentStarts[presentLabels.size()] = count;
+
+        this.labels = List.copyOf(presentLabels);
+        this.labelStarts = Arrays.copyOf(presentStarts, presentLabels.size() + 1);
+        this.norms = new double[count];
+        this.absoluteSums = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            long squares = 0;
+            long absolutes = 0;
+
+            for (int k = i * size; k < (i + 1) * size; k++) {
+                squares += (long) this.cells[k] * this.cells[k];
+                absolutes += Math.abs(this.cells[k]);
+            }
+
+            norms[i] = Math.sqrt(squares);
+            absoluteSums[i] = absolutes;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when the templates have different dimensions.
+     */
+    public static TemplateLibrary of(List<Template> templates) {
+        if (templates.isEmpty()) {
+            return new TemplateLibrary(new Label[0], new int[0], 0, 0);
+        }
+
+        final Character first = templates.get(0).getCharacter();
+        final int size = first.getSize();
+
+        if ((long) templates.size() * size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    String.format("%d templates of %d cells do not fit one library", templates.size(), size));
+        }
+
+        Label[] templateLabels = new Label[templates.size()];
+        int[] cells = new int[templates.size() * size];
+
+        for (int i = 0; i < templates.size(); i++) {
+            Template template = templates.get(i);
+
+            if (!template.getCharacter().hasSameDimensions(first)) {
+                throw new IllegalArgumentException(
+                        String.format("Template %s has illegal dimension size.", template.getLabel()));
+            }
+
+            templateLabels[i] = template.getLabel();
+            System.arraycopy(template.getCharacter().getCells(), 0, cells, i * size, size);
+        }
+
+        return new TemplateLibrary(templateLabels, cells, first.getWidth(), first.getHeight());
+    }
+
+    /**
+     * @return number of templates.
+     */
+    public int size() {
+        return templateLabels.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean accepts(Character input) {
+        return input.getWidth() == width && input.getHeight() == height;
+    }
+
+    /**
+     * @return labels having templates, in id order.
+     */
+    public List<Label> getLabels() {
+        return labels;
+    }
+
+    public Label getLabel(int template) {
+        return templateLabels[template];
+    }
+
+    /**
+     * @return number of templates of the label, 0 when it has none.
+     */
+    public int getTemplateCount(Label label) {
+        final int position = labels.indexOf(label);
+
+        return position < 0
+                ? 0
+                : labelStarts[position + 1] - labelStarts[position];
+    }
+
+    /**
+     * @return copy of the template as a character without standard.
+     */
+    public Character getTemplate(int template) {
+        final int size = width * height;
+        return Character.of(Arrays.copyOfRange(cells, template * size, (template + 1) * size), width, height, null);
+    }
+
+    /**
+     * @return backing cells of all templates. Exposed for the scan and the library file, must not be modified.
+     */
+    int[] getCells() {
+        return cells;
+    }
+
+    /**
+     * @return index in {@link #getCells()} of the first cell of the template.
+     */
+    int getOffset(int template) {
+        return template * width * height;
+    }
+
+    double getNorm(int template) {
+        return norms[template];
+    }
+
+    long getAbsoluteSum(int template) {
+        return absoluteSums[template];
+    }
+}
@@ -0,0 +1,146 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.Template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads a {@link TemplateLibrary} or an {@link OffHeapTemplateStore} from a compiled library file, a CSV file or a directory. In a directory
+ * every {@code .csv} file holds templates of the label named like the file, every subdirectory holds
+ * files with templates of the label named like the subdirectory. A record header label overrides both.
+ */
+public class TemplateLoader {
+    private static final String CSV_EXTENSION = ".csv";
+
+    private final LabelRegistry registry;
+    private final CSVHandler csvHandler = new CSVHandler();
+    private final LibraryFile libraryFile = new LibraryFile();
+
+    public TemplateLoader(LabelRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the files are malformed or have different dimensions.
+     */
+    public TemplateLibrary load(Path source) throws IOException {
+        if (!Files.isDirectory(source) && isLibraryFile(source)) {
+            return libraryFile.readTemplates(source, registry);
+        }
+
+        List<Template> templates = new ArrayList<>();
+        forEachFile(source, (file, label) -> templates.addAll(read(file, label)));
+
+        return TemplateLibrary.of(templates);
+    }
+
+    /**
+     * Loads templates into an off-heap store file by file, so only the templates of one file are on the heap
+     * at a time. A library file is read whole before it is stored.
+     *
+     * @param weights CSV file or directory with weights of the labels, named like templates, may be null.
+     * @throws IllegalArgumentException when the files are malformed, have different dimensions
+     *                                  or values outside the range of the encoding.
+     */
+    public OffHeapTemplateStore loadOffHeap(Path source, Path weights, OffHeapTemplateStore.Encoding encoding)
+            throws IOException {
+        OffHeapTemplateStore.Builder builder = new OffHeapTemplateStore.Builder(encoding);
+
+        if (!Files.isDirectory(source) && isLibraryFile(source)) {
+            TemplateLibrary library = libraryFile.readTemplates(source, registry);
+
+            for (int i = 0; i < library.size(); i++) {
+                builder.add(library.getLabel(i), library.getTemplate(i));
+            }
+        } else {
+            forEachFile(source, (file, label) -> read(file, label).forEach(builder::add));
+        }
+
+        if (weights != null) {
+            forEachFile(weights, (file, label) -> read(file, label).forEach(template ->
+                    builder.addWeights(template.getLabel(), template.getCharacter())));
+        }
+
+        return builder.build();
+    }
+
+    public void compile(TemplateLibrary library, Path file) throws IOException {
+        libraryFile.writeTemplates(file, library);
+    }
+
+    public LabelRegistry getRegistry() {
+        return registry;
+    }
+
+    private static void forEachFile(Path source, FileVisitor visitor) throws IOException {
+        if (!Files.isDirectory(source)) {
+            visitor.visit(source, stem(source));
+            return;
+        }
+
+        for (Path file : list(source)) {
+            if (Files.isDirectory(file)) {
+                for (Path labelFile : list(file)) {
+                    if (isCsvFile(labelFile)) {
+                        visitor.visit(labelFile, file.getFileName().toString());
+                    }
+                }
+            } else if (isCsvFile(file)) {
+                visitor.visit(file, stem(file));
+            }
+        }
+    }
+
+    private List<Template> read(Path file, String label) throws IOException {
+        List<Template> templates = csvHandler.readTemplates(file, label, registry);
+
+        if (templates == null) {
+            throw new IOException(String.format("Cannot read templates of %s", file));
+        }
+
+        return templates;
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isCsvFile(Path file) {
+        return Files.isRegularFile(file) && file.getFileName().toString().endsWith(CSV_EXTENSION);
+    }
+
+    private static String stem(Path file) {
+        final String name = file.getFileName().toString();
+
+        return name.endsWith(CSV_EXTENSION)
+                ? name.substring(0, name.length() - CSV_EXTENSION.length())
+                : name;
+    }
+
+    private static boolean isLibraryFile(Path file) throws IOException {
+        byte[] magic = new byte[Integer.BYTES];
+
+        try (InputStream input = Files.newInputStream(file)) {
+            return input.readNBytes(magic, 0, magic.length) == magic.length
+                    && ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt() == LibraryFile.MAGIC;
+        }
+    }
+
+    private interface FileVisitor {
+        /**
+         * @param label label of the templates without one in their record header.
+         */
+        void visit(Path file, String label) throws IOException;
+    }
+}
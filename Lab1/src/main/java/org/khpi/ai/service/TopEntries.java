@@ -0,0 +1,181 @@
+package org.khpi.ai.service;
+
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.ScoredStandard;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Up to k best standards of every formula, identified by their index in the whole library.
+ * Keys are the raw formula values ordered like {@link TopStandards}: sums without the final root
+ * for {@link Formula} and negated similarities for {@link QualitativeFormula}. Entries of library
+ * shards merged with {@link #merge(TopEntries)} therefore give the same answer as a scan of the whole library,
+ * including the choice between equal distances.
+ */
+public class TopEntries {
+    private final int k;
+    private final Map<Formula, TopStandards> formulaTops = new EnumMap<>(Formula.class);
+    private final Map<QualitativeFormula, TopStandards> qualitativeTops = new EnumMap<>(QualitativeFormula.class);
+    private final Map<Integer, Standard> standards = new HashMap<>();
+    private boolean sorted;
+
+    /**
+     * @throws IllegalArgumentException when k is not positive.
+     */
+    public TopEntries(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException(String.format("Number of results must be positive, got %d", k));
+        }
+
+        this.k = k;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @param index index of the standard in the whole library.
+     */
+    public void offer(Formula formula, double key, int index, Standard standard) {
+        offer(formulaTops.computeIfAbsent(formula, f -> new TopStandards(k)), key, index, standard);
+    }
+
+    /**
+     * @param key negated similarity.
+     */
+    public void offer(QualitativeFormula formula, double key, int index, Standard standard) {
+        offer(qualitativeTops.computeIfAbsent(formula, f -> new TopStandards(k)), key, index, standard);
+    }
+
+    /**
+     * Adds entries of another shard. The other entries cannot be changed afterwards.
+     */
+    public void merge(TopEntries other) {
+        other.forEach(new EntryVisitor() {
+            @Override
+            public void visit(Formula formula, int index, Standard standard, double key) {
+                offer(formula, key, index, standard);
+            }
+
+            @Override
+            public void visit(QualitativeFormula formula, int index, Standard standard, double key) {
+                offer(formula, key, index, standard);
+            }
+        });
+    }
+
+    /**
+     * Visits entries formula by formula, best first. Nothing can be offered afterwards.
+     */
+    public void forEach(EntryVisitor visitor) {
+        sort();
+
+        for (Map.Entry<Formula, TopStandards> entry : formulaTops.entrySet()) {
+            TopStandards top = entry.getValue();
+
+            for (int i = 0; i < top.size(); i++) {
+                visitor.visit(entry.getKey(), top.getIndex(i), standards.get(top.getIndex(i)), top.getKey(i));
+            }
+        }
+
+        for (Map.Entry<QualitativeFormula, TopStandards> entry : qualitativeTops.entrySet()) {
+            TopStandards top = entry.getValue();
+
+            for (int i = 0; i < top.size(); i++) {
+                visitor.visit(entry.getKey(), top.getIndex(i), standards.get(top.getIndex(i)), top.getKey(i));
+            }
+        }
+    }
+
+    /**
+     * @return best standard of every formula with entries. Nothing can be offered afterwards.
+     */
+    public FormulaResults getResults() {
+        sort();
+
+        Map<Formula, Standard> formulaWinners = new EnumMap<>(Formula.class);
+        Map<QualitativeFormula, Standard> qualitativeWinners = new EnumMap<>(QualitativeFormula.class);
+
+        formulaTops.forEach((formula, top) -> formulaWinners.put(formula, standards.get(top.getIndex(0))));
+        qualitativeTops.forEach((formula, top) -> qualitativeWinners.put(formula, standards.get(top.getIndex(0))));
+
+        return new FormulaResults(formulaWinners, qualitativeWinners);
+    }
+
+    /**
+     * @return ranking with distances, like {@link CharacterDeterminant#rank(org.khpi.ai.model.Character,
+     * PreparedLibrary, int, Formula)}. Nothing can be offered afterwards.
+     * @throws IllegalArgumentException when the formula has no entries.
+     */
+    public Ranking getRanking(Formula formula) {
+        final boolean rooted = formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_COEFFICIENT;
+        TopStandards top = sorted(formulaTops.get(formula), formula);
+        List<ScoredStandard> entries = new ArrayList<>(top.size());
+
+        for (int i = 0; i < top.size(); i++) {
+            double key = top.getKey(i);
+            entries.add(new ScoredStandard(standards.get(top.getIndex(i)), rooted ? Math.sqrt(key) : key));
+        }
+
+        return new Ranking(entries);
+    }
+
+    /**
+     * @return ranking with similarities. Nothing can be offered afterwards.
+     * @throws IllegalArgumentException when the formula has no entries.
+     */
+    public Ranking getRanking(QualitativeFormula formula) {
+        TopStandards top = sorted(qualitativeTops.get(formula), formula);
+        List<ScoredStandard> entries = new ArrayList<>(top.size());
+
+        for (int i = 0; i < top.size(); i++) {
+            entries.add(new ScoredStandard(standards.get(top.getIndex(i)), -top.getKey(i)));
+        }
+
+        return new Ranking(entries);
+    }
+
+    private TopStandards sorted(TopStandards top, Enum<?> formula) {
+        if (top == null) {
+            throw new IllegalArgumentException(String.format("No entries for formula %s", formula));
+        }
+
+        sort();
+        return top;
+    }
+
+    private void offer(TopStandards top, double key, int index, Standard standard) {
+        if (sorted) {
+            throw new IllegalStateException("Entries are already sorted");
+        }
+
+        top.offer(key, index);
+        standards.putIfAbsent(index, standard);
+    }
+
+    private void sort() {
+        if (!sorted) {
+            formulaTops.values().forEach(TopStandards::sort);
+            qualitativeTops.values().forEach(TopStandards::sort);
+            sorted = true;
+        }
+    }
+
+    /**
+     * Receives entries of {@link #forEach(EntryVisitor)}.
+     */
+    public interface EntryVisitor {
+        void visit(Formula formula, int index, Standard standard, double key);
+
+        void visit(QualitativeFormula formula, int index, Standard standard, double key);
+    }
+}
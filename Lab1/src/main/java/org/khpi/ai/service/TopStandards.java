@@ -0,0 +1,123 @@
+package org.khpi.ai.service;
+
+/**
+ * Bounded heap of the k smallest keys with the indexes of their standards, kept in primitive arrays.
+ * The worst kept key sits at the root, so a candidate is compared with it once and dropped when it is not better.
+ * Keys are ordered by {@link Double#compare(double, double)}, so NaN is the worst key,
+ * and on equal keys the later standard is preferred.
+ */
+class TopStandards {
+    private final double[] keys;
+    private final int[] indexes;
+    private int size;
+
+    TopStandards(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Number of results must be positive, got %d", capacity));
+        }
+
+        keys = new double[capacity];
+        indexes = new int[capacity];
+    }
+
+    /**
+     * @param capacity number of results asked for, at most {@code count} are kept, so a large request
+     *                 allocates no more than the number of standards scanned.
+     * @param count number of standards that will be offered.
+     */
+    TopStandards(int capacity, int count) {
+        this(capacity <= 0 ? capacity : Math.min(capacity, Math.max(1, count)));
+    }
+
+    /**
+     * @return key a candidate has to reach to be kept, usable as early abandoning bound.
+     */
+    double bound() {
+        return size < keys.length || Double.isNaN(keys[0])
+                ? Double.POSITIVE_INFINITY
+                : keys[0];
+    }
+
+    void offer(double key, int index) {
+        if (size < keys.length) {
+            keys[size] = key;
+            indexes[size] = index;
+            siftUp(size++);
+        } else if (isBetter(key, index, keys[0], indexes[0])) {
+            keys[0] = key;
+            indexes[0] = index;
+            siftDown(0, size);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Orders kept entries best first. Nothing can be offered afterwards.
+     */
+    void sort() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    double getKey(int position) {
+        return keys[position];
+    }
+
+    int getIndex(int position) {
+        return indexes[position];
+    }
+
+    private static boolean isBetter(double key, int index, double otherKey, int otherIndex) {
+        int comparison = Double.compare(key, otherKey);
+        return comparison < 0 || (comparison == 0 && index > otherIndex);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+
+            if (!isBetter(keys[parent], indexes[parent], keys[position], indexes[position])) {
+                return;
+            }
+
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position, int end) {
+        while (true) {
+            int worst = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+
+            if (left < end && isBetter(keys[worst], indexes[worst], keys[left], indexes[left])) {
+                worst = left;
+            }
+            if (right < end && isBetter(keys[worst], indexes[worst], keys[right], indexes[right])) {
+                worst = right;
+            }
+            if (worst == position) {
+                return;
+            }
+
+            swap(position, worst);
+            position = worst;
+        }
+    }
+
+    private void swap(int first, int second) {
+        double key = keys[first];
+        keys[first] = keys[second];
+        keys[second] = key;
+
+        int index = indexes[first];
+        indexes[first] = indexes[second];
+        indexes[second] = index;
+    }
+}
@@ -0,0 +1,95 @@
+package org.khpi.ai.service;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link DistanceKernels} on the incubating Vector API. Cells are widened to doubles lane by lane,
+ * so integer valued sums stay exact as in the scalar loops. Integer valued lanes are summed separately and reduced
+ * at the end of the range, fractions are added in cell order. The tail is done by the scalar loop.
+ */
+class VectorDistanceKernels implements DistanceKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    private final ScalarDistanceKernels tail = new ScalarDistanceKernels();
+
+    @Override
+    public double addSquaredDifferences(double sum, int[] input, int[] standard, int offset, int from, int to) {
+        final int upper = from + INTS.loopBound(to - from);
+        DoubleVector lanes = DoubleVector.zero(DOUBLES);
+
+        for (int k = from; k < upper; k += INTS.length()) {
+            DoubleVector difference = toDoubles(input, k).sub(toDoubles(standard, offset + k));
+            lanes = lanes.add(difference.mul(difference));
+        }
+
+        return tail.addSquaredDifferences(sum + lanes.reduceLanes(VectorOperators.ADD), input, standard, offset,
+                upper, to);
+    }
+
+    @Override
+    public double addAbsoluteDifferences(double sum, int[] input, int[] standard, int offset, int from, int to) {
+        final int upper = from + INTS.loopBound(to - from);
+        DoubleVector lanes = DoubleVector.zero(DOUBLES);
+
+        for (int k = from; k < upper; k += INTS.length()) {
+            lanes = lanes.add(toDoubles(input, k).sub(toDoubles(standard, offset + k)).abs());
+        }
+
+        return tail.addAbsoluteDifferences(sum + lanes.reduceLanes(VectorOperators.ADD), input, standard, offset,
+                upper, to);
+    }
+
+    @Override
+    public double addWeightedSquaredDifferences(double sum, int[] input, int[] standard, int offset, int[] weights,
+                                                int from, int to) {
+        final int upper = from + INTS.loopBound(to - from);
+        DoubleVector lanes = DoubleVector.zero(DOUBLES);
+
+        for (int k = from; k < upper; k += INTS.length()) {
+            DoubleVector difference = toDoubles(input, k).sub(toDoubles(standard, offset + k));
+            lanes = lanes.add(toDoubles(weights, k).mul(difference.mul(difference)));
+        }
+
+        return tail.addWeightedSquaredDifferences(sum + lanes.reduceLanes(VectorOperators.ADD), input, standard,
+                offset, weights, upper, to);
+    }
+
+    /**
+     * Divides lane by lane, but adds the fractions one by one in cell order as the scalar loop does,
+     * since adding them per lane would round the sum differently.
+     */
+    @Override
+    public double addFractions(double sum, int[] input, int[] standard, int offset, int from, int to) {
+        final int upper = from + INTS.loopBound(to - from);
+        final double[] fractions = upper > from ? new double[DOUBLES.length()] : null;
+
+        for (int k = from; k < upper; k += INTS.length()) {
+            DoubleVector x = toDoubles(input, k);
+            DoubleVector s = toDoubles(standard, offset + k);
+            DoubleVector numerator = x.sub(s).abs().add(1);
+            DoubleVector denominator = x.add(s).abs().add(1);
+            numerator.div(denominator).intoArray(fractions, 0);
+
+            for (double fraction : fractions) {
+                sum += fraction;
+            }
+        }
+
+        return tail.addFractions(sum, input, standard, offset, upper, to);
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + DOUBLES.vectorBitSize() + " bit";
+    }
+
+    private static DoubleVector toDoubles(int[] cells, int offset) {
+        return (DoubleVector) IntVector.fromArray(INTS, cells, offset).convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+}
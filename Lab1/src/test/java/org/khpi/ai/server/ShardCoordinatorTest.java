@@ -0,0 +1,90 @@
+package org.khpi.ai.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+import org.khpi.ai.service.TopEntries;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Entries written by the server for a rank request and read back by the coordinator: formulas, indexes,
+ * labels and exact keys survive, including ties, NaN, infinite and negative keys.
+ */
+class ShardCoordinatorTest {
+    private static final InetSocketAddress WORKER = InetSocketAddress.createUnresolved("localhost", 7000);
+    private static final double[] KEYS = {0, -0.0, 0.1, 1, 1, -3.25, 1e-300, 1e300, Math.PI,
+            Double.POSITIVE_INFINITY, Double.NaN};
+
+    @ParameterizedTest
+    @CsvSource({"1, 1, 1", "3, 10, 2", "5, 3, 3", "8, 40, 4"})
+    void entriesRoundTrip(int k, int count, int seed) {
+        Random random = new Random(seed);
+        TopEntries written = new TopEntries(k);
+
+        for (Formula formula : Formula.values()) {
+            for (int i = 0; i < count; i++) {
+                written.offer(formula, KEYS[random.nextInt(KEYS.length)], i, standard(i));
+            }
+        }
+
+        // qualitative formulas of a selection may be missing from the answer
+        for (QualitativeFormula formula : new QualitativeFormula[]{QualitativeFormula.DYCE, QualitativeFormula.RUSSELL_AND_RAO}) {
+            for (int i = 0; i < count; i++) {
+                written.offer(formula, -random.nextDouble(), i, standard(i));
+            }
+        }
+
+        StringBuilder response = new StringBuilder();
+        ClassificationServer.appendEntries(response, written);
+        TopEntries read = ShardCoordinator.parse(response.toString(), k, WORKER);
+
+        assertEquals(entries(written), entries(read));
+
+        StringBuilder again = new StringBuilder();
+        ClassificationServer.appendEntries(again, read);
+        assertEquals(response.toString(), again.toString());
+    }
+
+    @Test
+    void failedAndUnknownAnswersAreRejected() {
+        assertThrows(IllegalStateException.class,
+                () -> ShardCoordinator.parse(ClassificationServer.ERROR_RESPONSE + " Illegal size", 1, WORKER));
+        assertThrows(IllegalStateException.class,
+                () -> ShardCoordinator.parse(ClassificationServer.OK_RESPONSE + " MANHATTAN=0:A:1.0", 1, WORKER));
+    }
+
+    private static Standard standard(int index) {
+        return Standard.values()[index % Standard.values().length];
+    }
+
+    /**
+     * @return every entry as formula, index, label and the bits of its key, best first.
+     */
+    private static List<String> entries(TopEntries entries) {
+        List<String> visited = new ArrayList<>();
+
+        entries.forEach(new TopEntries.EntryVisitor() {
+            @Override
+            public void visit(Formula formula, int index, Standard standard, double key) {
+                visited.add(formula + " " + index + " " + standard + " " + Double.doubleToRawLongBits(key));
+            }
+
+            @Override
+            public void visit(QualitativeFormula formula, int index, Standard standard, double key) {
+                visited.add(formula + " " + index + " " + standard + " " + Double.doubleToRawLongBits(key));
+            }
+        });
+
+        return visited;
+    }
+}
@@ -0,0 +1,74 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * With at least as many candidates as standards the cascade ranks exactly as the full scan,
+ * including ties between repeated standards.
+ */
+class CascadeFilterTest {
+    private static final int INPUTS = 100;
+    private static final int STANDARDS = 60;
+    private static final int K = 5;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @CsvSource({"8, 8, 0, 1, 60, 1", "8, 8, 0, 1, 61, 2", "5, 7, -2, 3, 60, 3", "16, 4, 0, 3, 1000, 4"})
+    void allCandidatesRankAsFullScan(int width, int height, int minCell, int maxCell, int candidates, int seed) {
+        Random random = new Random(seed);
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        for (int i = 0; i < STANDARDS; i++) {
+            Standard standard = Standard.values()[i % Standard.values().length];
+            // every third standard repeats an earlier one, so equal distances are common
+            Character source = i % 3 == 2
+                    ? standards.get(random.nextInt(i))
+                    : glyph(random, width, height, minCell, maxCell);
+
+            standards.add(Character.of(source.getCells(), width, height, standard));
+        }
+
+        for (Standard standard : Standard.values()) {
+            metadata.add(Character.of(glyph(random, width, height, 0, 3).getCells(), width, height, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, metadata);
+        CascadeFilter filter = new CascadeFilter(candidates);
+
+        for (int i = 0; i < INPUTS; i++) {
+            Character input = glyph(random, width, height, minCell, maxCell);
+
+            for (Formula formula : Formula.values()) {
+                Ranking exact = determinant.rank(input, library, K, formula);
+                Ranking cascade = filter.rank(input, library, K, formula);
+
+                assertEquals(exact.toString(), cascade.toString(), formula.name());
+                assertEquals(determinant.determineCharacter(input, library, formula),
+                        filter.determineCharacter(input, library, formula), formula.name());
+            }
+        }
+    }
+
+    private static Character glyph(Random random, int width, int height, int min, int max) {
+        int[] cells = new int[width * height];
+
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, width, height, Standard.A);
+    }
+}
@@ -0,0 +1,117 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Winners of the early abandoning scans against a full scan of every cell of every standard, for glyphs of one
+ * and of many rows, standards repeated later in the library and weights of both signs.
+ */
+class CharacterDeterminantTest {
+    private static final int INPUTS = 200;
+    private static final Formula[] ABANDONING_FORMULAS = {
+            Formula.WITH_SQUARE_ROOT, Formula.WITH_MODULE, Formula.WITH_COEFFICIENT, Formula.WITH_MODULE_AND_FRACTION
+    };
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @CsvSource({"5, 5, 0, 1, 1", "16, 16, 0, 1, 2", "3, 4, -1, 2, 3", "64, 2, -2, 2, 4", "1, 40, 0, 1, 5"})
+    void winnersMatchFullScan(int width, int height, int minCell, int maxCell, int seed) {
+        Random random = new Random(seed);
+
+        for (int minWeight : new int[]{1, 0, -2}) {
+            List<Character> standards = new ArrayList<>();
+            List<Character> metadata = new ArrayList<>();
+
+            for (Standard standard : Standard.values()) {
+                // the second half repeats cells of the first half, so equal distances are common
+                Character source = standard.ordinal() < Standard.values().length / 2
+                        ? glyph(random, width, height, minCell, maxCell, standard)
+                        : standards.get(standard.ordinal() - Standard.values().length / 2);
+
+                standards.add(Character.of(source.getCells(), width, height, standard));
+                metadata.add(glyph(random, width, height, minWeight, 3, standard));
+            }
+
+            for (int i = 0; i < INPUTS; i++) {
+                Character input = glyph(random, width, height, minCell, maxCell, Standard.A);
+
+                for (Formula formula : ABANDONING_FORMULAS) {
+                    assertEquals(nearestByFullScan(input, standards, metadata, formula),
+                            determinant.determineCharacter(input, standards, metadata, formula), formula.name());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums every cell, orders a negative weighted sum after every number as its NaN root, the later standard wins a tie.
+     */
+    private static Standard nearestByFullScan(Character input, List<Character> standards, List<Character> metadata,
+                                              Formula formula) {
+        double min = Double.NaN;
+        Standard nearest = null;
+
+        for (int i = 0; i < standards.size(); i++) {
+            double sum = fullSum(input.getCells(), standards.get(i).getCells(), metadata.get(i).getCells(), formula);
+
+            if (sum < 0) {
+                sum = Double.NaN;
+            }
+
+            if (nearest == null || Double.compare(sum, min) <= 0) {
+                min = sum;
+                nearest = standards.get(i).getStandard();
+            }
+        }
+
+        return nearest;
+    }
+
+    private static double fullSum(int[] input, int[] standard, int[] weights, Formula formula) {
+        double sum = 0;
+
+        for (int k = 0; k < input.length; k++) {
+            double difference = input[k] - (double) standard[k];
+
+            switch (formula) {
+                case WITH_SQUARE_ROOT:
+                    sum += difference * difference;
+                    break;
+                case WITH_MODULE:
+                    sum += Math.abs(difference);
+                    break;
+                case WITH_COEFFICIENT:
+                    sum += weights[k] * (difference * difference);
+                    break;
+                case WITH_MODULE_AND_FRACTION:
+                    sum += (Math.abs(difference) + 1) / (Math.abs(input[k] + (double) standard[k]) + 1);
+                    break;
+                default:
+                    throw new IllegalArgumentException(formula.name());
+            }
+        }
+
+        return sum;
+    }
+
+    private static Character glyph(Random random, int width, int height, int min, int max, Standard standard) {
+        int[] cells = new int[width * height];
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, width, height, standard);
+    }
+}
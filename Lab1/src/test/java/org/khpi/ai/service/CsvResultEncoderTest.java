@@ -0,0 +1,29 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvResultEncoderTest {
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    void quotesFieldsWithDelimitersQuotesAndLineBreaks() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (ResultSink sink = new ResultSink(output, ResultSink.Format.CSV, FormulaSelection.parse("DYCE"),
+                "record", true)) {
+            sink.writeError("a,b.csv", "say \"hi\"", "line\nbreak");
+            sink.writeError("plain.csv", null, "Cannot find min value");
+        }
+
+        assertEquals("record,label,DYCE" + NL
+                        + "\"a,b.csv\",\"say \"\"hi\"\"\",\"error: line\nbreak\"" + NL
+                        + "plain.csv,,error: Cannot find min value" + NL,
+                output.toString(StandardCharsets.UTF_8));
+    }
+}
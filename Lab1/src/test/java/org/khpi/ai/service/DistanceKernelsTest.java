@@ -0,0 +1,80 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Vector kernels against the scalar reference. Runs on Java 17+, where the {@code vector} profile puts
+ * the multi-release classes on the test class path, and is skipped elsewhere.
+ */
+class DistanceKernelsTest {
+    private static final int OFFSET = 5;
+    private static final int FROM = 3;
+
+    private static final DistanceKernels SCALAR = new ScalarDistanceKernels();
+    private static DistanceKernels vector;
+
+    @BeforeAll
+    static void loadVectorKernels() {
+        vector = DistanceKernels.load();
+        assumeTrue(!(vector instanceof ScalarDistanceKernels), "Vector API kernels are not available");
+    }
+
+    /**
+     * Lengths around every lane count up to 16, so the tail loop runs with each remainder, and glyph sizes.
+     */
+    static IntStream lengths() {
+        return IntStream.concat(IntStream.rangeClosed(0, 70), IntStream.of(16 * 16, 31 * 33, 100 * 100));
+    }
+
+    @ParameterizedTest
+    @MethodSource("lengths")
+    void binaryCellsMatch(int length) {
+        assertKernelsMatch(length, 0, 1, 0, 1);
+    }
+
+    @ParameterizedTest
+    @MethodSource("lengths")
+    void negativeCellsMatch(int length) {
+        assertKernelsMatch(length, -8, 8, -3, 5);
+    }
+
+    /**
+     * Scans {@code [FROM, FROM + length)} with standard cells read at {@code OFFSET + k}, as templates stored
+     * back to back are.
+     */
+    private static void assertKernelsMatch(int length, int minCell, int maxCell, int minWeight, int maxWeight) {
+        Random random = new Random(length * 31L + minCell);
+        final int to = FROM + length;
+        int[] input = cells(random, to, minCell, maxCell);
+        int[] standard = cells(random, OFFSET + to, minCell, maxCell);
+        int[] weights = cells(random, to, minWeight, maxWeight);
+        final double sum = random.nextInt(10);
+
+        assertEquals(SCALAR.addSquaredDifferences(sum, input, standard, OFFSET, FROM, to),
+                vector.addSquaredDifferences(sum, input, standard, OFFSET, FROM, to));
+        assertEquals(SCALAR.addAbsoluteDifferences(sum, input, standard, OFFSET, FROM, to),
+                vector.addAbsoluteDifferences(sum, input, standard, OFFSET, FROM, to));
+        assertEquals(SCALAR.addWeightedSquaredDifferences(sum, input, standard, OFFSET, weights, FROM, to),
+                vector.addWeightedSquaredDifferences(sum, input, standard, OFFSET, weights, FROM, to));
+        assertEquals(SCALAR.addFractions(sum, input, standard, OFFSET, FROM, to),
+                vector.addFractions(sum, input, standard, OFFSET, FROM, to));
+    }
+
+    private static int[] cells(Random random, int length, int min, int max) {
+        int[] cells = new int[length];
+
+        for (int i = 0; i < length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return cells;
+    }
+}
@@ -0,0 +1,118 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.FormulaResults;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Fused winners against {@link CharacterDeterminant} per formula, for 0/1 glyphs scored by the lookup path,
+ * for glyphs with other cells scored term by term and for negative weights that make every weighted distance NaN.
+ */
+class FusedScoringEngineTest {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 9;
+    private static final int INPUTS = 200;
+
+    private final FusedScoringEngine engine = new FusedScoringEngine();
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void binaryGlyphsMatch(int seed) {
+        Random random = new Random(seed);
+        Library library = library(random, 0, 1);
+
+        for (int i = 0; i < INPUTS; i++) {
+            assertWinnersMatch(glyph(random, 0, 1, Standard.A), library);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, 0})
+    void nonBinaryGlyphsMatch(int minCell) {
+        Random random = new Random(-minCell);
+        Library library = library(random, minCell, 2);
+
+        for (int i = 0; i < INPUTS; i++) {
+            assertWinnersMatch(glyph(random, 0, 1, Standard.A), library);
+            assertWinnersMatch(glyph(random, minCell, 2, Standard.A), library);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void nanDistancesStillPickAStandard(int seed) {
+        Random random = new Random(seed);
+        Library library = library(random, 0, 1, -2, -1);
+
+        for (int i = 0; i < INPUTS; i++) {
+            Character input = glyph(random, 0, 1, Standard.A);
+
+            assertNotNull(engine.determine(input, library.standards, library.metadata)
+                    .getStandard(Formula.WITH_COEFFICIENT));
+            assertWinnersMatch(input, library);
+        }
+    }
+
+    private void assertWinnersMatch(Character input, Library library) {
+        FormulaResults results = engine.determine(input, library.standards, library.metadata);
+
+        for (Formula formula : Formula.values()) {
+            assertEquals(determinant.determineCharacter(input, library.standards, library.metadata, formula),
+                    results.getStandard(formula), formula.name());
+        }
+
+        List<ToDoubleFunction<Character>> functions = List.of(
+                standard -> determinant.computeByRussellAndRao(input, standard),
+                standard -> determinant.computeByJokardAndNeedman(input, standard),
+                standard -> determinant.computeByDyce(input, standard),
+                standard -> determinant.computeBySokalAndSnif(input, standard));
+        List<Standard> winners = determinant.determineCharacterWithParameters(input, library.standards, functions);
+
+        for (QualitativeFormula formula : QualitativeFormula.values()) {
+            assertEquals(winners.get(formula.ordinal()), results.getStandard(formula), formula.name());
+        }
+    }
+
+    private static Library library(Random random, int minCell, int maxCell) {
+        return library(random, minCell, maxCell, 1, 4);
+    }
+
+    private static Library library(Random random, int minCell, int maxCell, int minWeight, int maxWeight) {
+        Library library = new Library();
+
+        for (Standard standard : Standard.values()) {
+            library.standards.add(glyph(random, minCell, maxCell, standard));
+            library.metadata.add(glyph(random, minWeight, maxWeight, standard));
+        }
+
+        return library;
+    }
+
+    private static Character glyph(Random random, int min, int max, Standard standard) {
+        int[] cells = new int[WIDTH * HEIGHT];
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, WIDTH, HEIGHT, standard);
+    }
+
+    private static class Library {
+        private final List<Character> standards = new ArrayList<>();
+        private final List<Character> metadata = new ArrayList<>();
+    }
+}
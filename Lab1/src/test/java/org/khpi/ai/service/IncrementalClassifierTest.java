@@ -0,0 +1,142 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Answers committed row by row against {@link CharacterDeterminant} scoring the whole glyph, for every formula
+ * that is a sum of cell terms: standards repeated under later labels, weights of both signs and inputs
+ * from a cell range wider than the one of the standards. An answer never changes once it is committed.
+ */
+class IncrementalClassifierTest {
+    private static final int INPUTS = 100;
+    private static final int STANDARDS = 40;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @CsvSource({
+            "5, 5, 0, 1, 1, 0, 1",
+            "8, 6, 0, 1, 0, 0, 2",
+            "6, 7, -2, 3, -2, 0, 3",
+            "4, 9, 0, 1, 1, 2, 4",
+            "7, 3, -1, 2, -1, 3, 5",
+            "1, 12, 0, 3, 0, 1, 6",
+            "12, 1, 0, 1, 1, 0, 7"
+    })
+    void committedAnswersMatchWholeGlyph(int width, int height, int minCell, int maxCell, int minWeight, int widening,
+                                         int seed) {
+        Random random = new Random(seed);
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        for (int j = 0; j < STANDARDS; j++) {
+            Standard standard = Standard.values()[j % Standard.values().length];
+            // every third standard repeats an earlier one under its own label, so the later one has to win the tie
+            Character source = j % 3 == 2
+                    ? standards.get(random.nextInt(j))
+                    : glyph(random, width, height, minCell, maxCell, standard);
+
+            standards.add(Character.of(source.getCells(), width, height, standard));
+        }
+
+        for (Standard standard : Standard.values()) {
+            metadata.add(glyph(random, width, height, minWeight, 3, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, metadata);
+        final int minInput = Math.min(0, minCell) - widening;
+        final int maxInput = Math.max(1, maxCell) + widening;
+
+        for (Formula formula : Formula.values()) {
+            if (formula == Formula.WITH_ARCCOS) {
+                continue;
+            }
+
+            IncrementalClassifier classifier = widening == 0
+                    ? new IncrementalClassifier(library, formula)
+                    : new IncrementalClassifier(library, formula, minInput, maxInput);
+            assertEquals(minInput, classifier.getMinCell());
+            assertEquals(maxInput, classifier.getMaxCell());
+
+            for (int i = 0; i < INPUTS; i++) {
+                // some inputs copy a standard, so zero distances tie with its repeats
+                Character input = i % 4 == 0
+                        ? standards.get(random.nextInt(STANDARDS))
+                        : glyph(random, width, height, minInput, maxInput, Standard.A);
+                final String message = formula + " input " + i;
+                IncrementalClassifier.Session session = classifier.start();
+                Standard committed = null;
+
+                for (int row = 0; row < height; row++) {
+                    final int from = row * width;
+                    final boolean done = session.accept(Arrays.copyOfRange(input.getCells(), from, from + width));
+
+                    assertEquals(done, session.isCommitted(), message);
+                    assertEquals(row + 1, session.getRows(), message);
+                    assertTrue(session.getCandidates() >= 1, message);
+
+                    if (committed == null && done) {
+                        committed = session.getStandard();
+                    } else if (committed != null) {
+                        assertEquals(committed, session.getStandard(), message + " row " + row);
+                    }
+                }
+
+                assertTrue(session.isCommitted(), message);
+                assertEquals(determinant.determineCharacter(input, library, formula), session.getStandard(), message);
+                assertThrows(IllegalArgumentException.class, () -> session.accept(new int[width]), message);
+            }
+        }
+    }
+
+    @Test
+    void malformedRowsAreRejected() {
+        Random random = new Random(1);
+        List<Character> standards = new ArrayList<>();
+
+        for (Standard standard : new Standard[]{Standard.A, Standard.B, Standard.C}) {
+            standards.add(glyph(random, 3, 4, 0, 1, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, List.of());
+        IncrementalClassifier classifier = new IncrementalClassifier(library, Formula.WITH_MODULE, 0, 2);
+        IncrementalClassifier.Session session = classifier.start();
+
+        assertThrows(IllegalArgumentException.class, () -> session.accept(new int[2]));
+        assertThrows(IllegalArgumentException.class, () -> session.accept(new int[]{0, 3, 1}));
+        assertThrows(IllegalArgumentException.class, () -> session.accept(new int[]{-1, 0, 1}));
+        assertEquals(0, session.getRows());
+        assertFalse(session.isCommitted());
+        assertThrows(IllegalStateException.class, session::getStandard);
+
+        assertThrows(IllegalArgumentException.class, () -> new IncrementalClassifier(library, Formula.WITH_ARCCOS));
+        assertThrows(IllegalArgumentException.class, () -> new IncrementalClassifier(library, Formula.WITH_MODULE, 2, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IncrementalClassifier(PreparedLibrary.prepare(List.of(), List.of()), Formula.WITH_MODULE));
+    }
+
+    private static Character glyph(Random random, int width, int height, int min, int max, Standard standard) {
+        int[] cells = new int[width * height];
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, width, height, standard);
+    }
+}
@@ -0,0 +1,132 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.CharacterDeterminant.QualitativeFormula;
+import org.khpi.ai.service.LibraryShard.Assignment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Shards of both assignments against the whole library: every standard is owned by exactly one shard,
+ * and entries of all shards merged in any order rank as {@link CharacterDeterminant} over the whole library,
+ * including ties between repeated standards and k above the size of a shard.
+ */
+class LibraryShardTest {
+    private static final int INPUTS = 30;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @CsvSource({
+            "RANGE, 1, 30, 5, 1", "RANGE, 3, 30, 5, 2", "RANGE, 7, 31, 40, 3", "RANGE, 31, 31, 1, 4",
+            "ROUND_ROBIN, 1, 30, 5, 5", "ROUND_ROBIN, 4, 30, 5, 6", "ROUND_ROBIN, 7, 31, 40, 7",
+            "ROUND_ROBIN, 31, 31, 2, 8"
+    })
+    void mergedShardsRankAsWholeLibrary(Assignment assignment, int shards, int librarySize, int k, int seed) {
+        Random random = new Random(seed);
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        for (int j = 0; j < librarySize; j++) {
+            Standard standard = Standard.values()[j % Standard.values().length];
+            // every third standard repeats an earlier one under its own label, so ties cross shard boundaries
+            Character source = j % 3 == 2
+                    ? standards.get(random.nextInt(j))
+                    : glyph(random, 5, 4, 0, 1, standard);
+
+            standards.add(Character.of(source.getCells(), 5, 4, standard));
+        }
+
+        for (Standard standard : Standard.values()) {
+            metadata.add(glyph(random, 5, 4, -1, 3, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, metadata);
+        List<LibraryShard> parts = new ArrayList<>();
+        int[] owners = new int[librarySize];
+
+        for (int shard = 0; shard < shards; shard++) {
+            LibraryShard part = LibraryShard.of(library, assignment, shard, shards);
+            assertEquals(shard, part.getShard());
+            assertEquals(shards, part.getShards());
+            assertTrue(part.size() > 0, "shard " + shard);
+
+            for (int i = 0; i < part.size(); i++) {
+                final int global = part.getGlobalIndex(i);
+                owners[global]++;
+
+                assertTrue(i == 0 || part.getGlobalIndex(i - 1) < global, "shard " + shard + " index " + i);
+                assertEquals(assignment == Assignment.RANGE ? part.getGlobalIndex(0) + i : shard + i * shards,
+                        global, "shard " + shard + " index " + i);
+                assertArrayEquals(library.getStandard(global).getCells(), part.getLibrary().getStandard(i).getCells());
+            }
+
+            parts.add(part);
+        }
+
+        for (int global = 0; global < librarySize; global++) {
+            assertEquals(1, owners[global], "standard " + global);
+        }
+
+        for (int i = 0; i < INPUTS; i++) {
+            // some inputs copy a standard, so zero distances tie with its repeats in other shards
+            Character input = i % 3 == 0
+                    ? standards.get(random.nextInt(librarySize))
+                    : glyph(random, 5, 4, 0, 1, Standard.A);
+            TopEntries merged = new TopEntries(k);
+            TopEntries reversed = new TopEntries(k);
+
+            for (int shard = 0; shard < shards; shard++) {
+                merged.merge(parts.get(shard).top(input, FormulaSelection.all(), k));
+                reversed.merge(parts.get(shards - 1 - shard).top(input, FormulaSelection.all(), k));
+            }
+
+            for (Formula formula : Formula.values()) {
+                final String expected = determinant.rank(input, library, k, formula).toString();
+                assertEquals(expected, merged.getRanking(formula).toString(), formula + " input " + i);
+                assertEquals(expected, reversed.getRanking(formula).toString(), formula + " input " + i);
+            }
+
+            for (QualitativeFormula formula : QualitativeFormula.values()) {
+                final String expected = determinant.rank(input, library, k, formula).toString();
+                assertEquals(expected, merged.getRanking(formula).toString(), formula + " input " + i);
+                assertEquals(expected, reversed.getRanking(formula).toString(), formula + " input " + i);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"RANGE, -1, 2", "RANGE, 2, 2", "ROUND_ROBIN, 0, 0", "ROUND_ROBIN, 0, 4"})
+    void illegalShardsAreRejected(Assignment assignment, int shard, int shards) {
+        Random random = new Random(shards);
+        List<Character> standards = new ArrayList<>();
+
+        for (Standard standard : new Standard[]{Standard.A, Standard.B, Standard.C}) {
+            standards.add(glyph(random, 3, 3, 0, 1, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, List.of());
+        assertThrows(IllegalArgumentException.class, () -> LibraryShard.of(library, assignment, shard, shards));
+    }
+
+    private static Character glyph(Random random, int width, int height, int min, int max, Standard standard) {
+        int[] cells = new int[width * height];
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, width, height, standard);
+    }
+}
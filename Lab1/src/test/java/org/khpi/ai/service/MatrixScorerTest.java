@@ -0,0 +1,106 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.ScoreMatrix;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Scores and nearest standards of the tiled matrix against {@link CharacterDeterminant} for every formula,
+ * for libraries that do not fill their last standard tile, glyphs spanning several cell tiles, standards
+ * repeated under later labels and weights of both signs.
+ */
+class MatrixScorerTest {
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @CsvSource({
+            "5, 5, 0, 1, 1, 70, 9, 1, 1",
+            "17, 17, 0, 1, 0, 130, 20, 3, 2",
+            "17, 17, -2, 3, -1, 130, 20, 2, 3",
+            "20, 16, 0, 1, 1, 65, 17, 4, 4",
+            "3, 4, -3, 3, -2, 1, 5, 1, 5",
+            "1, 300, 0, 5, 0, 64, 8, 2, 6"
+    })
+    void scoresMatchCharacterDeterminant(int width, int height, int minCell, int maxCell, int minWeight,
+                                         int librarySize, int inputCount, int parallelism, int seed)
+            throws InterruptedException {
+        Random random = new Random(seed);
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        for (int j = 0; j < librarySize; j++) {
+            Standard standard = Standard.values()[j % Standard.values().length];
+            // every fourth standard repeats an earlier one under its own label, so the later one has to win the tie
+            Character source = j % 4 == 3
+                    ? standards.get(random.nextInt(j))
+                    : glyph(random, width, height, minCell, maxCell, standard);
+
+            standards.add(Character.of(source.getCells(), width, height, standard));
+        }
+
+        for (Standard standard : Standard.values()) {
+            metadata.add(glyph(random, width, height, minWeight, 3, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, metadata);
+        List<Character> inputs = new ArrayList<>();
+
+        for (int i = 0; i < inputCount; i++) {
+            // some inputs copy a standard, so zero distances and ties are scored as well
+            inputs.add(i % 3 == 0
+                    ? standards.get(random.nextInt(librarySize))
+                    : glyph(random, width, height, minCell, maxCell, Standard.A));
+        }
+
+        MatrixScorer scorer = new MatrixScorer(parallelism);
+
+        for (Formula formula : Formula.values()) {
+            ScoreMatrix matrix = scorer.score(inputs, library, formula);
+            ScoreMatrix nearest = scorer.nearest(inputs, library, formula);
+            assertFalse(nearest.hasScores());
+
+            for (int i = 0; i < inputs.size(); i++) {
+                Character input = inputs.get(i);
+                TopStandards top = determinant.top(input, library, librarySize, formula);
+                top.sort();
+
+                for (int position = 0; position < top.size(); position++) {
+                    assertEquals(score(top.getKey(position), formula), matrix.getScore(i, top.getIndex(position)),
+                            formula + " input " + i + " standard " + top.getIndex(position));
+                }
+
+                final String message = formula + " input " + i;
+                assertEquals(top.getIndex(0), matrix.getNearestIndex(i), message);
+                assertEquals(top.getIndex(0), nearest.getNearestIndex(i), message);
+                assertEquals(determinant.determineCharacter(input, library, formula), matrix.getNearest(i), message);
+                assertEquals(matrix.getNearest(i), nearest.getNearest(i), message);
+            }
+        }
+    }
+
+    private static double score(double key, Formula formula) {
+        return formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_COEFFICIENT
+                ? Math.sqrt(key)
+                : key;
+    }
+
+    private static Character glyph(Random random, int width, int height, int min, int max, Standard standard) {
+        int[] cells = new int[width * height];
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, width, height, standard);
+    }
+}
@@ -0,0 +1,156 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Label;
+import org.khpi.ai.model.Template;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+import org.khpi.ai.service.OffHeapTemplateStore.Encoding;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Templates and weights read back from the records, across chunks grown by doubling and the trimmed last chunk,
+ * and k-NN results of the store against a {@link TemplateLibrary} of the same templates.
+ */
+class OffHeapTemplateStoreTest {
+    private static final int LABELS = 7;
+
+    @ParameterizedTest
+    @CsvSource({
+            "NIBBLE, 5, 5, 1000, 300", "NIBBLE, 4, 4, 67108864, 40", "NIBBLE, 1, 1, 64, 17",
+            "BYTE, 3, 7, 2000, 500", "BYTE, 8, 8, 67108864, 16",
+            "UNSIGNED_BYTE, 5, 3, 900, 333", "UNSIGNED_BYTE, 1, 1, 16, 5"
+    })
+    void templatesRoundTrip(Encoding encoding, int width, int height, int chunkBytes, int count) {
+        Random random = new Random(count);
+        LabelRegistry registry = new LabelRegistry();
+        OffHeapTemplateStore.Builder builder = new OffHeapTemplateStore.Builder(encoding, chunkBytes);
+        List<Template> templates = templates(random, registry, encoding, width, height, count);
+        List<Character> weights = new ArrayList<>();
+
+        for (Template template : templates) {
+            builder.add(template);
+        }
+
+        for (int id = 0; id < LABELS; id += 2) {
+            weights.add(glyph(random, encoding, width, height));
+            builder.addWeights(registry.get(id), weights.get(weights.size() - 1));
+        }
+
+        OffHeapTemplateStore store = builder.build();
+        OffHeapTemplateStore.Reader reader = store.reader();
+        assertEquals(count, store.size());
+
+        for (int i = 0; i < count; i++) {
+            final Character expected = templates.get(i).getCharacter();
+
+            assertEquals(templates.get(i).getLabel(), store.getLabel(i), "template " + i);
+            assertEquals(templates.get(i).getLabel().getId(), reader.labelId(i), "template " + i);
+            assertArrayEquals(expected.getCells(), store.getTemplate(i).getCells(), "template " + i);
+            assertEquals(PreparedLibrary.norm(expected), Math.sqrt(reader.squares(i)), "template " + i);
+            assertEquals(PreparedLibrary.absoluteSum(expected), reader.absoluteSum(i), "template " + i);
+        }
+
+        for (int id = 0; id < LABELS; id++) {
+            assertEquals(id % 2 == 0, store.hasWeights(registry.get(id)));
+
+            if (id % 2 == 0) {
+                assertArrayEquals(weights.get(id / 2).getCells(), reader.weights(id).getCells());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"NIBBLE, 6, 6, 1", "BYTE, 5, 7, 2", "UNSIGNED_BYTE, 4, 9, 3"})
+    void neighboursMatchTemplateLibrary(Encoding encoding, int width, int height, int seed) {
+        Random random = new Random(seed);
+        LabelRegistry registry = new LabelRegistry();
+        List<Template> templates = templates(random, registry, encoding, width, height, 300);
+        TemplateLibrary library = TemplateLibrary.of(templates);
+
+        // the store keeps the order of adding, grouping by label id gives the order of the library
+        templates.sort(Comparator.comparingInt(template -> template.getLabel().getId()));
+        OffHeapTemplateStore.Builder builder = new OffHeapTemplateStore.Builder(encoding, 4096);
+        templates.forEach(builder::add);
+        OffHeapTemplateStore store = builder.build();
+        KnnClassifier classifier = new KnnClassifier();
+
+        for (int i = 0; i < 50; i++) {
+            // some inputs copy a template, which has equal copies under other labels
+            Character input = i % 3 == 0
+                    ? templates.get(random.nextInt(templates.size())).getCharacter()
+                    : glyph(random, encoding, width, height);
+
+            for (Formula formula : Formula.values()) {
+                if (formula == Formula.WITH_COEFFICIENT) {
+                    continue;
+                }
+
+                for (int k : new int[]{1, 5}) {
+                    assertEquals(classifier.classify(input, library, k, formula).toString(),
+                            classifier.classify(input, store, k, formula).toString(), formula + " k " + k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void valuesOutsideOfEncodingAreRejected() {
+        Label label = new LabelRegistry().register("a");
+
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapTemplateStore.Builder(Encoding.NIBBLE)
+                .add(label, Character.of(new int[]{0, 16}, 2, 1, null)));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapTemplateStore.Builder(Encoding.BYTE)
+                .add(label, Character.of(new int[]{-128, 128}, 2, 1, null)));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapTemplateStore.Builder(Encoding.UNSIGNED_BYTE)
+                .add(label, Character.of(new int[]{255, -1}, 2, 1, null)));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapTemplateStore.Builder(Encoding.UNSIGNED_BYTE)
+                .add(label, Character.of(new int[]{0, 1}, 2, 1, null))
+                .addWeights(label, Character.of(new int[]{256, 1}, 2, 1, null)));
+    }
+
+    /**
+     * Templates of random labels, every fifth repeating an earlier template under its own label, cells covering
+     * both ends of the range of the encoding.
+     */
+    private static List<Template> templates(Random random, LabelRegistry registry, Encoding encoding, int width,
+                                            int height, int count) {
+        for (int id = 0; id < LABELS; id++) {
+            registry.register("label" + id);
+        }
+
+        List<Template> templates = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Character glyph = i % 5 == 4
+                    ? templates.get(random.nextInt(i)).getCharacter()
+                    : glyph(random, encoding, width, height);
+
+            templates.add(new Template(registry.get(random.nextInt(LABELS)), glyph));
+        }
+
+        return templates;
+    }
+
+    private static Character glyph(Random random, Encoding encoding, int width, int height) {
+        int[] cells = new int[width * height];
+
+        for (int k = 0; k < cells.length; k++) {
+            final int draw = random.nextInt(8);
+            cells[k] = draw == 0 ? encoding.getMin()
+                    : draw == 1 ? encoding.getMax()
+                    : encoding.getMin() + random.nextInt(encoding.getMax() - encoding.getMin() + 1);
+        }
+
+        return Character.of(cells, width, height, null);
+    }
+}
@@ -0,0 +1,151 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.api.Test;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Eviction within one segment, results never crossing libraries, and keys told apart by their cells
+ * when their hashes are equal.
+ */
+class ResultCacheTest {
+    private static final Formula FORMULA = Formula.WITH_MODULE;
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @Test
+    void segmentEvictsItsLeastRecentlyUsedEntry() {
+        // two entries per segment
+        ResultCache cache = new ResultCache(2 * ResultCache.SEGMENTS);
+        Object library = new Object();
+        List<Character> sameSegment = glyphsOfSegment(0, 3);
+        Character first = sameSegment.get(0);
+        Character second = sameSegment.get(1);
+        Character third = sameSegment.get(2);
+        Character other = glyphsOfSegment(1, 1).get(0);
+
+        get(cache, first, library);
+        get(cache, second, library);
+        get(cache, first, library);
+        get(cache, other, library);
+        get(cache, third, library);
+        assertEquals(4, computations.get());
+        assertEquals(1, cache.getHits());
+
+        // second was the least recently used of segment 0, the entry of segment 1 did not count
+        get(cache, first, library);
+        get(cache, third, library);
+        get(cache, other, library);
+        assertEquals(4, computations.get());
+
+        get(cache, second, library);
+        assertEquals(5, computations.get());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void changedLibraryDropsEveryResult() {
+        ResultCache cache = new ResultCache(64);
+        Random random = new Random(1);
+        List<Character> standards = Collections.singletonList(glyph(random, Standard.A));
+        PreparedLibrary snapshot = PreparedLibrary.prepare(standards, Collections.emptyList(), 1);
+        PreparedLibrary reloaded = PreparedLibrary.prepare(standards, Collections.emptyList(), 2);
+        Character input = glyph(random, Standard.A);
+
+        assertEquals("1", cache.get(input, FORMULA, snapshot, () -> "1"));
+        assertEquals("1", cache.get(input, FORMULA, snapshot, () -> "unused"));
+        assertEquals(1, cache.size());
+
+        assertEquals("2", cache.get(input, FORMULA, reloaded, () -> "2"));
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.size());
+
+        // going back to an older snapshot does not revive its results
+        assertEquals("3", cache.get(input, FORMULA, snapshot, () -> "3"));
+        assertEquals(3, cache.getInvalidations());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertEquals("4", cache.get(input, FORMULA, snapshot, () -> "4"));
+    }
+
+    @Test
+    void equalHashesAreToldApartByCells() {
+        ResultCache cache = new ResultCache(64);
+        Object library = new Object();
+        Map<Integer, Character> byHash = new HashMap<>();
+        Random random = new Random(2);
+        Character first;
+        Character second;
+
+        while (true) {
+            Character glyph = glyph(random, Standard.A);
+            first = byHash.putIfAbsent(ResultCache.keyHash(glyph, FORMULA), glyph);
+
+            if (first != null && !Arrays.equals(first.getCells(), glyph.getCells())) {
+                second = glyph;
+                break;
+            }
+        }
+
+        assertEquals(ResultCache.keyHash(first, FORMULA), ResultCache.keyHash(second, FORMULA));
+        Object firstResult = new Object();
+        Object secondResult = new Object();
+
+        assertSame(firstResult, cache.get(first, FORMULA, library, () -> firstResult));
+        assertSame(secondResult, cache.get(second, FORMULA, library, () -> secondResult));
+        assertSame(firstResult, cache.get(first, FORMULA, library, () -> null));
+        assertSame(secondResult, cache.get(second, FORMULA, library, () -> null));
+        assertEquals(2, cache.size());
+
+        // equal cells under another formula are another key
+        assertEquals("other", cache.get(first, Formula.WITH_SQUARE_ROOT, library, () -> "other"));
+    }
+
+    private void get(ResultCache cache, Character glyph, Object library) {
+        cache.get(glyph, FORMULA, library, computations::incrementAndGet);
+    }
+
+    private static List<Character> glyphsOfSegment(int segment, int count) {
+        Random random = new Random(segment);
+        List<Character> glyphs = new ArrayList<>();
+
+        while (glyphs.size() < count) {
+            Character glyph = glyph(random, Standard.A);
+
+            if (ResultCache.segmentIndex(ResultCache.keyHash(glyph, FORMULA)) == segment) {
+                glyphs.add(glyph);
+            }
+        }
+
+        return glyphs;
+    }
+
+    /**
+     * 6x6 glyph of cells 0..3, 4^36 glyphs make repeated draws unlikely but still leave 32 bit hash collisions.
+     */
+    private static Character glyph(Random random, Standard standard) {
+        int[] cells = new int[36];
+
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = random.nextInt(4);
+        }
+
+        return Character.of(cells, 6, 6, standard);
+    }
+}
@@ -0,0 +1,149 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Alignment;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+import org.khpi.ai.service.CharacterDeterminant.Formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Alignments of the bounded offset search against scoring every shifted input with {@link CharacterDeterminant}:
+ * the best offset of a standard is the nearest one of its smallest distance, the later standard wins a tie.
+ * Covers the summed-area bounds, the packed bits of 0/1 glyphs and the aligned-only matcher.
+ */
+class ShiftTolerantMatcherTest {
+    private static final int INPUTS = 40;
+    private static final int STANDARDS = 30;
+
+    private final CharacterDeterminant determinant = new CharacterDeterminant();
+
+    @ParameterizedTest
+    @CsvSource({
+            "6, 6, 0, 1, 1, 1, 1",
+            "8, 5, 0, 1, 0, 2, 2",
+            "7, 7, -2, 3, -1, 1, 3",
+            "5, 9, 0, 3, 1, 2, 4",
+            "4, 4, 0, 1, 1, 0, 5",
+            "6, 3, -1, 2, -2, 0, 6",
+            "3, 3, 0, 1, 1, 4, 7"
+    })
+    void alignmentsMatchShiftedFullScan(int width, int height, int minCell, int maxCell, int minWeight, int maxShift,
+                                        int seed) {
+        Random random = new Random(seed);
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+
+        for (int j = 0; j < STANDARDS; j++) {
+            Standard standard = Standard.values()[j % Standard.values().length];
+            // every third standard repeats an earlier one under its own label, so the later one has to win the tie
+            Character source = j % 3 == 2
+                    ? standards.get(random.nextInt(j))
+                    : glyph(random, width, height, minCell, maxCell, standard);
+
+            standards.add(Character.of(source.getCells(), width, height, standard));
+        }
+
+        for (Standard standard : Standard.values()) {
+            metadata.add(glyph(random, width, height, minWeight, 3, standard));
+        }
+
+        PreparedLibrary library = PreparedLibrary.prepare(standards, metadata);
+        ShiftTolerantMatcher matcher = new ShiftTolerantMatcher(maxShift);
+        final int[][] shifts = shifts(maxShift);
+
+        for (int i = 0; i < INPUTS; i++) {
+            // half of the inputs are standards moved within the range, so some offset matches exactly
+            Character input = i % 2 == 0
+                    ? ShiftTolerantMatcher.shift(standards.get(random.nextInt(STANDARDS)),
+                    random.nextInt(2 * maxShift + 1) - maxShift, random.nextInt(2 * maxShift + 1) - maxShift)
+                    : glyph(random, width, height, minCell, maxCell, Standard.A);
+
+            for (Formula formula : Formula.values()) {
+                final String message = formula + " input " + i;
+                Alignment expected = alignByFullScan(input, library, formula, shifts);
+                Alignment actual = matcher.align(input, library, formula);
+
+                assertEquals(expected.getStandard(), actual.getStandard(), message);
+                assertEquals(expected.getScore(), actual.getScore(), message);
+                assertEquals(expected.getRowShift(), actual.getRowShift(), message);
+                assertEquals(expected.getColumnShift(), actual.getColumnShift(), message);
+
+                if (maxShift == 0) {
+                    assertEquals(determinant.rank(input, library, 5, formula).toString(),
+                            matcher.rank(input, library, 5, formula).toString(), message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores the whole library at every offset without bounds or abandoning.
+     */
+    private Alignment alignByFullScan(Character input, PreparedLibrary library, Formula formula, int[][] shifts) {
+        double[] best = new double[library.size()];
+        int[] bestOffsets = new int[library.size()];
+        Arrays.fill(bestOffsets, -1);
+
+        for (int s = 0; s < shifts.length; s++) {
+            Character shifted = ShiftTolerantMatcher.shift(input, shifts[s][0], shifts[s][1]);
+            TopStandards all = determinant.top(shifted, library, library.size(), formula);
+
+            for (int position = 0; position < all.size(); position++) {
+                final int index = all.getIndex(position);
+
+                if (bestOffsets[index] < 0 || Double.compare(all.getKey(position), best[index]) < 0) {
+                    best[index] = all.getKey(position);
+                    bestOffsets[index] = s;
+                }
+            }
+        }
+
+        int nearest = 0;
+        for (int j = 1; j < library.size(); j++) {
+            if (Double.compare(best[j], best[nearest]) <= 0) {
+                nearest = j;
+            }
+        }
+
+        final boolean rooted = formula == Formula.WITH_SQUARE_ROOT || formula == Formula.WITH_COEFFICIENT;
+        final int[] shift = shifts[bestOffsets[nearest]];
+
+        return new Alignment(library.getStandard(nearest).getStandard(),
+                rooted ? Math.sqrt(best[nearest]) : best[nearest], shift[0], shift[1]);
+    }
+
+    /**
+     * @return row and column shifts nearest first, row-major among equally near ones.
+     */
+    private static int[][] shifts(int maxShift) {
+        List<int[]> shifts = new ArrayList<>();
+
+        for (int row = -maxShift; row <= maxShift; row++) {
+            for (int column = -maxShift; column <= maxShift; column++) {
+                shifts.add(new int[]{row, column});
+            }
+        }
+
+        shifts.sort(Comparator.comparingInt(shift -> Math.abs(shift[0]) + Math.abs(shift[1])));
+        return shifts.toArray(new int[0][]);
+    }
+
+    private static Character glyph(Random random, int width, int height, int min, int max, Standard standard) {
+        int[] cells = new int[width * height];
+
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = min + random.nextInt(max - min + 1);
+        }
+
+        return Character.of(cells, width, height, standard);
+    }
+}
@@ -0,0 +1,172 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.khpi.ai.model.Character;
+import org.khpi.ai.model.Standard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamClassifierTest {
+    private static final int SIZE = 3;
+    private static final int VALID_RECORDS = 3;
+    private static final int WRITTEN_BEFORE_FAILURE = 64 * 1024;
+    private static final String FAILURE = "broken pipe";
+    private static final long INPUT_LIMIT = 64L * 1024 * 1024;
+    private static final long READ_AFTER_FAILURE = 4L * 1024 * 1024;
+
+    @ParameterizedTest
+    @EnumSource(StreamClassifier.Format.class)
+    void outputFailureStopsReadingTheInput(StreamClassifier.Format format) {
+        StreamClassifier classifier = new StreamClassifier(library(), FormulaSelection.all(), 2);
+        ResultSink sink = classifier.openSink(new FailingOutput(), ResultSink.Format.CSV);
+        RepeatedInput input = new RepeatedInput(record(format));
+
+        IOException failure = assertThrows(IOException.class, () -> classifier.classify(input, format, sink));
+
+        assertEquals(FAILURE, failure.getMessage());
+        assertTrue(input.read < READ_AFTER_FAILURE, () -> String.format("%d bytes read after the output failed", input.read));
+        assertThrows(IOException.class, sink::close);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StreamClassifier.Format.class)
+    void malformedInputKeepsPrecedingResults(StreamClassifier.Format format) throws IOException {
+        StreamClassifier classifier = new StreamClassifier(library(), FormulaSelection.all(), 2);
+        ByteBuffer input = ByteBuffer.allocate(VALID_RECORDS * record(format).length + Integer.BYTES * 2 + 1);
+
+        for (int i = 0; i < VALID_RECORDS; i++) {
+            input.put(record(format));
+        }
+
+        if (format == StreamClassifier.Format.CSV) {
+            input.put("1,x,0\n".getBytes(StandardCharsets.US_ASCII));
+        } else {
+            input.order(ByteOrder.LITTLE_ENDIAN).putInt(SIZE).putInt(SIZE).put((byte) 0); // frame cut short
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(input.array(), 0, input.position()));
+        Class<? extends Exception> failure = format == StreamClassifier.Format.CSV
+                ? IllegalArgumentException.class
+                : EOFException.class;
+
+        try (ResultSink sink = classifier.openSink(output, ResultSink.Format.CSV)) {
+            assertThrows(failure, () -> classifier.classify(channel, format, sink));
+        }
+
+        String written = output.toString(StandardCharsets.UTF_8);
+        String[] lines = written.split(System.lineSeparator());
+        assertEquals(VALID_RECORDS + 1, lines.length, written);
+
+        for (int i = 1; i <= VALID_RECORDS; i++) {
+            assertTrue(lines[i].startsWith(i + ","), lines[i]);
+        }
+    }
+
+    private static PreparedLibrary library() {
+        List<Character> standards = new ArrayList<>();
+        List<Character> metadata = new ArrayList<>();
+        int[] weights = new int[SIZE * SIZE];
+        Arrays.fill(weights, 1);
+
+        for (Standard standard : Standard.values()) {
+            int[] cells = new int[SIZE * SIZE];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = (standard.ordinal() >> (i % 5)) & 1;
+            }
+
+            standards.add(Character.of(cells, SIZE, SIZE, standard));
+            metadata.add(Character.of(weights, SIZE, SIZE, standard));
+        }
+
+        return PreparedLibrary.prepare(standards, metadata);
+    }
+
+    private static byte[] record(StreamClassifier.Format format) {
+        if (format == StreamClassifier.Format.CSV) {
+            return "# A\n0,1,0\n1,0,1\n0,1,0\n\n".getBytes(StandardCharsets.US_ASCII);
+        }
+
+        return ByteBuffer.allocate(2 * Integer.BYTES + 2).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(SIZE).putInt(SIZE).put((byte) 0b01010101).put((byte) 0b10000000)
+                .array();
+    }
+
+    /**
+     * Repeats one record as an endless input would, up to a limit that only a producer ignoring the failed
+     * output reaches.
+     */
+    private static class RepeatedInput implements ReadableByteChannel {
+        private final byte[] record;
+        private int position;
+        private long read;
+
+        RepeatedInput(byte[] record) {
+            this.record = record;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) {
+            if (read >= INPUT_LIMIT) {
+                return -1;
+            }
+
+            final int length = buffer.remaining();
+
+            while (buffer.hasRemaining()) {
+                buffer.put(record[position]);
+                position = (position + 1) % record.length;
+            }
+
+            read += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Accepts some bytes and then fails every write, as stdout does once its reader is gone.
+     */
+    private static class FailingOutput extends OutputStream {
+        private long written;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (written + length > WRITTEN_BEFORE_FAILURE) {
+                throw new IOException(FAILURE);
+            }
+
+            written += length;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.khpi.ai.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.khpi.ai.model.Ranking;
+import org.khpi.ai.model.ScoredStandard;
+import org.khpi.ai.model.Standard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Kept entries of the bounded heap against a full sort of every offered key: smaller keys first, NaN last,
+ * the later index first on equal keys.
+ */
+class TopStandardsTest {
+    private static final int ROUNDS = 200;
+    private static final double[] KEYS = {0, 0.5, 1, 1, 2, Double.POSITIVE_INFINITY, Double.NaN};
+
+    @ParameterizedTest
+    @CsvSource({"1, 1, 1", "3, 10, 2", "5, 5, 3", "8, 3, 4", "20, 100, 5"})
+    void sortedEntriesMatchFullSort(int capacity, int count, int seed) {
+        Random random = new Random(seed);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            double[] keys = new double[count];
+            TopStandards top = new TopStandards(capacity);
+
+            for (int i = 0; i < count; i++) {
+                keys[i] = KEYS[random.nextInt(KEYS.length)];
+                top.offer(keys[i], i);
+            }
+
+            Integer[] expected = new Integer[count];
+            Arrays.setAll(expected, i -> i);
+            Arrays.sort(expected, Comparator.<Integer>comparingDouble(i -> keys[i])
+                    .thenComparing(Comparator.reverseOrder()));
+
+            assertEquals(Math.min(capacity, count), top.size());
+            top.sort();
+
+            for (int position = 0; position < top.size(); position++) {
+                assertEquals(expected[position], top.getIndex(position), "position " + position);
+                assertEquals(keys[expected[position]], top.getKey(position), "position " + position);
+            }
+        }
+    }
+
+    @Test
+    void capacityAboveOfferedKeepsEveryEntry() {
+        TopStandards top = new TopStandards(10);
+        top.offer(3, 0);
+        top.offer(1, 1);
+        top.offer(2, 2);
+
+        assertEquals(Double.POSITIVE_INFINITY, top.bound());
+        assertEquals(3, top.size());
+
+        top.sort();
+        assertEquals(1, top.getIndex(0));
+        assertEquals(2, top.getIndex(1));
+        assertEquals(0, top.getIndex(2));
+    }
+
+    @Test
+    void laterIndexWinsEqualKeys() {
+        TopStandards top = new TopStandards(1);
+        top.offer(1, 0);
+        top.offer(1, 1);
+        top.offer(2, 2);
+
+        assertEquals(1, top.getIndex(0));
+        assertEquals(1, top.bound());
+    }
+
+    @Test
+    void nanKeysAreWorstAndDoNotBound() {
+        TopStandards top = new TopStandards(2);
+        top.offer(Double.NaN, 0);
+        top.offer(Double.NaN, 1);
+
+        assertEquals(Double.POSITIVE_INFINITY, top.bound());
+
+        top.offer(5, 2);
+        assertEquals(Double.POSITIVE_INFINITY, top.bound());
+
+        top.offer(7, 3);
+        assertEquals(7, top.bound());
+
+        top.sort();
+        assertEquals(2, top.getIndex(0));
+        assertEquals(3, top.getIndex(1));
+    }
+
+    @Test
+    void nonPositiveCapacityIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TopStandards(0));
+        assertThrows(IllegalArgumentException.class, () -> new TopStandards(-1));
+        assertThrows(IllegalArgumentException.class, () -> new TopStandards(0, 10));
+    }
+
+    @Test
+    void capacityIsClampedToOfferedCount() {
+        TopStandards top = new TopStandards(Integer.MAX_VALUE, 3);
+        top.offer(2, 0);
+        top.offer(1, 1);
+        top.offer(3, 2);
+
+        assertEquals(3, top.bound());
+        assertEquals(3, top.size());
+
+        TopStandards empty = new TopStandards(Integer.MAX_VALUE, 0);
+        assertEquals(Double.POSITIVE_INFINITY, empty.bound());
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    void marginIsDistanceOfTheFirstTwoScores() {
+        List<ScoredStandard> entries = new ArrayList<>();
+        entries.add(new ScoredStandard(Standard.A, 0.75));
+
+        assertEquals(Double.POSITIVE_INFINITY, new Ranking(entries).getMargin());
+
+        entries.add(new ScoredStandard(Standard.B, 0.25));
+        entries.add(new ScoredStandard(Standard.C, 0));
+        assertEquals(0.5, new Ranking(entries).getMargin());
+
+        entries.set(1, new ScoredStandard(Standard.B, 2));
+        assertEquals(1.25, new Ranking(entries).getMargin());
+
+        entries.set(1, new ScoredStandard(Standard.B, 0.75));
+        assertEquals(0, new Ranking(entries).getMargin());
+    }
+
+    @Test
+    void emptyRankingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new Ranking(new ArrayList<>()));
+    }
+}